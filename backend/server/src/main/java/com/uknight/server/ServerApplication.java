@@ -1,9 +1,14 @@
 package com.uknight.server;
 
+import com.uknight.server.config.ServerRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(ServerRuntimeHints.class)
 public class ServerApplication {
 
 	public static void main(String[] args) {
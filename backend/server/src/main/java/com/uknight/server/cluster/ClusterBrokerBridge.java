@@ -0,0 +1,99 @@
+package com.uknight.server.cluster;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand-in for an external broker when a cluster runs on the simple broker:
+ * every message the application publishes to /topic or /queue is copied to
+ * the other nodes and published to their local brokers too, so a user gets
+ * it whichever node they are connected to. Every message goes to every node,
+ * which is fine for a few instances on one machine; real deployments use the
+ * broker relay ({@code websocket.broker=relay}) instead.
+ */
+@Component
+public class ClusterBrokerBridge implements ChannelInterceptor {
+
+    // Marks messages that came from another node so they aren't sent back out
+    private static final String REMOTE_HEADER = "clusterRemote";
+
+    private final ClusterService clusterService;
+    // The template is built with the broker channel this interceptor is registered on
+    private final ObjectProvider<SimpMessagingTemplate> messagingTemplate;
+
+    public ClusterBrokerBridge(ClusterService clusterService, ObjectProvider<SimpMessagingTemplate> messagingTemplate) {
+        this.clusterService = clusterService;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (headers.containsKey(REMOTE_HEADER)
+                || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || destination == null
+                || !(message.getPayload() instanceof byte[] body)) {
+            return message;
+        }
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("destination", destination);
+        payload.put("body", body);
+        MimeType contentType = headers.get(MessageHeaders.CONTENT_TYPE, MimeType.class);
+        if (contentType != null) {
+            payload.put("contentType", contentType.toString());
+        }
+        Map<String, List<String>> nativeHeaders = nativeHeaders(headers);
+        if (!nativeHeaders.isEmpty()) {
+            payload.put("nativeHeaders", nativeHeaders);
+        }
+        clusterService.broadcast(new ClusterCommand(ClusterCommand.Kind.PUBLISH, null, payload));
+        return message;
+    }
+
+    @EventListener
+    @SuppressWarnings("unchecked")
+    public void onRemoteCommand(ClusterService.RemoteCommandEvent event) {
+        ClusterCommand command = event.command();
+        if (command.kind() != ClusterCommand.Kind.PUBLISH) {
+            return;
+        }
+
+        Map<String, ?> payload = command.payload();
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        if (payload.get("contentType") instanceof String contentType) {
+            accessor.setContentType(MimeType.valueOf(contentType));
+        }
+        if (payload.get("nativeHeaders") instanceof Map<?, ?> nativeHeaders) {
+            ((Map<String, List<String>>) nativeHeaders).forEach((name, values) ->
+                    values.forEach(value -> accessor.addNativeHeader(name, value)));
+        }
+        accessor.setHeader(REMOTE_HEADER, Boolean.TRUE);
+        accessor.setLeaveMutable(true);
+
+        messagingTemplate.getObject().send((String) payload.get("destination"),
+                MessageBuilder.createMessage((byte[]) payload.get("body"), accessor.getMessageHeaders()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<String>> nativeHeaders(MessageHeaders headers) {
+        Object nativeHeaders = headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        return nativeHeaders instanceof Map<?, ?> map ? Map.copyOf((Map<String, List<String>>) map) : Map.of();
+    }
+}
@@ -0,0 +1,25 @@
+package com.uknight.server.cluster;
+
+import java.util.Map;
+
+/**
+ * A message between nodes. Payloads hold only strings, numbers, byte arrays
+ * and nested maps/lists, so a transport can put them on the wire as they are.
+ */
+public record ClusterCommand(Kind kind, String senderId, Map<String, ?> payload) {
+
+    public enum Kind {
+        // Matchmaking, sent to the owner of the user's shard
+        JOIN,
+        // Broadcast: the user disconnected / was matched with payload.peerId
+        LEAVE,
+        PAIR,
+        // Game commands, sent to the owner of payload.matchId
+        ACCEPT,
+        MOVE,
+        SYNC,
+        CLOSE,
+        // Broadcast: a message for the local broker (see ClusterBrokerBridge)
+        PUBLISH
+    }
+}
@@ -0,0 +1,91 @@
+package com.uknight.server.cluster;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The nodes of the cluster and which of them owns a key (a matchmaking shard
+ * or a match). Ownership uses rendezvous hashing: every node scores the key
+ * and the highest score wins, so all nodes agree without coordinating, and
+ * adding or removing a node only moves the keys that node wins or owned.
+ *
+ * With no {@code cluster.nodes} configured the server is standalone and owns
+ * everything.
+ */
+@Component
+public class ClusterMembership {
+
+    private static final String STANDALONE = "standalone";
+
+    private final String nodeId;
+    private final List<String> nodes;
+
+    @Autowired
+    public ClusterMembership(@Value("${cluster.node-id:}") String nodeId,
+                             @Value("${cluster.nodes:}") String nodes) {
+        this.nodes = Arrays.stream(nodes.split(",")).map(String::trim).filter(node -> !node.isEmpty()).toList();
+        if (this.nodes.isEmpty()) {
+            this.nodeId = STANDALONE;
+        } else if (this.nodes.contains(nodeId)) {
+            this.nodeId = nodeId;
+        } else {
+            throw new IllegalStateException("cluster.node-id '" + nodeId + "' is not one of cluster.nodes " + this.nodes);
+        }
+    }
+
+    public static ClusterMembership standalone() {
+        return new ClusterMembership("", "");
+    }
+
+    public boolean isClustered() {
+        return nodes.size() > 1;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // Every other node, e.g. to broadcast to
+    public List<String> getPeers() {
+        return nodes.stream().filter(node -> !node.equals(nodeId)).toList();
+    }
+
+    private String ownerOf(String key) {
+        if (!isClustered()) {
+            return nodeId;
+        }
+        String owner = null;
+        long best = Long.MIN_VALUE;
+        for (String node : nodes) {
+            long score = mix(((long) node.hashCode() << 32) ^ key.hashCode());
+            if (owner == null || score > best) {
+                owner = node;
+                best = score;
+            }
+        }
+        return owner;
+    }
+
+    // Matchmaking shard (see MatchmakingService.shardKey)
+    public String ownerOfShard(String shard) {
+        return ownerOf("shard:" + shard);
+    }
+
+    public String ownerOfMatch(String matchId) {
+        return ownerOf("match:" + matchId);
+    }
+
+    // MurmurHash3's 64-bit finalizer, so similar keys spread over all nodes
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,164 @@
+package com.uknight.server.cluster;
+
+import com.uknight.server.service.MatchmakingService;
+import com.uknight.server.service.SessionRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Routes work to the node that owns it when several servers share the load.
+ *
+ * Matchmaking for a shard (university) runs on the shard's owner and a game
+ * lives on the owner of its matchId, so the in-memory MatchmakingService and
+ * GameService stay single-node; the node a user is connected to forwards their
+ * joins and game commands. Whatever the owner sends back goes through the
+ * broker, which reaches the user on any node. Disconnects and pairings are
+ * broadcast, since every node keeps its own users' sessions.
+ *
+ * A node doesn't finish starting until the transport can reach every peer in
+ * {@code cluster.nodes}, and fails after {@code cluster.join-timeout-ms}, so a
+ * misconfigured cluster doesn't run with commands silently going nowhere.
+ *
+ * Standalone, every key is local and nothing is forwarded.
+ */
+@Slf4j
+@Service
+public class ClusterService {
+
+    private final ClusterMembership membership;
+    private final ClusterTransport transport;
+    private final SessionRegistry sessionRegistry;
+    private final MatchmakingService matchmakingService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration joinTimeout;
+
+    private final Counter forwarded;
+    private final Counter received;
+
+    public ClusterService(ClusterMembership membership,
+                          ClusterTransport transport,
+                          SessionRegistry sessionRegistry,
+                          MatchmakingService matchmakingService,
+                          ApplicationEventPublisher eventPublisher,
+                          MeterRegistry meterRegistry,
+                          @Value("${cluster.join-timeout-ms:30000}") long joinTimeoutMs) {
+        this.membership = membership;
+        this.transport = transport;
+        this.sessionRegistry = sessionRegistry;
+        this.matchmakingService = matchmakingService;
+        this.eventPublisher = eventPublisher;
+        this.joinTimeout = Duration.ofMillis(joinTimeoutMs);
+
+        this.forwarded = Counter.builder("cluster.commands.sent").register(meterRegistry);
+        this.received = Counter.builder("cluster.commands.received").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (membership.isClustered()) {
+            transport.join(membership.getNodeId(), this::receive);
+            try {
+                transport.awaitPeers(membership.getPeers(), joinTimeout);
+            } catch (IllegalStateException e) {
+                transport.leave(membership.getNodeId());
+                throw e;
+            }
+            log.info("Node {} joined the cluster with peers {}", membership.getNodeId(), membership.getPeers());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (membership.isClustered()) {
+            transport.leave(membership.getNodeId());
+        }
+    }
+
+    public boolean isClustered() {
+        return membership.isClustered();
+    }
+
+    /**
+     * Sends a join to the owner of the user's matchmaking shard.
+     *
+     * @return false if this node owns the shard and should match the user itself
+     */
+    public boolean routeJoin(String uuid, String university) {
+        String owner = membership.ownerOfShard(matchmakingService.shardKey(university));
+        if (owner.equals(membership.getNodeId())) {
+            return false;
+        }
+        send(owner, new ClusterCommand(ClusterCommand.Kind.JOIN, uuid,
+                university != null ? Map.of("university", university) : Map.of()));
+        return true;
+    }
+
+    /**
+     * Sends a game command to the owner of the match.
+     *
+     * @return false if this node owns the match and should handle the command itself
+     */
+    public boolean routeGame(ClusterCommand.Kind kind, String matchId, String senderId, Map<String, ?> payload) {
+        String owner = membership.ownerOfMatch(matchId);
+        if (owner.equals(membership.getNodeId())) {
+            return false;
+        }
+        send(owner, new ClusterCommand(kind, senderId, payload));
+        return true;
+    }
+
+    // Pairs the lobby partners here and on the nodes they may be connected to
+    public void pair(String uuid, String peerId) {
+        sessionRegistry.pair(uuid, peerId);
+        broadcast(new ClusterCommand(ClusterCommand.Kind.PAIR, uuid, Map.of("peerId", peerId)));
+    }
+
+    public void broadcast(ClusterCommand command) {
+        for (String peer : membership.getPeers()) {
+            send(peer, command);
+        }
+    }
+
+    // The user's ticket may be queued on another node's shard, and their partner connected to another node
+    @EventListener
+    public void onUserDisconnected(SessionRegistry.UserDisconnectedEvent event) {
+        broadcast(new ClusterCommand(ClusterCommand.Kind.LEAVE, event.uuid(),
+                event.peerId() != null ? Map.of("peerId", event.peerId()) : Map.of()));
+    }
+
+    // Waited too long in a local shard while the global shard is elsewhere
+    @EventListener
+    public void onSpilledOver(MatchmakingService.SpilledOverEvent event) {
+        routeJoin(event.uuid(), null);
+    }
+
+    private void send(String nodeId, ClusterCommand command) {
+        forwarded.increment();
+        transport.send(nodeId, command);
+    }
+
+    void receive(ClusterCommand command) {
+        received.increment();
+        switch (command.kind()) {
+            case LEAVE -> {
+                matchmakingService.removeUser(command.senderId());
+                eventPublisher.publishEvent(new RemoteCommandEvent(command));
+            }
+            case PAIR -> sessionRegistry.pair(command.senderId(), (String) command.payload().get("peerId"));
+            default -> eventPublisher.publishEvent(new RemoteCommandEvent(command));
+        }
+    }
+
+    // A command forwarded by another node, for the messaging layer to run as if it arrived here
+    public record RemoteCommandEvent(ClusterCommand command) {}
+}
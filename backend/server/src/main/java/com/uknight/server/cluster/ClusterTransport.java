@@ -0,0 +1,23 @@
+package com.uknight.server.cluster;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Delivers {@link ClusterCommand}s between nodes. Commands from one node to
+ * another must arrive in the order they were sent, since game moves are
+ * forwarded through it.
+ */
+public interface ClusterTransport {
+
+    // Starts delivering commands addressed to nodeId to the receiver
+    void join(String nodeId, Consumer<ClusterCommand> receiver);
+
+    void leave(String nodeId);
+
+    // Blocks until every peer can be sent to; throws IllegalStateException if one can't within the timeout
+    void awaitPeers(List<String> peers, Duration timeout);
+
+    void send(String nodeId, ClusterCommand command);
+}
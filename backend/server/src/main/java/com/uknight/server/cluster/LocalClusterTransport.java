@@ -0,0 +1,105 @@
+package com.uknight.server.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Transport between server instances in the same JVM, for running and testing
+ * a cluster on one machine. Each node receives on its own thread, so commands
+ * between two nodes stay in order and a node never runs another's handlers on
+ * its own threads.
+ *
+ * Only nodes started in this JVM can be reached, so a node whose peers don't
+ * join here within the timeout fails to start rather than drop their commands.
+ */
+@Slf4j
+@Component
+public class LocalClusterTransport implements ClusterTransport {
+
+    // Shared by every application context in the JVM
+    private static final Map<String, Node> NODES = new ConcurrentHashMap<>();
+
+    @Override
+    public void join(String nodeId, Consumer<ClusterCommand> receiver) {
+        Node node = new Node(nodeId, receiver);
+        Node previous = NODES.put(nodeId, node);
+        if (previous != null) {
+            previous.executor.shutdown();
+        }
+        synchronized (NODES) {
+            NODES.notifyAll();
+        }
+    }
+
+    @Override
+    public void awaitPeers(List<String> peers, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (NODES) {
+            while (!NODES.keySet().containsAll(peers)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    List<String> missing = peers.stream().filter(peer -> !NODES.containsKey(peer)).toList();
+                    throw new IllegalStateException("Peers " + missing + " did not join within " + timeout.toMillis()
+                            + " ms; LocalClusterTransport only reaches nodes running in this JVM");
+                }
+                try {
+                    NODES.wait(Math.max(1, remaining / 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for peers " + peers, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void leave(String nodeId) {
+        Node node = NODES.remove(nodeId);
+        if (node != null) {
+            node.executor.shutdown();
+        }
+    }
+
+    @Override
+    public void send(String nodeId, ClusterCommand command) {
+        Node node = NODES.get(nodeId);
+        if (node == null) {
+            log.warn("Dropped {} for node {}: not running", command.kind(), nodeId);
+            return;
+        }
+        try {
+            node.executor.execute(() -> {
+                try {
+                    node.receiver.accept(command);
+                } catch (RuntimeException e) {
+                    log.error("Node {} failed to handle {}", nodeId, command.kind(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Dropped {} for node {}: shutting down", command.kind(), nodeId);
+        }
+    }
+
+    private static class Node {
+        private final Consumer<ClusterCommand> receiver;
+        private final ExecutorService executor;
+
+        Node(String nodeId, Consumer<ClusterCommand> receiver) {
+            this.receiver = receiver;
+            this.executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "cluster-" + nodeId);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.uknight.server.config;
+
+import com.uknight.server.service.GameService;
+import com.uknight.server.service.SessionRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.json.JsonFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Admission control for the client inbound channel: each session gets a token
+ * bucket per flood-prone destination, so one client can't fill the shared
+ * inbound pool with signals, chat or moves.
+ *
+ * Runs in {@code preSend}, on the sending session's transport thread, so
+ * excess frames never reach the pool. A bucket is one long per destination
+ * (GCRA: the time at which the bucket will be full again), advanced with a
+ * CAS; admitting a frame takes no lock and allocates nothing once the session
+ * has its buckets, short of the turn check on moves below. Frames over the limit are dropped, or with
+ * {@code stomp.rate-limit.policy=defer} delivered once they conform, as long
+ * as that is within {@code stomp.rate-limit.max-defer-ms}. Deferral keeps the
+ * order of a session's frames per destination, not across destinations, and a
+ * deferred frame whose session has disconnected in the meantime is dropped.
+ *
+ * A move the bucket admits is then rejected if the game named by its
+ * {@code matchId} is here and it isn't the sender's turn in it; GameService
+ * still checks again on the game loop. Only admitted moves are parsed for it,
+ * so a flood is charged before it costs a parse.
+ */
+@Slf4j
+@Component
+public class InboundRateLimiter implements ChannelInterceptor {
+
+    public enum Policy { DROP, DEFER }
+
+    static final String SIGNAL = "/app/signal";
+    static final String CHAT = "/app/chat";
+    static final String MOVE = "/app/game/move";
+
+    private static final String[] LIMITED_DESTINATIONS = {SIGNAL, CHAT, MOVE};
+    private static final int MOVE_INDEX = 2;
+
+    // Marks a deferred frame on its second pass
+    private static final String ADMITTED_HEADER = "rateLimitAdmitted";
+
+    private static final String MATCH_ID_PROPERTY = "matchId";
+
+    private final GameService gameService;
+    private final Policy policy;
+    private final long maxDeferNanos;
+
+    // Per destination: nanos between tokens (0 = unlimited) and the burst it may run ahead by
+    private final long[] intervalNanos = new long[LIMITED_DESTINATIONS.length];
+    private final long[] toleranceNanos = new long[LIMITED_DESTINATIONS.length];
+
+    // Session id -> per-destination time the bucket is full again, relative to origin
+    private final Map<String, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+    private final long origin = System.nanoTime();
+
+    private final Counter[] dropped = new Counter[LIMITED_DESTINATIONS.length];
+    private final Counter[] deferred = new Counter[LIMITED_DESTINATIONS.length];
+    private final Counter outOfTurn;
+
+    private final ScheduledExecutorService scheduler;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public InboundRateLimiter(GameService gameService,
+                              MeterRegistry meterRegistry,
+                              @Value("${stomp.rate-limit.policy:drop}") String policy,
+                              @Value("${stomp.rate-limit.max-defer-ms:500}") long maxDeferMs,
+                              @Value("${stomp.rate-limit.signal.per-second:50}") int signalPerSecond,
+                              @Value("${stomp.rate-limit.signal.burst:200}") int signalBurst,
+                              @Value("${stomp.rate-limit.chat.per-second:5}") int chatPerSecond,
+                              @Value("${stomp.rate-limit.chat.burst:10}") int chatBurst,
+                              @Value("${stomp.rate-limit.move.per-second:5}") int movePerSecond,
+                              @Value("${stomp.rate-limit.move.burst:5}") int moveBurst) {
+        this.gameService = gameService;
+        this.policy = Policy.valueOf(policy.toUpperCase(Locale.ROOT));
+        this.maxDeferNanos = TimeUnit.MILLISECONDS.toNanos(maxDeferMs);
+
+        limit(0, signalPerSecond, signalBurst);
+        limit(1, chatPerSecond, chatBurst);
+        limit(MOVE_INDEX, movePerSecond, moveBurst);
+
+        for (int i = 0; i < LIMITED_DESTINATIONS.length; i++) {
+            dropped[i] = Counter.builder("stomp.throttled")
+                    .tag("destination", LIMITED_DESTINATIONS[i])
+                    .tag("action", "dropped")
+                    .register(meterRegistry);
+            deferred[i] = Counter.builder("stomp.throttled")
+                    .tag("destination", LIMITED_DESTINATIONS[i])
+                    .tag("action", "deferred")
+                    .register(meterRegistry);
+        }
+        this.outOfTurn = Counter.builder("stomp.move.out_of_turn").register(meterRegistry);
+
+        this.scheduler = this.policy == Policy.DEFER ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "inbound-deferred");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    private void limit(int index, int perSecond, int burst) {
+        if (perSecond > 0) {
+            intervalNanos[index] = TimeUnit.SECONDS.toNanos(1) / perSecond;
+            toleranceNanos[index] = intervalNanos[index] * Math.max(1, burst);
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        return admit(message, channel, System.nanoTime() - origin);
+    }
+
+    Message<?> admit(Message<?> message, MessageChannel channel, long now) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null) {
+            return message;
+        }
+        if (type == SimpMessageType.DISCONNECT) {
+            buckets.remove(sessionId);
+            return message;
+        }
+        if (type != SimpMessageType.MESSAGE) {
+            return message;
+        }
+
+        int index = indexOf(SimpMessageHeaderAccessor.getDestination(headers));
+        if (index < 0) {
+            return message;
+        }
+        // A deferred frame was charged on its first pass
+        if (intervalNanos[index] == 0 || headers.containsKey(ADMITTED_HEADER)) {
+            return inTurn(message, index);
+        }
+
+        AtomicLongArray sessionBuckets = buckets.computeIfAbsent(sessionId,
+                id -> new AtomicLongArray(LIMITED_DESTINATIONS.length));
+        long delay = acquire(sessionBuckets, index, now);
+        if (delay == 0) {
+            return inTurn(message, index);
+        }
+        if (delay > 0) {
+            deferred[index].increment();
+            Message<?> admitted = MessageBuilder.fromMessage(message).setHeader(ADMITTED_HEADER, true).build();
+            scheduler.schedule(() -> {
+                // A DISCONNECT removed the buckets; the session's frames must not outlive it
+                if (buckets.get(sessionId) == sessionBuckets) {
+                    channel.send(admitted);
+                } else {
+                    log.debug("Dropped a deferred frame to {} from closed session {}", LIMITED_DESTINATIONS[index], sessionId);
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+            return null;
+        }
+        dropped[index].increment();
+        log.debug("Dropped a frame to {} from session {}", LIMITED_DESTINATIONS[index], sessionId);
+        return null;
+    }
+
+    // 0 to admit now, the nanos to hold the frame for under DEFER, or -1 to drop it
+    private long acquire(AtomicLongArray sessionBuckets, int index, long now) {
+        long interval = intervalNanos[index];
+        while (true) {
+            long fullAt = sessionBuckets.get(index);
+            long next = Math.max(fullAt, now) + interval;
+            long wait = next - now - toleranceNanos[index];
+            if (wait > 0 && (policy == Policy.DROP || wait > maxDeferNanos)) {
+                return -1;
+            }
+            if (sessionBuckets.compareAndSet(index, fullAt, next)) {
+                return Math.max(wait, 0);
+            }
+        }
+    }
+
+    // The admitted frame, or null for a move out of turn
+    private Message<?> inTurn(Message<?> message, int index) {
+        if (index == MOVE_INDEX && !mayMove(message.getHeaders(), message.getPayload())) {
+            outOfTurn.increment();
+            return null;
+        }
+        return message;
+    }
+
+    // False if the move's game is here and it isn't the sender's turn in it
+    private boolean mayMove(MessageHeaders headers, Object payload) {
+        String matchId = payload instanceof byte[] body ? findMatchId(body) : null;
+        if (matchId == null) {
+            return true; // The controller ignores it
+        }
+        GameService.GameState game = gameService.getGameState(matchId);
+        if (game == null) {
+            return true; // On another node, or already gone
+        }
+        return game.getCurrentPlayer().equals(SessionRegistry.handleOf(headers));
+    }
+
+    // Top-level matchId of a JSON object, without binding the rest of the body
+    private String findMatchId(byte[] json) {
+        try (JsonParser parser = jsonFactory.createParser(ObjectReadContext.empty(), json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (MATCH_ID_PROPERTY.equals(name)) {
+                    return value == JsonToken.VALUE_STRING ? parser.getString() : null;
+                }
+                parser.skipChildren();
+            }
+        } catch (JacksonException e) {
+            // Malformed; the controller rejects it
+        }
+        return null;
+    }
+
+    private static int indexOf(String destination) {
+        if (destination == null) return -1;
+        return switch (destination) {
+            case SIGNAL -> 0;
+            case CHAT -> 1;
+            case MOVE -> MOVE_INDEX;
+            default -> -1;
+        };
+    }
+
+    int getSessionCount() {
+        return buckets.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
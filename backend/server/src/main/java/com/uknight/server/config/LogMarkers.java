@@ -0,0 +1,21 @@
+package com.uknight.server.config;
+
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Categories of per-message log statements. Events carrying one of these
+ * markers are rate limited by {@link SampledLogFilter} (see logback-spring.xml);
+ * unmarked lifecycle events (matches, games, disconnects) are always logged.
+ */
+public final class LogMarkers {
+
+    public static final Marker JOIN = MarkerFactory.getMarker("JOIN");
+    public static final Marker SIGNAL = MarkerFactory.getMarker("SIGNAL");
+    public static final Marker CHAT = MarkerFactory.getMarker("CHAT");
+    public static final Marker MOVE = MarkerFactory.getMarker("MOVE");
+    public static final Marker SYNC = MarkerFactory.getMarker("SYNC");
+    public static final Marker QUEUE = MarkerFactory.getMarker("QUEUE");
+
+    private LogMarkers() {}
+}
@@ -0,0 +1,272 @@
+package com.uknight.server.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Per-session queue on the client outbound channel where a newer game state
+ * replaces one that hasn't been written yet.
+ *
+ * Each session has at most one message on the outbound pool at a time (which
+ * keeps publish order, like the broker's preserve-order option that this
+ * replaces); the rest wait here. A message carrying {@link #CONFLATE_HEADER}
+ * supersedes a waiting message with the same key and destination: the older
+ * one is discarded and the newer one joins the back of the queue, so it stays
+ * behind anything published before it. Messages without the header, such as
+ * GAME_START or GAME_CLOSED, are never dropped.
+ *
+ * State syncs are deltas, so the replacement can't simply be the newer delta:
+ * the client never got the one it replaces and would see a gap. A sync carries
+ * a supplier of its match's full state in {@link #SNAPSHOT_HEADER}, and that
+ * FULL frame is what joins the queue instead. It is only asked for when the
+ * sync actually replaces a waiting one, so an unloaded server never encodes a
+ * snapshot. The simple broker hands a message to its subscribers on the
+ * publishing thread, so the supplier runs on the match's worker.
+ *
+ * With only one message in flight per session, the transport's send time and
+ * buffer limits never trip, so the queue enforces the buffer limit itself:
+ * once a session's waiting messages exceed
+ * {@code websocket.transport.send-buffer-size-limit} bytes, they are dropped
+ * and the session is closed, as the transport would have done. Registered as
+ * a WebSocket handler decorator too, to find the session to close and to drop
+ * a closed session's queue.
+ */
+@Slf4j
+@Component
+public class OutboundConflator implements ExecutorChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    // Message header (not sent to the client); equal values on one destination conflate
+    public static final String CONFLATE_HEADER = "conflateKey";
+
+    // Message header (not sent to the client): Supplier<byte[]> of the FULL frame to queue when this message replaces a waiting one
+    public static final String SNAPSHOT_HEADER = "conflateSnapshot";
+
+    private static final int DEFAULT_BUFFER_LIMIT = 512 * 1024;
+
+    private final Map<String, SessionQueue> queues = new ConcurrentHashMap<>();
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int bufferLimit;
+
+    private final Counter conflated;
+    private final Counter overflowed;
+    private final DistributionSummary queueDepth;
+
+    public OutboundConflator(MeterRegistry meterRegistry) {
+        this(meterRegistry, DEFAULT_BUFFER_LIMIT);
+    }
+
+    @Autowired
+    public OutboundConflator(MeterRegistry meterRegistry,
+                             @Value("${websocket.transport.send-buffer-size-limit:524288}") int bufferLimit) {
+        this.bufferLimit = bufferLimit;
+        this.conflated = Counter.builder("stomp.outbound.conflated").register(meterRegistry);
+        this.overflowed = Counter.builder("stomp.outbound.overflowed").register(meterRegistry);
+        this.queueDepth = DistributionSummary.builder("stomp.outbound.queue.depth")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("stomp.outbound.queued", queued, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+
+        while (true) {
+            SessionQueue queue = queues.computeIfAbsent(sessionId, id -> new SessionQueue());
+            synchronized (queue) {
+                if (queue.retired) {
+                    continue; // Drained and removed meanwhile
+                }
+                if (queue.overflowed) {
+                    return null; // Being closed
+                }
+                if (queue.inFlight == null || queue.inFlight == message) {
+                    queue.inFlight = message; // Idle session, or our own release below
+                    return message;
+                }
+                enqueue(queue, message, headers, sessionId);
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        release(message, channel);
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        if (!sent || ex != null) {
+            release(message, channel); // Never reached the handler
+        }
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                sessions.put(session.getId(), session);
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                discard(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    int getQueuedCount() {
+        return queued.get();
+    }
+
+    // Caller holds the queue's lock
+    private void enqueue(SessionQueue queue, Message<?> message, MessageHeaders headers, String sessionId) {
+        Object key = headers.get(CONFLATE_HEADER);
+        if (key != null) {
+            String destination = SimpMessageHeaderAccessor.getDestination(headers);
+            for (Iterator<Message<?>> it = queue.pending.iterator(); it.hasNext(); ) {
+                Message<?> replaced = it.next();
+                MessageHeaders waiting = replaced.getHeaders();
+                if (key.equals(waiting.get(CONFLATE_HEADER))
+                        && Objects.equals(destination, SimpMessageHeaderAccessor.getDestination(waiting))) {
+                    it.remove();
+                    queued.decrementAndGet();
+                    queue.pendingBytes -= sizeOf(replaced);
+                    conflated.increment();
+                    // The client never got the replaced delta, so only the full state applies after it
+                    if (headers.get(SNAPSHOT_HEADER) instanceof Supplier<?> snapshot) {
+                        message = MessageBuilder.createMessage((byte[]) snapshot.get(), headers);
+                    }
+                    break; // There is never more than one per key
+                }
+            }
+        }
+
+        int size = sizeOf(message);
+        if (queue.pendingBytes + size > bufferLimit) {
+            overflow(queue, sessionId);
+            return;
+        }
+        queue.pending.add(message);
+        queue.pendingBytes += size;
+        queued.incrementAndGet();
+        queueDepth.record(queue.pending.size());
+    }
+
+    // Caller holds the queue's lock; drops the backlog and closes the session, like the transport's buffer limit
+    private void overflow(SessionQueue queue, String sessionId) {
+        queued.addAndGet(-queue.pending.size());
+        queue.pending.clear();
+        queue.pendingBytes = 0;
+        queue.overflowed = true;
+        overflowed.increment();
+        log.warn("Session {} fell more than {} bytes behind; closing it", sessionId, bufferLimit);
+
+        WebSocketSession session = sessions.get(sessionId);
+        if (session != null) {
+            // Closing writes a close frame, which can block on the same stuck socket; keep it off the sender's thread
+            Thread.ofVirtual().name("ws-close-" + sessionId).start(() -> {
+                try {
+                    session.close(CloseStatus.SESSION_NOT_RELIABLE);
+                } catch (IOException e) {
+                    log.debug("Failed to close session {}", sessionId, e);
+                }
+            });
+        }
+    }
+
+    // The session is gone; nothing waiting for it will be written
+    private void discard(String sessionId) {
+        SessionQueue queue = queues.remove(sessionId);
+        if (queue == null) return;
+        synchronized (queue) {
+            queued.addAndGet(-queue.pending.size());
+            queue.pending.clear();
+            queue.pendingBytes = 0;
+            queue.retired = true;
+        }
+    }
+
+    // Bytes the message holds on the heap while it waits
+    private static int sizeOf(Message<?> message) {
+        return message.getPayload() instanceof byte[] bytes ? bytes.length
+                : message.getPayload() instanceof String text ? text.length() : 0;
+    }
+
+    // The session's message left the channel; hand it the next one
+    private void release(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        SessionQueue queue = sessionId != null ? queues.get(sessionId) : null;
+        if (queue == null) return;
+
+        Message<?> next;
+        synchronized (queue) {
+            if (queue.inFlight != message) return;
+            next = queue.pending.poll();
+            queue.inFlight = next;
+            if (next == null) {
+                queue.retired = true;
+                queues.remove(sessionId, queue);
+                return;
+            }
+            queued.decrementAndGet();
+            queue.pendingBytes -= sizeOf(next);
+        }
+        try {
+            channel.send(next);
+        } catch (RuntimeException e) {
+            // afterSendCompletion has already moved on to the message after it
+            log.warn("Failed to send a queued message to session {}", sessionId, e);
+        }
+    }
+
+    private static class SessionQueue {
+        private final ArrayDeque<Message<?>> pending = new ArrayDeque<>();
+        // Bytes in pending, against the buffer limit
+        private long pendingBytes;
+        // The session's message on the outbound pool, if any
+        private Message<?> inFlight;
+        // Set once drained and removed from the map; a sender that still holds it retries
+        private boolean retired;
+        // Set when the backlog passed the buffer limit; nothing more is queued while the session closes
+        private boolean overflowed;
+    }
+}
@@ -0,0 +1,61 @@
+package com.uknight.server.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.AbstractMatcherFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Matches per-message events: those carrying one of the configured
+ * {@link LogMarkers} categories, below WARN. logback-spring.xml uses it to
+ * hand only these to the appender that drops events when it falls behind;
+ * warnings, errors and unmarked lifecycle events go to one that never drops.
+ */
+public class PerMessageEventFilter extends AbstractMatcherFilter<ILoggingEvent> {
+
+    private String markers = "";
+
+    // Read-only once started
+    private final Set<String> names = new HashSet<>();
+
+    // Comma-separated marker names, e.g. "SIGNAL,MOVE"; empty matches nothing
+    public void setMarkers(String markers) {
+        this.markers = markers;
+    }
+
+    @Override
+    public void start() {
+        for (String name : markers.split(",")) {
+            if (!name.isBlank()) {
+                names.add(name.trim());
+            }
+        }
+        super.start();
+    }
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        if (!isStarted()) {
+            return FilterReply.NEUTRAL;
+        }
+        return isPerMessage(event) ? onMatch : onMismatch;
+    }
+
+    private boolean isPerMessage(ILoggingEvent event) {
+        List<Marker> eventMarkers = event.getMarkerList();
+        if (eventMarkers == null || event.getLevel().isGreaterOrEqual(Level.WARN)) {
+            return false;
+        }
+        for (Marker marker : eventMarkers) {
+            if (names.contains(marker.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
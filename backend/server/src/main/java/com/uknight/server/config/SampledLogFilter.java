@@ -0,0 +1,100 @@
+package com.uknight.server.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets through at most {@code perSecond} events per second for each of the
+ * configured {@link LogMarkers} categories and denies the rest before a
+ * logging event is even built. Each category has its own budget, so a flood
+ * of ICE signals can't starve move logs. Events without a listed marker are
+ * left alone.
+ *
+ * Budgets are fixed when the filter starts and kept in a single CAS'd word
+ * each, so deciding allocates nothing.
+ */
+public class SampledLogFilter extends TurboFilter {
+
+    private int perSecond = 20;
+    private String markers = "";
+
+    // Marker name -> its budget; read-only once started
+    private final Map<String, Budget> budgets = new HashMap<>();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public void setPerSecond(int perSecond) {
+        this.perSecond = perSecond;
+    }
+
+    // Comma-separated marker names, e.g. "SIGNAL,MOVE"; empty samples nothing
+    public void setMarkers(String markers) {
+        this.markers = markers;
+    }
+
+    @Override
+    public void start() {
+        if (perSecond < 1) {
+            addError("perSecond must be at least 1, was " + perSecond);
+            return;
+        }
+        for (String name : markers.split(",")) {
+            if (!name.isBlank()) {
+                budgets.put(name.trim(), new Budget());
+            }
+        }
+        super.start();
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (marker == null || !isStarted()) {
+            return FilterReply.NEUTRAL;
+        }
+        Budget budget = budgets.get(marker.getName());
+        // Disabled statements must not use up the budget (Logger.isEnabledFor would call back into this filter)
+        if (budget == null || level == null || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        if (budget.tryAcquire(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime()), perSecond)) {
+            return FilterReply.NEUTRAL;
+        }
+        suppressed.incrementAndGet();
+        return FilterReply.DENY;
+    }
+
+    // Events denied since start, across all categories
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    // Current second in the high bits, events let through in it in the low 32
+    private static final class Budget {
+        private final AtomicLong window = new AtomicLong();
+
+        boolean tryAcquire(long second, int limit) {
+            long tag = (second & 0x7fffffffL) << 32;
+            while (true) {
+                long current = window.get();
+                long next;
+                if ((current & 0xffffffff00000000L) != tag) {
+                    next = tag | 1;
+                } else if ((int) current < limit) {
+                    next = current + 1;
+                } else {
+                    return false;
+                }
+                if (window.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
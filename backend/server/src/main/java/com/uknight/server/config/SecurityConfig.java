@@ -23,7 +23,10 @@ public class SecurityConfig {
                 .cors(Customizer.withDefaults()) // 1. Enable CORS in Security
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/ws/**").permitAll() // Allow WebSocket handshake
-                        .anyRequest().authenticated());
+                        .requestMatchers("/actuator/health").permitAll() // Probed without credentials
+                        .anyRequest().authenticated()) // Including /actuator/prometheus
+                // Scrapers authenticate as spring.security.user.name / spring.security.user.password
+                .httpBasic(Customizer.withDefaults());
 
         return http.build();
     }
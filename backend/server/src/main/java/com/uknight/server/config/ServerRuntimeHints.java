@@ -0,0 +1,56 @@
+package com.uknight.server.config;
+
+import com.uknight.server.cluster.ClusterCommand;
+import com.uknight.server.cluster.ClusterService;
+import com.uknight.server.service.GameService;
+import com.uknight.server.service.MatchmakingService;
+import com.uknight.server.service.SessionRegistry;
+import com.uknight.server.service.ShotJournal;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Reflection hints for what Spring's AOT processing can't see from the bean
+ * definitions, used by the {@code faststart} build and by native images.
+ *
+ * STOMP payloads are plain maps: Jackson reads {@code @Payload Map} arguments
+ * into LinkedHashMaps, and the controller answers with HashMaps and
+ * {@code Map.of(...)}. The GameService inner classes and the records passed
+ * around as application events and cluster commands are bound as data, so
+ * they get the same hints as a Jackson DTO.
+ */
+public class ServerRuntimeHints implements RuntimeHintsRegistrar {
+
+    // Map.of(...) with one entry and with more
+    private static final List<String> IMMUTABLE_MAPS =
+            List.of("java.util.ImmutableCollections$Map1", "java.util.ImmutableCollections$MapN");
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.reflection().registerTypes(TypeReference.listOf(HashMap.class, LinkedHashMap.class),
+                type -> type.withMembers(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS));
+        for (String map : IMMUTABLE_MAPS) {
+            hints.reflection().registerType(TypeReference.of(map), MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                GameService.GameState.class,
+                GameService.Shot.class,
+                GameService.GameEvictedEvent.class,
+                GameService.MatchFinishedEvent.class,
+                MatchmakingService.MatchFoundEvent.class,
+                MatchmakingService.SpilledOverEvent.class,
+                SessionRegistry.UserDisconnectedEvent.class,
+                ShotJournal.RecoveredGame.class,
+                ShotJournal.RecoveredShot.class,
+                ClusterCommand.class,
+                ClusterService.RemoteCommandEvent.class);
+    }
+}
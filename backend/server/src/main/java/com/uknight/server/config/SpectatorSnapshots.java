@@ -0,0 +1,99 @@
+package com.uknight.server.config;
+
+import com.uknight.server.service.GameLoop;
+import com.uknight.server.service.GameService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Catches spectators up when they subscribe to a match.
+ *
+ * Players' GAME_MOVE_ANNOUNCE and GAME_STATE_SYNC frames are also published
+ * once to {@code /topic/spectate/{matchId}}, and the broker fans them out to
+ * however many spectators there are. State syncs are deltas, so someone who
+ * subscribes mid-game has nothing to apply them to. Once the broker has
+ * registered a subscription to a spectator topic, this interceptor encodes a
+ * full snapshot on the match's GameLoop worker and sends it to that
+ * subscription alone. Deltas are encoded on the same worker, so the snapshot's
+ * sequence number tells the spectator which deltas it already contains.
+ *
+ * A spectator that sees a gap in the sequence (e.g. a delta replaced by a
+ * newer one while its socket was slow) subscribes again for a fresh snapshot.
+ * Games owned by another cluster node get no snapshot here.
+ */
+@Slf4j
+@Component
+public class SpectatorSnapshots implements ExecutorChannelInterceptor {
+
+    public static final String TOPIC_PREFIX = "/topic/spectate/";
+
+    private final GameService gameService;
+    private final GameLoop gameLoop;
+    private final Counter snapshots;
+
+    public SpectatorSnapshots(GameService gameService, GameLoop gameLoop, MeterRegistry meterRegistry) {
+        this.gameService = gameService;
+        this.gameLoop = gameLoop;
+        this.snapshots = Counter.builder("game.spectator.snapshots").register(meterRegistry);
+    }
+
+    public static String topic(String matchId) {
+        return TOPIC_PREFIX + matchId;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        // The broker is one of several handlers on the inbound channel; only it registers subscriptions
+        if (ex != null || !(handler instanceof AbstractBrokerMessageHandler broker)) {
+            return;
+        }
+        MessageHeaders headers = message.getHeaders();
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.SUBSCRIBE
+                || destination == null || !destination.startsWith(TOPIC_PREFIX)) {
+            return;
+        }
+
+        String matchId = destination.substring(TOPIC_PREFIX.length());
+        if (gameService.getGameState(matchId) == null) {
+            return; // Not started yet, over, or on another node
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        gameLoop.executorFor(matchId).execute(() ->
+                sendSnapshot(broker.getClientOutboundChannel(), matchId, destination, sessionId, subscriptionId));
+    }
+
+    // Runs on the match's worker
+    private void sendSnapshot(MessageChannel clientOutboundChannel, String matchId, String destination,
+                              String sessionId, String subscriptionId) {
+        GameService.GameState game = gameService.getGameState(matchId);
+        if (game == null) {
+            return;
+        }
+        byte[] snapshot = game.getSyncEncoder().encodeSnapshot(game);
+
+        // Addressed like the broker addresses a subscriber; no conflate key, so a delta can't replace it
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setLeaveMutable(true);
+        clientOutboundChannel.send(MessageBuilder.createMessage(snapshot, accessor.getMessageHeaders()));
+        snapshots.increment();
+        log.debug(LogMarkers.SYNC, "Sent spectator {} a snapshot of match {}", sessionId, matchId);
+    }
+}
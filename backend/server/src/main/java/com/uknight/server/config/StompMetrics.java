@@ -0,0 +1,83 @@
+package com.uknight.server.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers for the LobbyController message handlers and the game broadcast path.
+ *
+ * Handler times are taken on the client inbound channel around the
+ * {@code @MessageMapping} dispatch, so the handlers themselves carry no timing
+ * code. Every timer is registered up front and looked up by destination, and
+ * the start time lives in a per-thread slot, so recording allocates nothing
+ * on the pooled inbound threads.
+ */
+@Component
+public class StompMetrics implements ExecutorChannelInterceptor {
+
+    private static final List<String> HANDLED_DESTINATIONS = List.of(
+            "/app/join", "/app/signal", "/app/chat",
+            "/app/game/invite", "/app/game/accept", "/app/game/move", "/app/game/sync", "/app/game/close");
+
+    private final Map<String, Timer> handlerTimers = new HashMap<>();
+    private final Timer broadcast;
+    private final Timer moveToSync;
+
+    private final ThreadLocal<long[]> handleStartedAt = ThreadLocal.withInitial(() -> new long[1]);
+
+    public StompMetrics(MeterRegistry meterRegistry) {
+        for (String destination : HANDLED_DESTINATIONS) {
+            handlerTimers.put(destination, Timer.builder("stomp.handler")
+                    .tag("destination", destination)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        // Third stage of a shot, after GameService's physics and win_check
+        this.broadcast = Timer.builder("game.shot.stage")
+                .tag("stage", "broadcast")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.moveToSync = Timer.builder("game.move.sync.latency")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        if (handler instanceof SimpAnnotationMethodMessageHandler) {
+            handleStartedAt.get()[0] = System.nanoTime();
+        }
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        if (handler instanceof SimpAnnotationMethodMessageHandler) {
+            Timer timer = handlerTimers.get(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+            if (timer != null) {
+                timer.record(System.nanoTime() - handleStartedAt.get()[0], TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public void recordBroadcast(long nanos) {
+        broadcast.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // From receiving a move to handing its state sync to the broker
+    public void recordMoveToSync(long nanos) {
+        moveToSync.record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -1,15 +1,102 @@
 package com.uknight.server.config;
 
+import com.uknight.server.cluster.ClusterBrokerBridge;
+import com.uknight.server.cluster.ClusterMembership;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.util.concurrent.Executor;
+
+@Slf4j
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final StompMetrics stompMetrics;
+    private final InboundRateLimiter inboundRateLimiter;
+    private final OutboundConflator outboundConflator;
+    private final SpectatorSnapshots spectatorSnapshots;
+    private final ClusterMembership clusterMembership;
+    private final ClusterBrokerBridge clusterBrokerBridge;
+
+    // "simple" (in-memory broker) or "relay" (an external STOMP broker such as RabbitMQ or ActiveMQ,
+    // which is what lets users on different nodes of a cluster reach each other)
+    @Value("${websocket.broker:simple}")
+    private String brokerMode;
+
+    @Value("${websocket.relay.host:localhost}")
+    private String relayHost;
+    @Value("${websocket.relay.port:61613}")
+    private int relayPort;
+    @Value("${websocket.relay.virtual-host:}")
+    private String relayVirtualHost;
+    @Value("${websocket.relay.client-login:guest}")
+    private String relayClientLogin;
+    @Value("${websocket.relay.client-passcode:guest}")
+    private String relayClientPasscode;
+    @Value("${websocket.relay.system-login:guest}")
+    private String relaySystemLogin;
+    @Value("${websocket.relay.system-passcode:guest}")
+    private String relaySystemPasscode;
+
+    // "pool" (bounded platform-thread pools) or "virtual" (a virtual thread per message)
+    @Value("${websocket.executor:pool}")
+    private String executorMode;
+
+    // Pool mode; 0 keeps Spring's defaults (2 x cores, unbounded max/queue)
+    @Value("${websocket.inbound.core-pool-size:0}")
+    private int inboundCorePoolSize;
+    @Value("${websocket.inbound.max-pool-size:0}")
+    private int inboundMaxPoolSize;
+    @Value("${websocket.inbound.queue-capacity:0}")
+    private int inboundQueueCapacity;
+    @Value("${websocket.outbound.core-pool-size:0}")
+    private int outboundCorePoolSize;
+    @Value("${websocket.outbound.max-pool-size:0}")
+    private int outboundMaxPoolSize;
+    @Value("${websocket.outbound.queue-capacity:0}")
+    private int outboundQueueCapacity;
+
+    // Virtual mode: messages in flight per channel before senders block (-1 = unlimited)
+    @Value("${websocket.inbound.concurrency-limit:-1}")
+    private int inboundConcurrencyLimit;
+    @Value("${websocket.outbound.concurrency-limit:-1}")
+    private int outboundConcurrencyLimit;
+
+    // Keep messages to one session in publish order; state sync deltas depend on it
+    @Value("${websocket.outbound.preserve-order:true}")
+    private boolean preserveOrder;
+
+    // Queue each session's messages in OutboundConflator, where newer state syncs replace unsent ones;
+    // that queue keeps publish order itself, so preserve-order only applies when this is off
+    @Value("${websocket.outbound.conflate:true}")
+    private boolean conflate;
+
+    // Transport limits, defaults as in Spring; a client that can't take its messages within
+    // the time or buffer limit is disconnected instead of holding up the sending thread
+    @Value("${websocket.transport.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+    @Value("${websocket.transport.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+    @Value("${websocket.transport.message-size-limit:65536}")
+    private int messageSizeLimit;
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // REMOVED .withSockJS() to allow raw WebSocket connections at /ws
@@ -20,7 +107,95 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.setApplicationDestinationPrefixes("/app");
-        registry.enableSimpleBroker("/topic", "/queue");
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            var relay = registry.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayClientLogin)
+                    .setClientPasscode(relayClientPasscode)
+                    .setSystemLogin(relaySystemLogin)
+                    .setSystemPasscode(relaySystemPasscode);
+            if (!relayVirtualHost.isEmpty()) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+            log.info("Relaying /topic and /queue to the STOMP broker at {}:{}", relayHost, relayPort);
+        } else {
+            registry.enableSimpleBroker("/topic", "/queue");
+            if (clusterMembership.isClustered()) {
+                // No shared broker, so the nodes copy each other's publications
+                registry.configureBrokerChannel().interceptors(clusterBrokerBridge);
+            }
+        }
         registry.setUserDestinationPrefix("/user");
+        registry.setPreservePublishOrder(preserveOrder && !conflate);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        configureChannel(registration, "inbound",
+                inboundCorePoolSize, inboundMaxPoolSize, inboundQueueCapacity, inboundConcurrencyLimit);
+        registration.interceptors(inboundRateLimiter, stompMetrics, spectatorSnapshots);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        configureChannel(registration, "outbound",
+                outboundCorePoolSize, outboundMaxPoolSize, outboundQueueCapacity, outboundConcurrencyLimit);
+        if (conflate) {
+            registration.interceptors(outboundConflator);
+        }
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit);
+        if (conflate) {
+            // Lets the conflator close a session whose queue passed the buffer limit
+            registration.addDecoratorFactory(outboundConflator);
+        }
+    }
+
+    // Backlog and busy threads of the channel pools; virtual-thread channels have no queue to report
+    @Bean
+    public MeterBinder stompChannelMetrics(@Qualifier("clientInboundChannelExecutor") Executor inbound,
+                                           @Qualifier("clientOutboundChannelExecutor") Executor outbound) {
+        return registry -> {
+            bindChannelMetrics(registry, "inbound", inbound);
+            bindChannelMetrics(registry, "outbound", outbound);
+        };
+    }
+
+    private static void bindChannelMetrics(MeterRegistry registry, String channel, Executor executor) {
+        if (executor instanceof ThreadPoolTaskExecutor pool) {
+            Gauge.builder("stomp.channel.queued", pool, ThreadPoolTaskExecutor::getQueueSize)
+                    .tag("channel", channel)
+                    .register(registry);
+            Gauge.builder("stomp.channel.active", pool, ThreadPoolTaskExecutor::getActiveCount)
+                    .tag("channel", channel)
+                    .register(registry);
+        }
+    }
+
+    private void configureChannel(ChannelRegistration registration, String channel,
+                                  int corePoolSize, int maxPoolSize, int queueCapacity, int concurrencyLimit) {
+        if ("virtual".equalsIgnoreCase(executorMode)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("ws-" + channel + "-");
+            executor.setVirtualThreads(true);
+            // Blocks the submitting thread at the limit, which pushes back on the client's socket
+            executor.setConcurrencyLimit(concurrencyLimit);
+            registration.executor(executor);
+            log.info("WebSocket {} channel on virtual threads (concurrency limit {})", channel, concurrencyLimit);
+            return;
+        }
+
+        var taskExecutor = registration.taskExecutor();
+        if (corePoolSize > 0) taskExecutor.corePoolSize(corePoolSize);
+        if (maxPoolSize > 0) taskExecutor.maxPoolSize(maxPoolSize);
+        if (queueCapacity > 0) taskExecutor.queueCapacity(queueCapacity);
+        log.info("WebSocket {} channel on a thread pool (core {}, max {}, queue {})", channel,
+                corePoolSize > 0 ? corePoolSize : "default", maxPoolSize > 0 ? maxPoolSize : "default",
+                queueCapacity > 0 ? queueCapacity : "default");
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,31 @@
 package com.uknight.server.controller;
 
+import com.uknight.server.cluster.ClusterCommand;
+import com.uknight.server.cluster.ClusterService;
+import com.uknight.server.config.LogMarkers;
+import com.uknight.server.config.OutboundConflator;
+import com.uknight.server.config.StompMetrics;
+import com.uknight.server.service.BotPlayer;
+import com.uknight.server.service.GameLoop;
+import com.uknight.server.service.GameMessenger;
 import com.uknight.server.service.GameService;
 import com.uknight.server.service.MatchmakingService;
+import com.uknight.server.service.PlayerHandle;
+import com.uknight.server.service.SessionRegistry;
+import com.uknight.server.service.SignalRelay;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.MimeTypeUtils;
 
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 
@@ -19,79 +34,101 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class LobbyController {
 
+    // The bot never connects, so it has no handle in the SessionRegistry
+    private static final PlayerHandle BOT = PlayerHandle.of(BotPlayer.ID);
+
     private final MatchmakingService matchmakingService;
     private final GameService gameService;
+    private final GameLoop gameLoop;
+    private final SessionRegistry sessionRegistry;
+    private final SignalRelay signalRelay;
     private final SimpMessagingTemplate messagingTemplate;
+    private final GameMessenger gameMessenger;
+    private final StompMetrics stompMetrics;
+    private final ClusterService clusterService;
+    private final BotPlayer botPlayer;
+
+    // GAME_STATE_SYNC frames are binary, see StateSyncEncoder; a newer one may replace an unsent one
+    private static Map<String, Object> syncHeaders(String matchId) {
+        return Map.of(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_OCTET_STREAM,
+                OutboundConflator.CONFLATE_HEADER, matchId);
+    }
 
     // Frontend sends to: /app/join
     @MessageMapping("/join")
     public void joinLobby(@Payload String university, SimpMessageHeaderAccessor headerAccessor) {
         // We use the UUID sent by the client for topics, as it's easier to synchronize
-        String sessionId = headerAccessor.getFirstNativeHeader("uuid");
-        if (sessionId == null) {
-            sessionId = headerAccessor.getSessionId(); // Fallback
+        String sessionId = SessionRegistry.handleOf(headerAccessor).uuid();
+
+        log.info(LogMarkers.JOIN, "Student joined the lobby from: {} (UUID: {})", university, sessionId);
+
+        // Clients that didn't send their uuid on CONNECT are identified here
+        sessionRegistry.register(headerAccessor.getSessionId(), sessionId);
+
+        // In a cluster, the user's shard may be matched on another node
+        if (!clusterService.routeJoin(sessionId, university)) {
+            join(sessionId, university);
         }
-        
-        log.info("Student joined the lobby from: {} (UUID: {})", university, sessionId);
-        
-        matchmakingService.addUser(sessionId);
+    }
+
+    private void join(String sessionId, String university) {
+        matchmakingService.addUser(sessionId, university);
 
         String partnerSessionId = matchmakingService.findMatch(sessionId);
         
         if (partnerSessionId != null) {
-            // Notify both users that a match is found
             log.info("Match created: {} and {}", sessionId, partnerSessionId);
-            
-            // Notify current user (initiator of the match)
-            Object payload1 = Map.of("peerId", partnerSessionId, "initiator", true);
-            messagingTemplate.convertAndSend("/topic/match/" + sessionId, payload1);
-                
-            // Notify partner
-            Object payload2 = Map.of("peerId", sessionId, "initiator", false);
-            messagingTemplate.convertAndSend("/topic/match/" + partnerSessionId, payload2);
+            notifyMatch(sessionId, partnerSessionId);
         }
     }
 
+    // Matches made by the spillover sweeper rather than a join request
+    @EventListener
+    public void onMatchFound(MatchmakingService.MatchFoundEvent event) {
+        notifyMatch(event.initiatorId(), event.partnerId());
+    }
+
+    private void notifyMatch(String initiatorId, String partnerId) {
+        // Either user may be connected to another node
+        clusterService.pair(initiatorId, partnerId);
+
+        // Notify current user (initiator of the match)
+        Object payload1 = Map.of("peerId", partnerId, "initiator", true);
+        messagingTemplate.convertAndSend(sessionRegistry.topicOf(initiatorId, PlayerHandle.Topic.MATCH), payload1);
+            
+        // Notify partner
+        Object payload2 = Map.of("peerId", initiatorId, "initiator", false);
+        messagingTemplate.convertAndSend(sessionRegistry.topicOf(partnerId, PlayerHandle.Topic.MATCH), payload2);
+    }
+
     // Frontend sends to: /app/signal
     // Payload should contain: { "type": "offer/answer/ice", "data": "...", "targetPeerId": "..." }
     @MessageMapping("/signal")
-    public void handleSignal(@Payload Map<String, Object> signal, SimpMessageHeaderAccessor headerAccessor) {
-        String senderId = headerAccessor.getFirstNativeHeader("uuid");
-        if (senderId == null) {
-             senderId = headerAccessor.getSessionId();
-        }
-        
-        String targetPeerId = (String) signal.get("targetPeerId");
-        
-        log.info("Signal {} from {} to {}", signal.get("type"), senderId, targetPeerId);
-        
+    public void handleSignal(@Payload byte[] signal, SimpMessageHeaderAccessor headerAccessor) {
+        String senderId = SessionRegistry.handleOf(headerAccessor).uuid();
+
+        // Forward the signal to the specific user as-is; the receiver gets senderId as a header
+        String targetPeerId = signalRelay.relay(PlayerHandle.Topic.SIGNAL, signal, senderId);
+
         if (targetPeerId != null) {
-            // Forward the signal to the specific user
-            // We strip 'targetPeerId' and add 'senderId' so the receiver knows who sent it
-            signal.put("senderId", senderId);
-            Object signalPayload = signal;
-            messagingTemplate.convertAndSend("/topic/signal/" + targetPeerId, signalPayload);
+            log.debug(LogMarkers.SIGNAL, "Signal from {} to {} ({} bytes)", senderId, targetPeerId, signal.length);
+        } else {
+            log.warn(LogMarkers.SIGNAL, "Dropped signal from {}: no valid targetPeerId", senderId);
         }
     }
     // Frontend sends to: /app/chat
     // Payload should contain: { "targetPeerId": "...", "message": "..." }
     @MessageMapping("/chat")
-    public void handleChat(@Payload Map<String, String> chatMessage, SimpMessageHeaderAccessor headerAccessor) {
-        String senderId = headerAccessor.getFirstNativeHeader("uuid");
-        if (senderId == null) {
-             senderId = headerAccessor.getSessionId();
-        }
+    public void handleChat(@Payload byte[] chatMessage, SimpMessageHeaderAccessor headerAccessor) {
+        String senderId = SessionRegistry.handleOf(headerAccessor).uuid();
 
-        String targetPeerId = chatMessage.get("targetPeerId");
-        String messageContent = chatMessage.get("message");
+        // Same pass-through as signals, once the body has a string message
+        String targetPeerId = signalRelay.relay(PlayerHandle.Topic.CHAT, chatMessage, senderId);
 
-        log.info("Chat message from {} to {}: {}", senderId, targetPeerId, messageContent);
-
-        if (targetPeerId != null && messageContent != null) {
-            // Forward the signal to the specific user
-            // We include 'senderId' so the receiver knows who sent it
-            Object payload = Map.of("senderId", senderId, "message", messageContent);
-            messagingTemplate.convertAndSend("/topic/chat/" + targetPeerId, payload);
+        if (targetPeerId != null) {
+            log.info(LogMarkers.CHAT, "Chat message from {} to {} ({} bytes)", senderId, targetPeerId, chatMessage.length);
+        } else {
+            log.warn(LogMarkers.CHAT, "Dropped chat message from {}: no valid targetPeerId or message", senderId);
         }
     }
 
@@ -101,10 +138,8 @@ public class LobbyController {
 
     @MessageMapping("/game/invite")
     public void handleGameInvite(@Payload Map<String, String> inviteData, SimpMessageHeaderAccessor headerAccessor) {
-        String senderId = headerAccessor.getFirstNativeHeader("uuid");
-        if (senderId == null) {
-            senderId = headerAccessor.getSessionId();
-        }
+        PlayerHandle sender = SessionRegistry.handleOf(headerAccessor);
+        String senderId = sender.uuid();
 
         String targetPeerId = inviteData.get("targetPeerId");
         String gameType = inviteData.get("gameType");
@@ -115,9 +150,16 @@ public class LobbyController {
         Map<String, Object> confirmPayload = new HashMap<>();
         confirmPayload.put("type", "GAME_INVITE_SENT_CONFIRM");
         confirmPayload.put("targetPeerId", targetPeerId);
-        messagingTemplate.convertAndSend("/topic/game/" + senderId, (Object) confirmPayload);
+        messagingTemplate.convertAndSend(sender.topic(PlayerHandle.Topic.GAME), (Object) confirmPayload);
 
-        if (targetPeerId != null) {
+        if (BotPlayer.isBot(targetPeerId)) {
+            // The bot accepts straight away, as if it had sent /app/game/accept
+            String matchId = UUID.randomUUID().toString();
+            Map<String, String> acceptData = Map.of("targetPeerId", senderId, "matchId", matchId);
+            if (!clusterService.routeGame(ClusterCommand.Kind.ACCEPT, matchId, BotPlayer.ID, acceptData)) {
+                acceptGame(BOT, sender, matchId);
+            }
+        } else if (targetPeerId != null) {
             String matchId = UUID.randomUUID().toString();
             Map<String, Object> payload = new HashMap<>();
             payload.put("senderId", senderId);
@@ -125,7 +167,7 @@ public class LobbyController {
             payload.put("matchId", matchId);
             payload.put("type", "GAME_INVITE");
 
-            messagingTemplate.convertAndSend("/topic/game/" + targetPeerId, (Object) payload);
+            messagingTemplate.convertAndSend(sessionRegistry.topicOf(targetPeerId, PlayerHandle.Topic.GAME), (Object) payload);
         }
     }
 
@@ -133,134 +175,233 @@ public class LobbyController {
     // Payload should contain: { "targetPeerId": "...", "matchId": "..." }
     @MessageMapping("/game/accept")
     public void handleGameAccept(@Payload Map<String, String> acceptData, SimpMessageHeaderAccessor headerAccessor) {
-        String senderId = headerAccessor.getFirstNativeHeader("uuid");
-        if (senderId == null) {
-             senderId = headerAccessor.getSessionId();
-        }
+        PlayerHandle sender = SessionRegistry.handleOf(headerAccessor);
+        String senderId = sender.uuid();
 
         String targetPeerId = acceptData.get("targetPeerId");
         String matchId = acceptData.get("matchId");
 
         log.info("Game accept from {} to {} for match: {}", senderId, targetPeerId, matchId);
 
+        // The bot accepts its own invites; a game it never agreed to would wait for its first shot forever
+        if (BotPlayer.isBot(targetPeerId)) {
+            log.warn("Dropped accept from {} for match {}: the bot never invites", senderId, matchId);
+            return;
+        }
         if (targetPeerId != null && matchId != null) {
-            // Create the game in the service
-            gameService.createGame(matchId, targetPeerId, senderId);
-
-            // Notify both players that game started
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("type", "GAME_START");
-            payload.put("matchId", matchId);
+            if (clusterService.routeGame(ClusterCommand.Kind.ACCEPT, matchId, senderId, acceptData)) {
+                // The game lives on another node; remember it so a disconnect here still closes it
+                sessionRegistry.addMatch(senderId, matchId);
+                return;
+            }
+            acceptGame(sender, sessionRegistry.resolve(targetPeerId), matchId);
+        }
+    }
 
-            messagingTemplate.convertAndSend("/topic/game/" + targetPeerId, (Object) payload);
-            messagingTemplate.convertAndSend("/topic/game/" + senderId, (Object) payload);
+    private void acceptGame(PlayerHandle sender, PlayerHandle target, String matchId) {
+        // Create the game in the service
+        try {
+            gameService.createGame(matchId, target, sender);
+        } catch (IllegalArgumentException e) {
+            log.warn("Refused match {} between {} and {}: {}", matchId, target, sender, e.getMessage());
+            return;
         }
+        sessionRegistry.addMatch(target.uuid(), matchId);
+        sessionRegistry.addMatch(sender.uuid(), matchId);
+
+        // Notify both players that game started
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", "GAME_START");
+        payload.put("matchId", matchId);
+
+        gameMessenger.sendToAll(payload, target.topic(PlayerHandle.Topic.GAME), sender.topic(PlayerHandle.Topic.GAME));
     }
 
     // Frontend sends to: /app/game/move
     // Payload should contain: { "matchId": "...", "dx": 0.0, "dy": 0.0 }
     @MessageMapping("/game/move")
     public void handleGameMove(@Payload Map<String, Object> moveData, SimpMessageHeaderAccessor headerAccessor) {
-        String senderId = headerAccessor.getFirstNativeHeader("uuid");
-        if (senderId == null) {
-             senderId = headerAccessor.getSessionId();
-        }
+        PlayerHandle sender = SessionRegistry.handleOf(headerAccessor);
 
         String matchId = (String) moveData.get("matchId");
-        Double dx = ((Number) moveData.get("dx")).doubleValue();
-        Double dy = ((Number) moveData.get("dy")).doubleValue();
-
-        log.info("Game move from {} for match {}: dx={}, dy={}", senderId, matchId, dx, dy);
-
-        if (matchId != null) {
-            // Processing logic
-            var gameOpt = gameService.getGame(matchId);
-            if (gameOpt.isPresent()) {
-                GameService.GameState game = gameOpt.get();
-                String opponentId = senderId.equals(game.getPlayer1Id()) ? game.getPlayer2Id() : game.getPlayer1Id();
-                
-                Map<String, Object> moveBroadcast = new HashMap<>(moveData);
-                moveBroadcast.put("type", "GAME_MOVE_ANNOUNCE");
-                moveBroadcast.put("senderId", senderId);
-
-                messagingTemplate.convertAndSend("/topic/game/" + senderId, (Object) moveBroadcast);
-                messagingTemplate.convertAndSend("/topic/game/" + opponentId, (Object) moveBroadcast);
-            }
 
-            // Process the shot through the game service (updates state)
-            GameService.GameState gameState = gameService.processShot(matchId, senderId, new GameService.Shot(dx, dy));
+        log.info(LogMarkers.MOVE, "Game move from {} for match {}: dx={}, dy={}",
+                sender, matchId, moveData.get("dx"), moveData.get("dy"));
 
-            if (gameState != null) {
-                // Broadcast final game state to both players (for reconciliation)
-                Map<String, Object> statePayload = new HashMap<>();
-                statePayload.put("type", "GAME_STATE_SYNC");
-                statePayload.put("matchId", matchId);
-                statePayload.put("pucks", serializePucks(gameState.getPucks()));
-                statePayload.put("currentTurn", gameState.getCurrentTurn());
-                statePayload.put("player1Score", gameState.getPlayer1Score());
-                statePayload.put("player2Score", gameState.getPlayer2Score());
-                statePayload.put("round", gameState.getRound());
-                statePayload.put("roundOver", gameState.isRoundOver());
-                statePayload.put("winner", gameState.getWinner());
-
-                messagingTemplate.convertAndSend("/topic/game/" + gameState.getPlayer1Id(), (Object) statePayload);
-                messagingTemplate.convertAndSend("/topic/game/" + gameState.getPlayer2Id(), (Object) statePayload);
-            }
+        if (matchId != null && !clusterService.routeGame(ClusterCommand.Kind.MOVE, matchId, sender.uuid(), moveData)) {
+            moveGame(sender, matchId, moveData);
+        }
+    }
+
+    private void moveGame(PlayerHandle sender, String matchId, Map<String, ?> moveData) {
+        double dx = ((Number) moveData.get("dx")).doubleValue();
+        double dy = ((Number) moveData.get("dy")).doubleValue();
+
+        // Move received -> state sync handed to the broker
+        long receivedAt = System.nanoTime();
+
+        // Physics runs on the game loop; the inbound thread only enqueues the shot.
+        // The sync is encoded on the match's worker right after this shot, so it carries this shot alone
+        // even when the other player's lands in the same tick.
+        // Only a shot the game accepted is announced, so a rejected one never reaches the players.
+        gameLoop.submitShot(matchId, sender, new GameService.Shot(dx, dy), gameState -> {
+            announceMove(gameState, sender, moveData);
+            broadcastGameState(gameState);
+            stompMetrics.recordMoveToSync(System.nanoTime() - receivedAt);
+            playBotTurn(gameState);
+        });
+    }
+
+    private void announceMove(GameService.GameState gameState, PlayerHandle sender, Map<String, ?> moveData) {
+        Map<String, Object> moveBroadcast = new HashMap<>(moveData);
+        moveBroadcast.put("type", "GAME_MOVE_ANNOUNCE");
+        moveBroadcast.put("senderId", sender.uuid());
+
+        gameMessenger.sendToAll(moveBroadcast, sender.topic(PlayerHandle.Topic.GAME),
+                gameState.getOpponent(sender).topic(PlayerHandle.Topic.GAME), gameState.getSpectatorTopic());
+    }
+
+    // Runs on the match's worker; the bot's shot then goes through the same path as a client's
+    private void playBotTurn(GameService.GameState gameState) {
+        if (!BotPlayer.isBot(gameState.getCurrentTurn()) || gameState.isMatchOver()) {
+            return;
+        }
+        String matchId = gameState.getMatchId();
+        botPlayer.chooseShot(gameState).thenAccept(shot ->
+                moveGame(gameState.getCurrentPlayer(), matchId, Map.of("matchId", matchId, "dx", shot.dx, "dy", shot.dy)));
+    }
+
+    // Broadcast the changes since the last sync to both players (for reconciliation) and to spectators
+    private void broadcastGameState(GameService.GameState gameState) {
+        long startedAt = System.nanoTime();
+        byte[] delta = gameState.getSyncEncoder().encodeDelta(gameState);
+        // What a slow session gets instead if this delta replaces one it hasn't been sent yet, encoded only then
+        Map<String, Object> headers = Map.of(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_OCTET_STREAM,
+                OutboundConflator.CONFLATE_HEADER, gameState.getMatchId(),
+                OutboundConflator.SNAPSHOT_HEADER, gameState.getSnapshotOnDemand());
+
+        gameMessenger.sendToAll(delta, headers,
+                gameState.getPlayer1().topic(PlayerHandle.Topic.GAME), gameState.getPlayer2().topic(PlayerHandle.Topic.GAME),
+                gameState.getSpectatorTopic());
+        stompMetrics.recordBroadcast(System.nanoTime() - startedAt);
+    }
+
+    // Frontend sends to: /app/game/sync
+    // Payload should contain: { "matchId": "..." }
+    // Sent when the client misses a GAME_STATE_SYNC sequence number; answered with a full snapshot
+    @MessageMapping("/game/sync")
+    public void handleGameSync(@Payload Map<String, String> syncData, SimpMessageHeaderAccessor headerAccessor) {
+        PlayerHandle sender = SessionRegistry.handleOf(headerAccessor);
+
+        String matchId = syncData.get("matchId");
+
+        log.info(LogMarkers.SYNC, "Game sync request from {} for match: {}", sender, matchId);
+
+        if (matchId != null && !clusterService.routeGame(ClusterCommand.Kind.SYNC, matchId, sender.uuid(), syncData)) {
+            syncGame(sender, matchId);
         }
     }
 
+    private void syncGame(PlayerHandle requester, String matchId) {
+        gameLoop.submitSync(matchId, requester)
+                .thenAcceptAsync(gameState -> {
+                    if (gameState != null && gameState.hasPlayer(requester)) {
+                        byte[] snapshot = gameState.getSyncEncoder().encodeSnapshot(gameState);
+                        gameMessenger.sendToAll(snapshot, syncHeaders(matchId), requester.topic(PlayerHandle.Topic.GAME));
+                    }
+                }, gameLoop.executorFor(matchId));
+    }
+
     // Frontend sends to: /app/game/close
     // Payload should contain: { "matchId": "..." }
     @MessageMapping("/game/close")
     public void handleGameClose(@Payload Map<String, String> closeData, SimpMessageHeaderAccessor headerAccessor) {
-        String senderId = headerAccessor.getFirstNativeHeader("uuid");
-        if (senderId == null) {
-             senderId = headerAccessor.getSessionId();
-        }
+        PlayerHandle sender = SessionRegistry.handleOf(headerAccessor);
 
         String matchId = closeData.get("matchId");
 
-        log.info("Game close from {} for match: {}", senderId, matchId);
-
-        if (matchId != null) {
-            // Get the game to find the opponent
-            var gameOpt = gameService.getGame(matchId);
-            if (gameOpt.isPresent()) {
-                GameService.GameState gameState = gameOpt.get();
-                String opponentId = senderId.equals(gameState.getPlayer1Id())
-                    ? gameState.getPlayer2Id()
-                    : gameState.getPlayer1Id();
-
-                // Notify opponent that game was closed
-                Map<String, Object> payload = new HashMap<>();
-                payload.put("type", "GAME_CLOSED");
-                payload.put("matchId", matchId);
-                messagingTemplate.convertAndSend("/topic/game/" + opponentId, (Object) payload);
+        log.info("Game close from {} for match: {}", sender, matchId);
+
+        if (matchId != null && !clusterService.routeGame(ClusterCommand.Kind.CLOSE, matchId, sender.uuid(), closeData)) {
+            closeGame(sender, matchId);
+        }
+    }
+
+    private void closeGame(PlayerHandle closing, String matchId) {
+        // Closing goes through the match's mailbox so it can't race an in-flight shot
+        gameLoop.submitClose(matchId, closing).thenAccept(gameState -> {
+            if (gameState != null) {
+                notifyGameClosed(gameState, closing);
             }
+        });
+    }
 
-            // Remove the game
-            gameService.removeGame(matchId);
+    // Commands forwarded by the node the user is connected to
+    @EventListener
+    public void onRemoteCommand(ClusterService.RemoteCommandEvent event) {
+        ClusterCommand command = event.command();
+        String senderId = command.senderId();
+        PlayerHandle sender = PlayerHandle.ofNullable(senderId);
+        Map<String, ?> payload = command.payload();
+        switch (command.kind()) {
+            case JOIN -> join(senderId, (String) payload.get("university"));
+            case LEAVE -> sayBye(senderId, (String) payload.get("peerId"));
+            case ACCEPT -> acceptGame(sender, sessionRegistry.resolve((String) payload.get("targetPeerId")),
+                    (String) payload.get("matchId"));
+            case MOVE -> moveGame(sender, (String) payload.get("matchId"), payload);
+            case SYNC -> syncGame(sender, (String) payload.get("matchId"));
+            case CLOSE -> closeGame(sender, (String) payload.get("matchId"));
+            default -> {
+                // PAIR is handled by ClusterService, PUBLISH by ClusterBrokerBridge
+            }
         }
     }
 
-    // Helper method to serialize pucks for JSON
-    private Object[] serializePucks(GameService.Puck[] pucks) {
-        if (pucks == null) return new Object[0];
-
-        Object[] result = new Object[pucks.length];
-        for (int i = 0; i < pucks.length; i++) {
-            if (pucks[i] != null) {
-                Map<String, Object> puckData = new HashMap<>();
-                puckData.put("x", pucks[i].x);
-                puckData.put("y", pucks[i].y);
-                puckData.put("radius", pucks[i].radius);
-                puckData.put("vx", pucks[i].vx);
-                puckData.put("vy", pucks[i].vy);
-                result[i] = puckData;
-            } else {
-                result[i] = null;
+    // Games dropped by the store (idle or making room): tell whoever is still there
+    @EventListener
+    public void onGameEvicted(GameService.GameEvictedEvent event) {
+        GameService.GameState gameState = event.game();
+        sessionRegistry.removeMatch(gameState.getPlayer1Id(), gameState.getMatchId());
+        sessionRegistry.removeMatch(gameState.getPlayer2Id(), gameState.getMatchId());
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", "GAME_CLOSED");
+        payload.put("matchId", gameState.getMatchId());
+        payload.put("reason", event.reason().name().toLowerCase(Locale.ROOT));
+        gameMessenger.sendToAll(payload,
+                gameState.getPlayer1().topic(PlayerHandle.Topic.GAME), gameState.getPlayer2().topic(PlayerHandle.Topic.GAME),
+                gameState.getSpectatorTopic());
+    }
+
+    // Lobby partner gets the same BYE as a skip; open matches are closed as if the user left them
+    @EventListener
+    public void onUserDisconnected(SessionRegistry.UserDisconnectedEvent event) {
+        // A partner on another node is told by that node (see ClusterService)
+        sayBye(event.uuid(), event.peerId());
+        for (String matchId : event.matchIds()) {
+            if (!clusterService.routeGame(ClusterCommand.Kind.CLOSE, matchId, event.uuid(), Map.of("matchId", matchId))) {
+                closeGame(PlayerHandle.of(event.uuid()), matchId);
             }
         }
-        return result;
+    }
+
+    private void sayBye(String uuid, String peerId) {
+        if (peerId != null && sessionRegistry.isPaired(peerId, uuid)) {
+            Object bye = Map.of("type", "BYE", "senderId", uuid);
+            messagingTemplate.convertAndSend(sessionRegistry.topicOf(peerId, PlayerHandle.Topic.SIGNAL), bye);
+        }
+    }
+
+    private void notifyGameClosed(GameService.GameState gameState, PlayerHandle closing) {
+        sessionRegistry.removeMatch(gameState.getPlayer1Id(), gameState.getMatchId());
+        sessionRegistry.removeMatch(gameState.getPlayer2Id(), gameState.getMatchId());
+
+        PlayerHandle opponent = gameState.getOpponent(closing);
+
+        // Notify opponent and spectators that game was closed
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", "GAME_CLOSED");
+        payload.put("matchId", gameState.getMatchId());
+        gameMessenger.sendToAll(payload, opponent.topic(PlayerHandle.Topic.GAME), gameState.getSpectatorTopic());
     }
 }
@@ -0,0 +1,235 @@
+package com.uknight.server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-side opponent for players who don't want to wait for a match; a
+ * client invites it with {@code targetPeerId} {@link #ID} and it accepts
+ * straight away.
+ *
+ * On its turn the bot copies the game's physics and tries a fixed set of
+ * candidate shots (angles spread by the golden ratio, power spread evenly up
+ * to {@link #MAX_SHOT}) on its own fork-join pool: each candidate is applied to
+ * a fresh copy, simulated with the game's solver and scored on the same
+ * out-of-bounds test the game uses to decide a round. Knocking the opponent
+ * off while staying on wins; a quiet shot is scored by who ends up nearer the
+ * centre; falling off together or alone is worse.
+ *
+ * Bots share one small pool ({@code game.bot.threads}, a quarter of the cores
+ * by default, at low priority), so however many bot games are running they
+ * can't take more CPU than that from the game loop and the channels. Each move
+ * also has a deadline ({@code game.bot.move-budget-ms}) counted from the
+ * moment it was asked for: a search that is still queued or running at the
+ * deadline plays the best shot found so far, or a plain shot at the opponent
+ * if it found none.
+ */
+@Slf4j
+@Service
+public class BotPlayer {
+
+    // Player id of the bot in every bot game
+    public static final String ID = "bot";
+
+    // Largest shot tried, in client units; at full power a puck crosses the platform
+    static final double MAX_SHOT = 2.5;
+
+    private static final double GOLDEN_RATIO_FRACTION = 0.6180339887498949;
+    // Candidates one leaf task evaluates; below this a fork costs more than it saves
+    private static final int LEAF_CANDIDATES = 64;
+    // Candidates between deadline checks
+    private static final int DEADLINE_STRIDE = 8;
+
+    private static final double WIN = 1;
+    private static final double DRAW = -1;
+    private static final double LOSS = -2;
+
+    private final ForkJoinPool pool;
+    private final int candidates;
+    private final long budgetNanos;
+
+    private final Timer searchTimer;
+    private final Counter evaluated;
+    private final Counter truncated;
+
+    public BotPlayer(MeterRegistry meterRegistry,
+                     @Value("${game.bot.threads:0}") int threads,
+                     @Value("${game.bot.candidates:4096}") int candidates,
+                     @Value("${game.bot.move-budget-ms:50}") long budgetMs) {
+        int parallelism = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("game-bot-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, null, false);
+        this.candidates = Math.max(1, candidates);
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+
+        this.searchTimer = Timer.builder("game.bot.search")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.evaluated = Counter.builder("game.bot.candidates").register(meterRegistry);
+        this.truncated = Counter.builder("game.bot.truncated").register(meterRegistry);
+        log.info("Bot player started with {} threads, {} candidates, {} ms per move", parallelism, candidates, budgetMs);
+    }
+
+    public static boolean isBot(String playerId) {
+        return ID.equals(playerId);
+    }
+
+    /**
+     * Picks the bot's next shot in the given game. Must be called on the
+     * match's GameLoop worker, which is the only thread that may read the
+     * game; the search itself runs on a copy, on the bot pool.
+     */
+    public CompletableFuture<GameService.Shot> chooseShot(GameService.GameState game) {
+        long startedAt = System.nanoTime();
+        PhysicsEngine snapshot = new PhysicsEngine(game.getPhysics().getSolver());
+        snapshot.copyFrom(game.getPhysics());
+        int puck = ID.equals(game.getPlayer1Id()) ? 0 : 1;
+
+        Search search = new Search(snapshot, puck, 0, candidates, startedAt + budgetNanos);
+        return CompletableFuture.supplyAsync(search::invoke, pool).thenApply(best -> {
+            searchTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            evaluated.increment(best.evaluated);
+            if (best.evaluated < candidates) {
+                truncated.increment();
+            }
+            return best.evaluated > 0 ? shot(best.index, candidates) : aimAt(snapshot, puck);
+        });
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // Candidate index of n, as a shot
+    static GameService.Shot shot(int index, int n) {
+        double angle = angle(index);
+        double power = power(index, n);
+        return new GameService.Shot(power * Math.cos(angle), power * Math.sin(angle));
+    }
+
+    private static double angle(int index) {
+        return 2 * Math.PI * (index * GOLDEN_RATIO_FRACTION % 1);
+    }
+
+    private static double power(int index, int n) {
+        return MAX_SHOT * (index + 0.5) / n;
+    }
+
+    // Fallback when the deadline passed before any candidate was tried
+    private static GameService.Shot aimAt(PhysicsEngine physics, int puck) {
+        int opponent = 1 - puck;
+        double dx = physics.getX(opponent) - physics.getX(puck);
+        double dy = physics.getY(opponent) - physics.getY(puck);
+        double length = Math.hypot(dx, dy);
+        if (length == 0) {
+            return new GameService.Shot(MAX_SHOT / 2, 0);
+        }
+        return new GameService.Shot(MAX_SHOT / 2 * dx / length, MAX_SHOT / 2 * dy / length);
+    }
+
+    // After the shot has been simulated: higher is better for the bot
+    static double score(PhysicsEngine physics, int puck) {
+        boolean out = physics.isOutOfBounds(puck);
+        boolean opponentOut = physics.isOutOfBounds(1 - puck);
+        if (opponentOut) {
+            return out ? DRAW : WIN + centreMargin(physics, puck);
+        }
+        if (out) {
+            return LOSS;
+        }
+        return centreMargin(physics, puck) - centreMargin(physics, 1 - puck);
+    }
+
+    // How far inside the edge a puck is, on squared distances (0 at the edge)
+    private static double centreMargin(PhysicsEngine physics, int puck) {
+        double x = physics.getX(puck);
+        double y = physics.getY(puck);
+        return PhysicsEngine.PLATFORM_RADIUS * PhysicsEngine.PLATFORM_RADIUS - (x * x + y * y);
+    }
+
+    // Best candidate of a range; evaluated counts how many were actually tried
+    private record Best(int index, double score, int evaluated) {
+        static final Best NONE = new Best(-1, Double.NEGATIVE_INFINITY, 0);
+
+        Best or(Best other) {
+            Best better = other.score > score ? other : this;
+            return new Best(better.index, better.score, evaluated + other.evaluated);
+        }
+    }
+
+    private class Search extends RecursiveTask<Best> {
+        private final PhysicsEngine snapshot;
+        private final int puck;
+        private final int from;
+        private final int to;
+        private final long deadline;
+
+        Search(PhysicsEngine snapshot, int puck, int from, int to, long deadline) {
+            this.snapshot = snapshot;
+            this.puck = puck;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected Best compute() {
+            if (System.nanoTime() - deadline >= 0) {
+                return Best.NONE; // Don't bother splitting what nobody will evaluate
+            }
+            if (to - from <= LEAF_CANDIDATES) {
+                return evaluate();
+            }
+            int middle = (from + to) >>> 1;
+            Search left = new Search(snapshot, puck, from, middle, deadline);
+            left.fork();
+            Best right = new Search(snapshot, puck, middle, to, deadline).compute();
+            return left.join().or(right);
+        }
+
+        private Best evaluate() {
+            PhysicsEngine scratch = new PhysicsEngine(snapshot.getSolver());
+            int bestIndex = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            int index = from;
+            while (index < to) {
+                if ((index - from) % DEADLINE_STRIDE == 0 && System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+                double angle = angle(index);
+                double power = power(index, candidates);
+                scratch.copyFrom(snapshot);
+                scratch.applyShot(puck, power * Math.cos(angle), power * Math.sin(angle));
+                scratch.simulate();
+                double score = score(scratch, puck);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestIndex = index;
+                }
+                index++;
+            }
+            return index == from ? Best.NONE : new Best(bestIndex, bestScore, index - from);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.uknight.server.service;
+
+import com.uknight.server.config.LogMarkers;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs every match as a single-writer actor, off the STOMP inbound threads.
+ *
+ * Matches are partitioned by matchId hash over a fixed set of single-threaded
+ * workers (one per core by default). Inbound handlers only put a command in the
+ * match's {@link MatchMailbox}; every tick each worker drains the mailboxes of
+ * its ready matches one command at a time, runs the physics for the whole
+ * batch, then completes the commands' futures in arrival order. A match always
+ * lands on the same worker, so its state is only ever touched by that thread
+ * and results go back to the messaging layer in order.
+ *
+ * A future's continuations see the match as it is after the whole batch, not
+ * after their own command. Work that must match one shot, such as its state
+ * sync, is passed to {@link #submitShot(String, PlayerHandle, GameService.Shot, Consumer)}
+ * and runs right after that shot, before the match's next command.
+ */
+@Slf4j
+@Service
+public class GameLoop {
+
+    // Per match per tick, so one busy match can't hold up the rest of its partition
+    private static final int MAX_COMMANDS_PER_TICK = 16;
+
+    private final GameService gameService;
+    private final Partition[] partitions;
+
+    public GameLoop(GameService gameService,
+                    @Value("${game.loop.workers:0}") int workers,
+                    @Value("${game.loop.tick-ms:10}") long tickMs) {
+        this.gameService = gameService;
+
+        int count = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(i, tickMs);
+        }
+        log.info("Game loop started with {} workers, tick {} ms", count, tickMs);
+    }
+
+    public CompletableFuture<GameService.GameState> submitShot(String matchId, String playerId, GameService.Shot shot) {
+        return submitShot(matchId, PlayerHandle.of(playerId), shot);
+    }
+
+    public CompletableFuture<GameService.GameState> submitShot(String matchId, PlayerHandle player, GameService.Shot shot) {
+        return submitShot(matchId, player, shot, null);
+    }
+
+    // onApplied runs on the match's worker straight after the game accepts this shot, with the game in that state
+    public CompletableFuture<GameService.GameState> submitShot(String matchId, PlayerHandle player, GameService.Shot shot,
+                                                               Consumer<GameService.GameState> onApplied) {
+        return submit(matchId, MatchMailbox.Kind.SHOT, player, shot, onApplied);
+    }
+
+    // Completes with the closed game (to notify the opponent), or null if it was already gone
+    public CompletableFuture<GameService.GameState> submitClose(String matchId, String playerId) {
+        return submitClose(matchId, PlayerHandle.of(playerId));
+    }
+
+    public CompletableFuture<GameService.GameState> submitClose(String matchId, PlayerHandle player) {
+        return submit(matchId, MatchMailbox.Kind.CLOSE, player, null, null);
+    }
+
+    // Completes with the game once every command queued before it has been applied
+    public CompletableFuture<GameService.GameState> submitSync(String matchId, PlayerHandle player) {
+        return submit(matchId, MatchMailbox.Kind.SYNC, player, null, null);
+    }
+
+    /**
+     * The match's worker, for follow-up work that must see the match state
+     * consistently (e.g. encoding a state sync). Tasks run after the current
+     * batch, in submission order.
+     */
+    public Executor executorFor(String matchId) {
+        return partitionFor(matchId).executor;
+    }
+
+    public int getWorkerCount() {
+        return partitions.length;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Partition partition : partitions) {
+            partition.executor.shutdown();
+        }
+    }
+
+    private CompletableFuture<GameService.GameState> submit(String matchId, MatchMailbox.Kind kind,
+                                                           PlayerHandle player, GameService.Shot shot,
+                                                           Consumer<GameService.GameState> onApplied) {
+        GameService.GameState game = gameService.getGameState(matchId);
+        if (game == null) {
+            log.warn(LogMarkers.MOVE, "Game not found: {}", matchId);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<GameService.GameState> result = new CompletableFuture<>();
+        MatchMailbox mailbox = game.getMailbox();
+        if (!mailbox.offer(new MatchMailbox.Command(kind, player, shot, onApplied, result))) {
+            log.warn(LogMarkers.MOVE, "Dropped {} from {} for match {}: mailbox closed or full", kind, player, matchId);
+            result.complete(null);
+            return result;
+        }
+
+        if (mailbox.trySchedule()) {
+            partitionFor(matchId).ready.offer(game);
+        }
+        return result;
+    }
+
+    private Partition partitionFor(String matchId) {
+        return partitions[Math.floorMod(matchId.hashCode(), partitions.length)];
+    }
+
+    private class Partition {
+        // Matches with pending commands, each present at most once
+        private final Queue<GameService.GameState> ready = new ConcurrentLinkedQueue<>();
+        private final List<GameService.GameState> batch = new ArrayList<>();
+        private final List<MatchMailbox.Command> processed = new ArrayList<>();
+        private final List<GameService.GameState> results = new ArrayList<>();
+        private final ScheduledExecutorService executor;
+
+        Partition(int index, long tickMs) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "game-loop-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        }
+
+        private void tick() {
+            GameService.GameState game;
+            while ((game = ready.poll()) != null) {
+                batch.add(game);
+            }
+            if (batch.isEmpty()) return;
+
+            // Step the whole batch before completing futures; only a shot's own follow-up runs in between
+            for (GameService.GameState match : batch) {
+                MatchMailbox.Command command;
+                for (int i = 0; i < MAX_COMMANDS_PER_TICK && (command = match.getMailbox().poll()) != null; i++) {
+                    int shotsBefore = match.getShotCount();
+                    GameService.GameState result = execute(match, command);
+                    processed.add(command);
+                    results.add(result);
+                    // Out of turn or after the close: no shot to follow up
+                    if (command.onApplied() != null && result != null && match.getShotCount() != shotsBefore) {
+                        applied(match, command, result);
+                    }
+                }
+            }
+
+            for (int i = 0; i < processed.size(); i++) {
+                processed.get(i).result().complete(results.get(i));
+            }
+
+            for (GameService.GameState match : batch) {
+                if (match.getMailbox().release()) {
+                    ready.offer(match);
+                }
+            }
+            batch.clear();
+            processed.clear();
+            results.clear();
+        }
+
+        private void applied(GameService.GameState game, MatchMailbox.Command command, GameService.GameState result) {
+            try {
+                command.onApplied().accept(result);
+            } catch (RuntimeException e) {
+                log.error("Follow-up of a {} for match {} failed", command.kind(), game.getMatchId(), e);
+            }
+        }
+
+        private GameService.GameState execute(GameService.GameState game, MatchMailbox.Command command) {
+            MatchMailbox mailbox = game.getMailbox();
+            try {
+                if (command.kind() == MatchMailbox.Kind.CLOSE) {
+                    if (mailbox.isClosed()) return null;
+                    mailbox.close();
+                    gameService.removeGame(game.getMatchId(), game);
+                    return game;
+                }
+                // Commands queued behind a close are discarded
+                if (mailbox.isClosed()) return null;
+                if (command.kind() == MatchMailbox.Kind.SYNC) return game;
+                return gameService.processShot(game, command.player(), command.shot());
+            } catch (RuntimeException e) {
+                log.error("{} for match {} failed", command.kind(), game.getMatchId(), e);
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.uknight.server.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Fan-out for game messages that go to several destinations (usually both
+ * players' topics).
+ *
+ * {@link SimpMessagingTemplate#convertAndSend} runs the message converter once
+ * per call, so sending the same payload to two players serialized it twice.
+ * Here the payload is converted once into an immutable message and that
+ * message is handed to the broker for every destination; each send only
+ * copies the headers to set its destination, the payload bytes are shared.
+ */
+@Service
+@RequiredArgsConstructor
+public class GameMessenger {
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    public void sendToAll(Object payload, String... destinations) {
+        sendToAll(payload, null, destinations);
+    }
+
+    public void sendToAll(Object payload, Map<String, Object> headers, String... destinations) {
+        send(prepare(payload, headers), destinations);
+    }
+
+    // Converts the payload once; the result can be sent any number of times
+    public Message<?> prepare(Object payload, Map<String, Object> headers) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        if (headers != null) {
+            headers.forEach(accessor::setHeader);
+        }
+        accessor.setLeaveMutable(true);
+
+        Message<?> message = messagingTemplate.getMessageConverter().toMessage(payload, accessor.getMessageHeaders());
+        if (message == null) {
+            throw new MessageConversionException("Unable to convert payload of type " + payload.getClass().getName());
+        }
+        // Immutable, so every send below gets its own header copy instead of overwriting the destination
+        accessor.setImmutable();
+        return message;
+    }
+
+    public void send(Message<?> message, String... destinations) {
+        for (String destination : destinations) {
+            messagingTemplate.send(destination, message);
+        }
+    }
+}
@@ -1,20 +1,125 @@
 package com.uknight.server.service;
 
+import com.uknight.server.config.LogMarkers;
+import com.uknight.server.config.SpectatorSnapshots;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
 public class GameService {
 
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Records accepted shots so active games survive a restart
+    private final ShotJournal journal;
+
+    // Solver for new games; restored games replay with the one the journal recorded for them
+    private final PhysicsEngine.Solver solver;
+
+    // Upper bound on live games (0 = unbounded); when full the idlest game makes room
+    private final int maxGames;
+
+    // A game with no shot for this long is expired by the sweeper (0 = never)
+    private final long idleTtlNanos;
+
+    private final Counter evictedGames;
+    private final Counter expiredGames;
+    private final Counter abandonedGames;
+
+    // Stages of a shot; the broadcast stage is timed by StompMetrics
+    private final Timer physicsStage;
+    private final Timer winCheckStage;
+
     // Game state storage: matchId -> GameState
     private final Map<String, GameState> activeGames = new ConcurrentHashMap<>();
 
+    public GameService(ApplicationEventPublisher eventPublisher,
+                       MeterRegistry meterRegistry,
+                       int maxGames,
+                       long idleTtlMs) {
+        this(eventPublisher, meterRegistry, maxGames, idleTtlMs, ShotJournal.disabled());
+    }
+
+    public GameService(ApplicationEventPublisher eventPublisher,
+                       MeterRegistry meterRegistry,
+                       int maxGames,
+                       long idleTtlMs,
+                       ShotJournal journal) {
+        this(eventPublisher, meterRegistry, maxGames, idleTtlMs, journal, "stepped");
+    }
+
+    @Autowired
+    public GameService(ApplicationEventPublisher eventPublisher,
+                       MeterRegistry meterRegistry,
+                       @Value("${game.store.max-games:10000}") int maxGames,
+                       @Value("${game.store.idle-ttl-ms:600000}") long idleTtlMs,
+                       ShotJournal journal,
+                       @Value("${game.physics.solver:stepped}") String solver) {
+        this.eventPublisher = eventPublisher;
+        this.journal = journal;
+        this.solver = PhysicsEngine.Solver.valueOf(solver.toUpperCase(Locale.ROOT));
+        this.maxGames = maxGames;
+        this.idleTtlNanos = TimeUnit.MILLISECONDS.toNanos(idleTtlMs);
+
+        Gauge.builder("game.store.active", activeGames, Map::size).register(meterRegistry);
+        this.evictedGames = Counter.builder("game.store.evicted").register(meterRegistry);
+        this.expiredGames = Counter.builder("game.store.expired").register(meterRegistry);
+        this.abandonedGames = Counter.builder("game.abandoned").register(meterRegistry);
+        this.physicsStage = Timer.builder("game.shot.stage")
+                .tag("stage", "physics")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.winCheckStage = Timer.builder("game.shot.stage")
+                .tag("stage", "win_check")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        restore(journal.takeRecoveredGames());
+    }
+
+    // Replays journaled shots through the same deterministic physics; games are independent, so in parallel
+    private void restore(List<ShotJournal.RecoveredGame> recovered) {
+        recovered.parallelStream().forEach(saved -> {
+            // Journals from before the solver was recorded replay with the configured one
+            PhysicsEngine.Solver replaySolver = saved.solver() != null ? saved.solver() : solver;
+            GameState game = new GameState(saved.matchId(), saved.player1Id(), saved.player2Id(), replaySolver);
+            for (ShotJournal.RecoveredShot shot : saved.shots()) {
+                step(game, PlayerHandle.of(shot.playerId()), new Shot(shot.dx(), shot.dy()));
+            }
+            activeGames.put(saved.matchId(), game);
+        });
+        if (!recovered.isEmpty()) {
+            log.info("Restored {} games from the shot journal", recovered.size());
+        }
+    }
+
     public String createGame(String matchId, String player1Id, String player2Id) {
-        GameState game = new GameState(matchId, player1Id, player2Id);
+        return createGame(matchId, PlayerHandle.of(player1Id), PlayerHandle.of(player2Id));
+    }
+
+    public String createGame(String matchId, PlayerHandle player1, PlayerHandle player2) {
+        // Journaled first: ids the journal refuses never become a game or cost one its place
+        journal.gameCreated(matchId, player1.uuid(), player2.uuid(), solver);
+
+        // Checked before insert, so concurrent creates can overshoot by a game or two
+        if (maxGames > 0 && activeGames.size() >= maxGames) {
+            evictIdlestGame();
+        }
+        GameState game = new GameState(matchId, player1, player2, solver);
         activeGames.put(matchId, game);
         log.info("Created game for match: {}", matchId);
         return matchId;
@@ -25,37 +130,129 @@ public class GameService {
     }
 
     public void removeGame(String matchId) {
-        activeGames.remove(matchId);
+        GameState game = activeGames.remove(matchId);
+        if (game != null) {
+            game.getMailbox().close();
+            journal.gameClosed(matchId);
+            countIfAbandoned(game);
+        }
         log.info("Removed game for match: {}", matchId);
     }
 
+    // Removes the game only if it is still the one registered under matchId
+    public void removeGame(String matchId, GameState game) {
+        if (activeGames.remove(matchId, game)) {
+            game.getMailbox().close();
+            journal.gameClosed(matchId);
+            countIfAbandoned(game);
+            log.info("Removed game for match: {}", matchId);
+        }
+    }
+
     public GameState processShot(String matchId, String playerId, Shot shot) {
         GameState game = activeGames.get(matchId);
         if (game == null) {
-            log.warn("Game not found: {}", matchId);
+            log.warn(LogMarkers.MOVE, "Game not found: {}", matchId);
             return null;
         }
+        return processShot(game, PlayerHandle.of(playerId), shot);
+    }
+
+    // Drops games that have seen no shot within the idle TTL, e.g. after both tabs were closed
+    @Scheduled(fixedDelayString = "${game.store.sweep-ms:30000}")
+    public void expireIdleGames() {
+        expireIdleGames(System.nanoTime());
+    }
+
+    void expireIdleGames(long now) {
+        if (idleTtlNanos <= 0) return;
+
+        for (GameState game : activeGames.values()) {
+            if (now - game.getLastActiveAt() > idleTtlNanos && drop(game, GameEvictedEvent.Reason.EXPIRED)) {
+                expiredGames.increment();
+            }
+        }
+    }
+
+    public int getActiveGameCount() {
+        return activeGames.size();
+    }
+
+    // Only runs when the store is full; a linear scan is cheaper than keeping an LRU order on every shot
+    private void evictIdlestGame() {
+        GameState idlest = null;
+        for (GameState game : activeGames.values()) {
+            if (idlest == null || game.getLastActiveAt() - idlest.getLastActiveAt() < 0) {
+                idlest = game;
+            }
+        }
+        if (idlest != null && drop(idlest, GameEvictedEvent.Reason.EVICTED)) {
+            evictedGames.increment();
+        }
+    }
+
+    private boolean drop(GameState game, GameEvictedEvent.Reason reason) {
+        if (!activeGames.remove(game.getMatchId(), game)) {
+            return false; // Closed or replaced meanwhile
+        }
+        // Anything still queued for the match is discarded by its worker
+        game.getMailbox().close();
+        journal.gameClosed(game.getMatchId());
+        countIfAbandoned(game);
+        log.info("Dropped game for match {} ({})", game.getMatchId(), reason);
+        eventPublisher.publishEvent(new GameEvictedEvent(game, reason));
+        return true;
+    }
+
+    // Games that leave the store before either player reached two points
+    private void countIfAbandoned(GameState game) {
+        if (!game.isMatchOver()) {
+            abandonedGames.increment();
+        }
+    }
 
+    public GameState processShot(GameState game, PlayerHandle player, Shot shot) {
+        boolean wasOver = game.isMatchOver();
+        if (step(game, player, shot)) {
+            journal.shotAccepted(game.getMatchId(), player.uuid(), game.getShotCount(), shot.dx, shot.dy);
+            // Only live shots; a replayed journal must not rate the same match twice
+            if (!wasOver && game.isMatchOver()) {
+                eventPublisher.publishEvent(new MatchFinishedEvent(
+                        game.getMatchId(), game.getPlayer1Id(), game.getPlayer2Id(), game.getWinner()));
+            }
+        }
+        return game;
+    }
+
+    // Advances the game by one shot; false if it was rejected
+    private boolean step(GameState game, PlayerHandle player, Shot shot) {
         // Only allow move if it's the player's turn
-        if (!playerId.equals(game.getCurrentTurn())) {
-            log.warn("Not {}'s turn", playerId);
-            return game;
+        if (!game.currentTurn.equals(player)) {
+            log.warn(LogMarkers.MOVE, "Not {}'s turn", player);
+            return false;
         }
 
+        game.touch();
+        game.shotCount++;
+
         // Apply the shot to the player's puck
-        game.applyShot(playerId, shot);
+        game.applyShot(player, shot);
 
         // Run physics simulation
+        long startedAt = System.nanoTime();
         game.runPhysicsSimulation();
+        long simulatedAt = System.nanoTime();
+        physicsStage.record(simulatedAt - startedAt, TimeUnit.NANOSECONDS);
 
         // Check for win condition and switch turns
         game.checkWinCondition();
-        
+        winCheckStage.record(System.nanoTime() - simulatedAt, TimeUnit.NANOSECONDS);
+
         if (!game.isRoundOver()) {
             game.switchTurn();
         }
 
-        return game;
+        return true;
     }
 
     public GameState getGameState(String matchId) {
@@ -65,14 +262,23 @@ public class GameService {
     // Inner class representing game state
     public static class GameState {
         private final String matchId;
-        private final String player1Id;
-        private final String player2Id;
+        private final PlayerHandle player1;
+        private final PlayerHandle player2;
+        private final String spectatorTopic;
 
         // Pucks: 0 = player1, 1 = player2
-        private Puck[] pucks = new Puck[2];
+        private final PhysicsEngine physics;
+
+        // Commands for this match, drained by its GameLoop worker only
+        private final MatchMailbox mailbox = new MatchMailbox();
 
-        // Turn: player1Id or player2Id
-        private String currentTurn;
+        // Delta state of the GAME_STATE_SYNC stream, also only used on the worker
+        private final StateSyncEncoder syncEncoder = new StateSyncEncoder();
+        // The full state for the outbound conflator, encoded only if it asks; one per game, not per sync
+        private final Supplier<byte[]> snapshotOnDemand = () -> syncEncoder.sharedSnapshot(this);
+
+        // Turn: player1 or player2; also read by InboundRateLimiter off the worker
+        private volatile PlayerHandle currentTurn;
 
         // Scores
         private int player1Score = 0;
@@ -81,116 +287,63 @@ public class GameService {
         // Round tracking
         private int round = 1;
         private boolean roundOver = false;
-        private String winner = null;
-
-        // Platform radius (normalized 0-1)
-        private static final double PLATFORM_RADIUS = 0.45;
+        private PlayerHandle winner = null;
 
-        public GameState(String matchId, String player1Id, String player2Id) {
-            this.matchId = matchId;
-            this.player1Id = player1Id;
-            this.player2Id = player2Id;
+        // Accepted shots so far; the journal's sequence number
+        private int shotCount = 0;
 
-            // Initialize pucks at starting positions
-            pucks[0] = new Puck(-0.3, 0.0, 0.05); // Player 1 on left
-            pucks[1] = new Puck(0.3, 0.0, 0.05);  // Player 2 on right
+        // System.nanoTime() of creation or the last accepted shot, read by the idle sweeper
+        private volatile long lastActiveAt = System.nanoTime();
 
-            this.currentTurn = player1Id;
+        public GameState(String matchId, String player1Id, String player2Id) {
+            this(matchId, player1Id, player2Id, PhysicsEngine.Solver.STEPPED);
         }
 
-        public void applyShot(String playerId, Shot shot) {
-            int puckIndex = playerId.equals(player1Id) ? 0 : 1;
-            if (pucks[puckIndex] != null) {
-                pucks[puckIndex].vx = shot.dx * 0.015; // Scale power
-                pucks[puckIndex].vy = shot.dy * 0.015;
-            }
+        public GameState(String matchId, String player1Id, String player2Id, PhysicsEngine.Solver solver) {
+            this(matchId, PlayerHandle.of(player1Id), PlayerHandle.of(player2Id), solver);
         }
 
-        public void runPhysicsSimulation() {
-            // Simple physics simulation with multiple steps for stability
-            for (int step = 0; step < 50; step++) {
-                // Update positions
-                for (Puck puck : pucks) {
-                    if (puck != null) {
-                        puck.x += puck.vx;
-                        puck.y += puck.vy;
-
-                        // Friction
-                        puck.vx *= 0.98;
-                        puck.vy *= 0.98;
-                    }
-                }
+        public GameState(String matchId, PlayerHandle player1, PlayerHandle player2, PhysicsEngine.Solver solver) {
+            this.matchId = matchId;
+            this.player1 = player1;
+            this.player2 = player2;
+            this.spectatorTopic = SpectatorSnapshots.topic(matchId);
+            this.physics = new PhysicsEngine(solver);
 
-                // Collision detection between pucks
-                detectPuckCollision();
+            this.currentTurn = player1;
+        }
 
-                // Stop if velocities are very low
-                if (isMovementStopped()) break;
-            }
+        public void touch() {
+            lastActiveAt = System.nanoTime();
         }
 
-        private void detectPuckCollision() {
-            if (pucks[0] == null || pucks[1] == null) return;
-
-            double dx = pucks[1].x - pucks[0].x;
-            double dy = pucks[1].y - pucks[0].y;
-            double distance = Math.sqrt(dx * dx + dy * dy);
-            double minDistance = pucks[0].radius + pucks[1].radius;
-
-            if (distance < minDistance && distance > 0) {
-                // Normalize collision vector
-                double nx = dx / distance;
-                double ny = dy / distance;
-
-                // Relative velocity
-                double dvx = pucks[0].vx - pucks[1].vx;
-                double dvy = pucks[0].vy - pucks[1].vy;
-
-                // Relative velocity along collision normal
-                double dvn = dvx * nx + dvy * ny;
-
-                // Only resolve if objects are moving towards each other
-                if (dvn > 0) {
-                    // Apply impulse (elastic collision)
-                    double impulse = dvn;
-                    pucks[0].vx -= impulse * nx;
-                    pucks[0].vy -= impulse * ny;
-                    pucks[1].vx += impulse * nx;
-                    pucks[1].vy += impulse * ny;
-                }
+        public void applyShot(String playerId, Shot shot) {
+            applyShot(PlayerHandle.of(playerId), shot);
+        }
 
-                // Separate pucks to prevent overlap
-                double overlap = (minDistance - distance) / 2;
-                pucks[0].x -= overlap * nx;
-                pucks[0].y -= overlap * ny;
-                pucks[1].x += overlap * nx;
-                pucks[1].y += overlap * ny;
-            }
+        public void applyShot(PlayerHandle player, Shot shot) {
+            int puckIndex = player1.equals(player) ? 0 : 1;
+            physics.applyShot(puckIndex, shot.dx, shot.dy);
         }
 
-        private boolean isMovementStopped() {
-            for (Puck puck : pucks) {
-                if (puck != null && (Math.abs(puck.vx) > 0.0001 || Math.abs(puck.vy) > 0.0001)) {
-                    return false;
-                }
-            }
-            return true;
+        public void runPhysicsSimulation() {
+            physics.simulate();
         }
 
         public void checkWinCondition() {
             // Check if pucks are out of bounds (outside platform)
-            boolean player1Out = isOutOfBounds(pucks[0]);
-            boolean player2Out = isOutOfBounds(pucks[1]);
+            boolean player1Out = physics.isOutOfBounds(0);
+            boolean player2Out = physics.isOutOfBounds(1);
 
             if (player1Out || player2Out) {
                 roundOver = true;
 
                 if (player1Out && !player2Out) {
                     player2Score++;
-                    winner = player2Id;
+                    winner = player2;
                 } else if (player2Out && !player1Out) {
                     player1Score++;
-                    winner = player1Id;
+                    winner = player1;
                 } else if (player1Out && player2Out) {
                     // Draw - no points awarded
                     winner = null;
@@ -200,7 +353,7 @@ public class GameService {
                     round, player1Score, player2Score, winner);
 
                 // Check for match winner (best of 3)
-                if (player1Score >= 2 || player2Score >= 2) {
+                if (isMatchOver()) {
                     log.info("Match complete! Winner: {}", winner);
                 } else {
                     // Reset for next round after delay
@@ -209,23 +362,16 @@ public class GameService {
             }
         }
 
-        private boolean isOutOfBounds(Puck puck) {
-            if (puck == null) return false;
-            double distance = Math.sqrt(puck.x * puck.x + puck.y * puck.y);
-            return distance > PLATFORM_RADIUS;
-        }
-
         public void switchTurn() {
-            currentTurn = currentTurn.equals(player1Id) ? player2Id : player1Id;
+            currentTurn = currentTurn == player1 ? player2 : player1;
         }
 
         private void resetRound() {
             // Reset puck positions
-            pucks[0] = new Puck(-0.3, 0.0, 0.05);
-            pucks[1] = new Puck(0.3, 0.0, 0.05);
+            physics.reset();
             
             // Loser picks who starts? For now, just reset to player 1 or random
-            currentTurn = player1Id; 
+            currentTurn = player1; 
             roundOver = false;
             winner = null;
             round++;
@@ -233,17 +379,37 @@ public class GameService {
 
         // Getters for serialization
         public String getMatchId() { return matchId; }
-        public String getPlayer1Id() { return player1Id; }
-        public String getPlayer2Id() { return player2Id; }
-        public Puck[] getPucks() { return pucks; }
-        public String getCurrentTurn() { return currentTurn; }
+        public String getPlayer1Id() { return player1.uuid(); }
+        public String getPlayer2Id() { return player2.uuid(); }
+        public PlayerHandle getPlayer1() { return player1; }
+        public PlayerHandle getPlayer2() { return player2; }
+        public PlayerHandle getOpponent(PlayerHandle player) { return player1.equals(player) ? player2 : player1; }
+        public boolean hasPlayer(PlayerHandle player) { return player1.equals(player) || player2.equals(player); }
+        public PhysicsEngine getPhysics() { return physics; }
+        public MatchMailbox getMailbox() { return mailbox; }
+        public StateSyncEncoder getSyncEncoder() { return syncEncoder; }
+        public Supplier<byte[]> getSnapshotOnDemand() { return snapshotOnDemand; }
+        public String getSpectatorTopic() { return spectatorTopic; }
+        public String getCurrentTurn() { return currentTurn.uuid(); }
+        public PlayerHandle getCurrentPlayer() { return currentTurn; }
         public int getPlayer1Score() { return player1Score; }
         public int getPlayer2Score() { return player2Score; }
         public int getRound() { return round; }
         public boolean isRoundOver() { return roundOver; }
-        public String getWinner() { return winner; }
+        public boolean isMatchOver() { return player1Score >= 2 || player2Score >= 2; }
+        public String getWinner() { return PlayerHandle.uuidOf(winner); }
+        public int getShotCount() { return shotCount; }
+        public long getLastActiveAt() { return lastActiveAt; }
+    }
+
+    // Published when a game is dropped without a close from either player
+    public record GameEvictedEvent(GameState game, Reason reason) {
+        public enum Reason { EXPIRED, EVICTED }
     }
 
+    // Published on the match's worker when a shot decides the match
+    public record MatchFinishedEvent(String matchId, String player1Id, String player2Id, String winnerId) {}
+
     public static class Shot {
         public double dx;
         public double dy;
@@ -255,20 +421,4 @@ public class GameService {
             this.dy = dy;
         }
     }
-
-    public static class Puck {
-        public double x;
-        public double y;
-        public double radius;
-        public double vx;
-        public double vy;
-
-        public Puck(double x, double y, double radius) {
-            this.x = x;
-            this.y = y;
-            this.radius = radius;
-            this.vx = 0;
-            this.vy = 0;
-        }
-    }
 }
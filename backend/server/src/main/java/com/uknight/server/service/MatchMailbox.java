@@ -0,0 +1,78 @@
+package com.uknight.server.service;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-producer, single-consumer command queue owned by one match.
+ *
+ * Any inbound thread may offer commands; only the {@link GameLoop} worker that
+ * owns the match drains them, one at a time and in arrival order, which makes
+ * that worker the single writer of the match's {@link GameService.GameState}.
+ * The scheduled flag guarantees a match is queued on its worker at most once.
+ */
+public class MatchMailbox {
+
+    // Generous for two players taking turns; anything beyond this is a flood
+    public static final int CAPACITY = 64;
+
+    private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    public boolean offer(Command command) {
+        if (closed) {
+            return false;
+        }
+        // Closing is never dropped, however flooded the mailbox is
+        if (size.incrementAndGet() > CAPACITY && command.kind() != Kind.CLOSE) {
+            size.decrementAndGet();
+            return false;
+        }
+        commands.offer(command);
+        return true;
+    }
+
+    public Command poll() {
+        Command command = commands.poll();
+        if (command != null) {
+            size.decrementAndGet();
+        }
+        return command;
+    }
+
+    // True if the caller should hand the match to its worker
+    public boolean trySchedule() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    // Called by the worker once drained; true if commands arrived meanwhile and it must run again
+    public boolean release() {
+        scheduled.set(false);
+        return !commands.isEmpty() && scheduled.compareAndSet(false, true);
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public enum Kind { SHOT, CLOSE, SYNC }
+
+    // onApplied is null unless the sender wants to act on this shot's own state, see GameLoop.submitShot
+    public record Command(Kind kind, PlayerHandle player, GameService.Shot shot,
+                          Consumer<GameService.GameState> onApplied,
+                          CompletableFuture<GameService.GameState> result) {}
+}
@@ -0,0 +1,268 @@
+package com.uknight.server.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free rating index used by {@link MatchmakingService}.
+ *
+ * Ratings are split into fixed-width buckets, each a compare-and-set slot
+ * holding at most one waiting {@link Ticket}. A searcher scans the buckets
+ * outwards from its own and claims the waiter with the nearest rating inside
+ * its window; if there is none it parks in its own bucket. The window starts at
+ * {@code initialGap} and widens by {@code widenPerSecond} for every second the
+ * ticket has been waiting, so the scan covers a bounded number of buckets and
+ * join, match and cancel stay constant time with no monitor.
+ *
+ * The window is never narrower than a bucket, so two users in the same bucket
+ * always match and no bucket needs more than one slot. Ratings outside the
+ * indexed range share the edge buckets. A parked ticket's window only widens
+ * when it searches again, which {@link MatchmakingService} does from its sweeper.
+ *
+ * Each ticket carries its own state so a user can only be claimed once, and a
+ * joiner never claims its own ticket. A ticket can be cancelled in any state
+ * short of matched, including while its owner is searching: the search only
+ * parks or completes a match by moving its own ticket out of SEARCHING, so it
+ * sees the cancellation and gives up, handing back a waiter it had claimed.
+ */
+public class MatchQueue {
+
+    public static final int BUCKET_WIDTH = 50;
+    public static final int BUCKETS = 80; // Ratings 0 to 4000
+
+    public static final int DEFAULT_INITIAL_GAP = 100;
+    public static final int DEFAULT_WIDEN_PER_SECOND = 50;
+
+    private final AtomicReferenceArray<Ticket> slots = new AtomicReferenceArray<>(BUCKETS);
+    private final int initialGap;
+    private final double widenPerNano;
+
+    public MatchQueue() {
+        this(DEFAULT_INITIAL_GAP, DEFAULT_WIDEN_PER_SECOND);
+    }
+
+    public MatchQueue(int initialGap, int widenPerSecond) {
+        this.initialGap = Math.max(BUCKET_WIDTH, initialGap);
+        this.widenPerNano = widenPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Pairs the ticket with the nearest waiting user in its window, or parks it
+     * in its bucket.
+     *
+     * @return the claimed partner, or null if the ticket is now waiting (or was
+     *         already matched / cancelled by someone else)
+     */
+    public Ticket exchange(Ticket ticket) {
+        return exchange(ticket, System.nanoTime());
+    }
+
+    // Variant with an explicit clock, for tests and the matchmaking simulation
+    public Ticket exchange(Ticket ticket, long now) {
+        // Only the owner of a fresh ticket may search with it
+        if (!ticket.state.compareAndSet(Ticket.IDLE, Ticket.SEARCHING)) {
+            return null;
+        }
+
+        int home = bucket(ticket.rating);
+        while (true) {
+            int partnerBucket = nearest(ticket, now);
+
+            if (partnerBucket < 0) {
+                ticket.parkedAt = now;
+                if (!ticket.state.compareAndSet(Ticket.SEARCHING, Ticket.WAITING)) {
+                    return null; // Cancelled mid-search
+                }
+                Ticket stale = slots.get(home);
+                // A cancelled or matched ticket may still sit in the slot; overwrite it
+                if ((stale == null || stale.isDone()) && slots.compareAndSet(home, stale, ticket)) {
+                    return null;
+                }
+                // Lost the race for our bucket; resume searching unless cancelled meanwhile
+                if (!ticket.state.compareAndSet(Ticket.WAITING, Ticket.SEARCHING)) {
+                    return null;
+                }
+                continue;
+            }
+
+            Ticket waiting = slots.get(partnerBucket);
+            if (waiting != null && waiting != ticket && waiting.claim()) {
+                // Nobody else can claim us while SEARCHING; only a cancel can have moved us
+                if (!ticket.state.compareAndSet(Ticket.SEARCHING, Ticket.MATCHED)) {
+                    waiting.state.set(Ticket.WAITING); // Still in its slot, hand it back
+                    return null;
+                }
+                waiting.state.set(Ticket.MATCHED);
+                slots.compareAndSet(partnerBucket, waiting, null);
+                return waiting;
+            }
+            // Slot changed under us, or the waiter was cancelled - retry
+        }
+    }
+
+    /**
+     * The waiting user this ticket would be paired with if it searched now,
+     * without claiming them. The ticket need not belong to this queue.
+     */
+    public Ticket peekCandidate(Ticket ticket, long now) {
+        int index = nearest(ticket, now);
+        return index >= 0 ? slots.get(index) : null;
+    }
+
+    // Bucket of the nearest acceptable waiter, or -1
+    private int nearest(Ticket ticket, long now) {
+        int home = bucket(ticket.rating);
+        long within = window(ticket, now);
+        int best = -1;
+
+        // Bucket home±d only holds ratings more than (d - 1) * width away: stop once that passes the window or the best so far
+        for (int d = 0; d < BUCKETS && (long) (d - 1) * BUCKET_WIDTH <= within; d++) {
+            for (int side = d == 0 ? 1 : -1; side <= 1; side += 2) {
+                int index = home + side * d;
+                if (index < 0 || index >= BUCKETS) continue;
+
+                Ticket waiting = slots.get(index);
+                if (waiting == null || waiting == ticket || !waiting.isWaiting()) continue;
+
+                long gap = Math.abs(waiting.rating - ticket.rating);
+                if (index == home || gap <= within) {
+                    best = index;
+                    within = gap - 1;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Widest rating gap this ticket accepts after waiting since it joined
+    public long window(Ticket ticket, long now) {
+        return initialGap + (long) (Math.max(0, now - ticket.joinedAt) * widenPerNano);
+    }
+
+    /**
+     * Takes a waiting ticket back out of its bucket so it can search again.
+     *
+     * @return true if the ticket was withdrawn and may be passed to another exchange
+     */
+    public boolean withdraw(Ticket ticket) {
+        if (!ticket.state.compareAndSet(Ticket.WAITING, Ticket.IDLE)) {
+            return false;
+        }
+        slots.compareAndSet(bucket(ticket.rating), ticket, null);
+        return true;
+    }
+
+    /**
+     * Cancels the ticket unless it was matched, and removes it from its bucket
+     * if it is the one waiting there.
+     *
+     * @return true if this call cancelled the ticket
+     */
+    public boolean cancel(Ticket ticket) {
+        boolean cancelled = ticket.cancel();
+        slots.compareAndSet(bucket(ticket.rating), ticket, null);
+        return cancelled;
+    }
+
+    // Any waiting ticket, or null if nobody waits
+    public Ticket peekWaiting() {
+        for (int i = 0; i < BUCKETS; i++) {
+            Ticket waiting = slots.get(i);
+            if (waiting != null && waiting.isWaiting()) {
+                return waiting;
+            }
+        }
+        return null;
+    }
+
+    // Snapshot of the waiting tickets, lowest rating first
+    public List<Ticket> waiting() {
+        List<Ticket> waiting = new ArrayList<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            Ticket ticket = slots.get(i);
+            if (ticket != null && ticket.isWaiting()) {
+                waiting.add(ticket);
+            }
+        }
+        return waiting;
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            Ticket ticket = slots.get(i);
+            if (ticket != null && ticket.isWaiting()) size++;
+        }
+        return size;
+    }
+
+    static int bucket(int rating) {
+        return Math.clamp(Math.floorDiv(rating, BUCKET_WIDTH), 0, BUCKETS - 1);
+    }
+
+    // A single user's place in matchmaking
+    public static class Ticket {
+        static final int IDLE = 0;
+        static final int SEARCHING = 1;
+        static final int WAITING = 2;
+        static final int CLAIMED = 3; // Held by a searcher until it knows it wasn't cancelled itself
+        static final int MATCHED = 4;
+        static final int CANCELLED = 5;
+
+        private final PlayerHandle player;
+        private final String shard;
+        private final int rating;
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+
+        // System.nanoTime() of the join; the search window widens from here, across re-parks and spillover
+        private final long joinedAt;
+
+        // System.nanoTime() of the last time this ticket started waiting in a slot
+        private volatile long parkedAt;
+
+        public Ticket(PlayerHandle player, String shard, int rating, long joinedAt) {
+            this.player = player;
+            this.shard = shard;
+            this.rating = rating;
+            this.joinedAt = joinedAt;
+        }
+
+        // For tests and benchmarks: a player joining no particular shard just now
+        public static Ticket of(String playerId, int rating) {
+            return new Ticket(PlayerHandle.of(playerId), null, rating, System.nanoTime());
+        }
+
+        // WAITING -> CLAIMED, only succeeds for one claimant
+        boolean claim() {
+            return state.compareAndSet(WAITING, CLAIMED);
+        }
+
+        // Any state but MATCHED -> CANCELLED; a search in flight sees it before parking or matching
+        boolean cancel() {
+            while (true) {
+                int current = state.get();
+                if (current == MATCHED || current == CANCELLED) {
+                    return false;
+                }
+                if (current == CLAIMED) {
+                    Thread.onSpinWait(); // A claimant is a few instructions from MATCHED or back to WAITING
+                } else if (state.compareAndSet(current, CANCELLED)) {
+                    return true;
+                }
+            }
+        }
+
+        public boolean isWaiting() { return state.get() == WAITING; }
+        public boolean isMatched() { return state.get() == MATCHED; }
+        public boolean isDone() { return state.get() >= MATCHED; }
+        public String getSessionId() { return player.uuid(); }
+        public PlayerHandle getPlayer() { return player; }
+        public String getShard() { return shard; }
+        public int getRating() { return rating; }
+        public long getJoinedAt() { return joinedAt; }
+        public long getParkedAt() { return parkedAt; }
+    }
+}
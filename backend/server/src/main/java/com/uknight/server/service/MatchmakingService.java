@@ -1,76 +1,332 @@
 package com.uknight.server.service;
 
+import com.uknight.server.cluster.ClusterMembership;
+import com.uknight.server.config.LogMarkers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import lombok.extern.slf4j.Slf4j;
-import java.util.concurrent.ConcurrentLinkedQueue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class MatchmakingService {
 
-    private final ConcurrentLinkedQueue<String> waitingUsers = new ConcurrentLinkedQueue<>();
+    // Shard for users without a known university, and for users who waited too long locally
+    public static final String GLOBAL_SHARD = "global";
+
+    // A university shard that stays empty this long is dropped together with its meters
+    public static final long DEFAULT_SHARD_IDLE_MS = 60_000;
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    // In a cluster the global shard may live on another node
+    private final ClusterMembership membership;
+
+    private final RatingService ratings;
+
+    // Rating window of a new ticket, and how fast it widens while the user waits
+    private final int initialGap;
+    private final int widenPerSecond;
+
+    // How long a user waits for a partner from their own university before spilling over
+    private final long spilloverNanos;
+
+    // Universities that get their own shard; the key comes from the client, so anything else goes global
+    private final Set<String> universities;
+    private final long shardIdleNanos;
+
+    // Membership index: sessionId -> ticket, gives O(1) contains/remove
+    private final Map<String, MatchQueue.Ticket> waitingUsers = new ConcurrentHashMap<>();
+
+    // University key -> shard; each shard has its own lock-free slot so campuses don't contend.
+    // Keys are bounded by the allow-list, and idle university shards are evicted by the sweeper.
+    private final Map<String, Shard> shards = new ConcurrentHashMap<>();
+    private final Shard globalShard;
+
+    @Autowired
+    public MatchmakingService(ApplicationEventPublisher eventPublisher,
+                              MeterRegistry meterRegistry,
+                              @Value("${matchmaking.spillover-ms:10000}") long spilloverMs,
+                              ClusterMembership membership,
+                              RatingService ratings,
+                              @Value("${matchmaking.rating.initial-gap:100}") int initialGap,
+                              @Value("${matchmaking.rating.widen-per-second:50}") int widenPerSecond,
+                              @Value("${matchmaking.universities:}") Collection<String> universities,
+                              @Value("${matchmaking.shard.idle-ms:60000}") long shardIdleMs) {
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.membership = membership;
+        this.ratings = ratings;
+        this.initialGap = initialGap;
+        this.widenPerSecond = widenPerSecond;
+        this.spilloverNanos = TimeUnit.MILLISECONDS.toNanos(spilloverMs);
+        this.universities = universities.stream()
+                .map(MatchmakingService::normalize)
+                .filter(key -> !key.isEmpty() && !key.equals(GLOBAL_SHARD))
+                .collect(Collectors.toUnmodifiableSet());
+        this.shardIdleNanos = TimeUnit.MILLISECONDS.toNanos(shardIdleMs);
+        this.globalShard = shard(GLOBAL_SHARD);
+        Gauge.builder("matchmaking.waiting", waitingUsers, Map::size).register(meterRegistry);
+    }
+
+    // For tests and benchmarks: the default rating, window and shard settings
+    public static MatchmakingService withDefaults(ApplicationEventPublisher eventPublisher,
+                                                  MeterRegistry meterRegistry,
+                                                  long spilloverMs,
+                                                  ClusterMembership membership,
+                                                  Collection<String> universities) {
+        return new MatchmakingService(eventPublisher, meterRegistry, spilloverMs, membership,
+                RatingService.withDefaults(32), MatchQueue.DEFAULT_INITIAL_GAP, MatchQueue.DEFAULT_WIDEN_PER_SECOND,
+                universities, DEFAULT_SHARD_IDLE_MS);
+    }
 
     public void addUser(String sessionId) {
-        if (!waitingUsers.contains(sessionId)) {
-            waitingUsers.add(sessionId);
-            log.info("User added to matchmaking queue: {}", sessionId);
+        addUser(sessionId, null);
+    }
+
+    public void addUser(String sessionId, String university) {
+        MatchQueue.Ticket ticket = new MatchQueue.Ticket(PlayerHandle.of(sessionId), shardKey(university),
+                ratings.getRating(sessionId), System.nanoTime());
+        MatchQueue.Ticket existing = waitingUsers.putIfAbsent(sessionId, ticket);
+
+        // A finished ticket can still be indexed for a moment after its match; replace it on rejoin
+        if (existing == null || (existing.isDone() && waitingUsers.replace(sessionId, existing, ticket))) {
+            log.info(LogMarkers.QUEUE, "User added to matchmaking queue: {} (shard: {})", sessionId, ticket.getShard());
         }
     }
 
     public void removeUser(String sessionId) {
-        waitingUsers.remove(sessionId);
-        log.info("User removed from matchmaking queue: {}", sessionId);
+        MatchQueue.Ticket ticket = waitingUsers.remove(sessionId);
+        if (ticket != null) {
+            // The ticket may have spilled over, so cancel it in both places
+            Shard shard = shards.get(ticket.getShard());
+            if (shard != null) {
+                shard.queue.cancel(ticket);
+            }
+            globalShard.queue.cancel(ticket);
+        }
+        log.info(LogMarkers.QUEUE, "User removed from matchmaking queue: {}", sessionId);
     }
 
     public String findMatch(String sessionId) {
-        // Simple FIFO matching
-        // If there is someone else in the queue, match with them.
-        // Note: This is a very basic implementation. 
-        // In a real scenario, we might want to check criteria, lock the queue, etc.
-        
-        // precise removal is tricky with concurrent queue if we just peek.
-        // simplified: 
-        
-        synchronized (waitingUsers) {
-           // If I am the only one, return null
-           if (waitingUsers.size() < 2) {
-               return null;
-           }
-           
-           // Remove myself to not match with myself (should already be handled by logic flow but safe check)
-           // Actually, the controller calling this should probably not have added the user yet? 
-           // Or we optimize:
-           
-           // If we find someone who is NOT me
-           for (String waiter : waitingUsers) {
-               if (!waiter.equals(sessionId)) {
-                   waitingUsers.remove(waiter);
-                   waitingUsers.remove(sessionId); // Remove myself too as we are now matched
-                   return waiter;
-               }
-           }
+        // Nearest rating within the user's window in their shard: if someone is in range, take them, otherwise wait.
+        // A ticket can only be claimed once, so a user is never matched twice or with themselves.
+        MatchQueue.Ticket ticket = waitingUsers.get(sessionId);
+        if (ticket == null) {
+            return null;
+        }
+
+        Shard shard = shard(ticket.getShard());
+        shard.joins.increment();
+
+        MatchQueue.Ticket partner = shard.queue.exchange(ticket);
+        if (partner != null) {
+            return completeMatch(shard, ticket, partner);
+        }
+
+        // Nobody local, but someone in range has already given up on their own shard - take them now
+        if (shard != globalShard && globalShard.queue.peekCandidate(ticket, System.nanoTime()) != null) {
+            partner = spillOver(shard, ticket);
+            if (partner != null) {
+                return completeMatch(globalShard, ticket, partner);
+            }
+        }
+
+        // Removed while we were parking? Make sure we don't linger as a ghost
+        if (waitingUsers.get(sessionId) != ticket) {
+            shard.queue.cancel(ticket);
+            globalShard.queue.cancel(ticket);
+        } else if (shards.get(shard.name) != shard && shard.queue.withdraw(ticket)) {
+            return findMatch(sessionId); // Parked in a shard the sweeper just evicted
         }
         return null;
     }
-    
-    // Better Approach for polling:
-    // When a user joins, check if queue has someone.
-    // If yes, poll() them -> Match!
-    // If no, add myself via offer().
+
+    // Single-call variant of addUser + findMatch
     public String attemptMatch(String sessionId) {
-        synchronized (waitingUsers) {
-            String partner = waitingUsers.poll();
-            
-            if (partner != null) {
-                // Determine if the partner is still valid/connected? 
-                // For now assume yes.
-                log.info("Match found: {} <-> {}", sessionId, partner);
-                return partner;
-            } else {
-                waitingUsers.add(sessionId);
-                log.info("No match found, added {} to queue. Queue size: {}", sessionId, waitingUsers.size());
-                return null;
+        addUser(sessionId);
+        String partner = findMatch(sessionId);
+
+        if (partner != null) {
+            log.info("Match found: {} <-> {}", sessionId, partner);
+        } else {
+            log.info(LogMarkers.QUEUE, "No match found, added {} to queue. Queue size: {}", sessionId, getQueueSize());
+        }
+        return partner;
+    }
+
+    // Moves users who waited past the deadline in their university shard to the global shard,
+    // and lets everyone else search again with the window they have widened to by now
+    @Scheduled(fixedDelayString = "${matchmaking.spillover-check-ms:500}")
+    public void spillOverExpiredWaiters() {
+        spillOverExpiredWaiters(System.nanoTime());
+    }
+
+    void spillOverExpiredWaiters(long now) {
+        boolean globalIsRemote = !membership.ownerOfShard(GLOBAL_SHARD).equals(membership.getNodeId());
+        for (Shard shard : shards.values()) {
+            for (MatchQueue.Ticket waiting : shard.queue.waiting()) {
+                if (shard != globalShard && now - waiting.getJoinedAt() >= spilloverNanos) {
+                    spillOverExpired(shard, waiting, globalIsRemote);
+                } else {
+                    rematch(shard, waiting, now);
+                }
+            }
+            if (shard != globalShard && shard.queue.size() == 0 && now - shard.lastUsedAt >= shardIdleNanos
+                    && shards.remove(shard.name, shard)) {
+                shard.removeMeters(meterRegistry);
+                log.info(LogMarkers.QUEUE, "Evicted idle shard {}", shard.name);
             }
         }
     }
+
+    private void spillOverExpired(Shard shard, MatchQueue.Ticket waiting, boolean globalIsRemote) {
+        if (globalIsRemote) {
+            // Hand the user to the global shard's node; they rejoin there as a fresh ticket
+            if (shard.queue.withdraw(waiting) && waitingUsers.remove(waiting.getSessionId(), waiting)) {
+                shard.spillovers.increment();
+                eventPublisher.publishEvent(new SpilledOverEvent(waiting.getSessionId()));
+            }
+            return;
+        }
+
+        MatchQueue.Ticket partner = spillOver(shard, waiting);
+        if (partner != null) {
+            completeMatch(globalShard, waiting, partner);
+            log.info("Match created after spillover: {} and {}", waiting.getSessionId(), partner.getSessionId());
+            eventPublisher.publishEvent(new MatchFoundEvent(waiting.getSessionId(), partner.getSessionId()));
+        }
+    }
+
+    // Two waiters only meet once one of their windows has grown to cover the other
+    private void rematch(Shard shard, MatchQueue.Ticket waiting, long now) {
+        if (shard.queue.peekCandidate(waiting, now) == null || !shard.queue.withdraw(waiting)) {
+            return;
+        }
+        MatchQueue.Ticket partner = shard.queue.exchange(waiting, now);
+        if (partner != null) {
+            completeMatch(shard, waiting, partner);
+            log.info("Match created after widening: {} and {}", waiting.getSessionId(), partner.getSessionId());
+            eventPublisher.publishEvent(new MatchFoundEvent(waiting.getSessionId(), partner.getSessionId()));
+        } else if (waitingUsers.get(waiting.getSessionId()) != waiting) {
+            shard.queue.cancel(waiting); // Removed while it was out of its slot
+        }
+    }
+
+    public boolean isWaiting(String sessionId) {
+        return waitingUsers.containsKey(sessionId);
+    }
+
+    public int getQueueSize() {
+        return waitingUsers.size();
+    }
+
+    public Collection<Shard> getShards() {
+        return shards.values();
+    }
+
+    // Withdraws a parked ticket from its shard and exchanges it on the global shard
+    private MatchQueue.Ticket spillOver(Shard from, MatchQueue.Ticket ticket) {
+        if (!from.queue.withdraw(ticket)) {
+            return null; // Matched or cancelled in the meantime
+        }
+        from.spillovers.increment();
+        return globalShard.queue.exchange(ticket);
+    }
+
+    private String completeMatch(Shard shard, MatchQueue.Ticket ticket, MatchQueue.Ticket partner) {
+        // Whoever of the two joined first waited longest
+        long joinedAt = partner.getJoinedAt() - ticket.getJoinedAt() < 0 ? partner.getJoinedAt() : ticket.getJoinedAt();
+        shard.waitTime.record(System.nanoTime() - joinedAt, TimeUnit.NANOSECONDS);
+        shard.ratingGap.record(Math.abs(ticket.getRating() - partner.getRating()));
+        shard.matches.increment();
+
+        waitingUsers.remove(ticket.getSessionId(), ticket);
+        waitingUsers.remove(partner.getSessionId(), partner);
+        return partner.getSessionId();
+    }
+
+    private Shard shard(String key) {
+        Shard shard = shards.computeIfAbsent(key, k -> new Shard(k, new MatchQueue(initialGap, widenPerSecond), meterRegistry));
+        shard.lastUsedAt = System.nanoTime();
+        return shard;
+    }
+
+    // Universities outside the allow-list share the global shard
+    public String shardKey(String university) {
+        if (university == null) {
+            return GLOBAL_SHARD;
+        }
+        String key = normalize(university);
+        return universities.contains(key) ? key : GLOBAL_SHARD;
+    }
+
+    private static String normalize(String university) {
+        return university.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // One university's queue plus its metrics
+    public static class Shard {
+        private final String name;
+        private final MatchQueue queue;
+        private final Counter joins;
+        private final Counter matches;
+        private final Counter spillovers;
+        private final Timer waitTime;
+        private final DistributionSummary ratingGap;
+        private final Gauge depth;
+
+        // Last time a join looked this shard up; the sweeper only evicts shards idle for a while
+        private volatile long lastUsedAt = System.nanoTime();
+
+        Shard(String name, MatchQueue queue, MeterRegistry registry) {
+            this.name = name;
+            this.queue = queue;
+            this.depth = Gauge.builder("matchmaking.shard.depth", queue, MatchQueue::size)
+                    .tag("shard", name)
+                    .register(registry);
+            this.joins = Counter.builder("matchmaking.shard.joins").tag("shard", name).register(registry);
+            this.matches = Counter.builder("matchmaking.shard.matches").tag("shard", name).register(registry);
+            this.spillovers = Counter.builder("matchmaking.shard.spillovers").tag("shard", name).register(registry);
+            this.waitTime = Timer.builder("matchmaking.shard.wait").tag("shard", name).register(registry);
+            this.ratingGap = DistributionSummary.builder("matchmaking.shard.rating.gap").tag("shard", name).register(registry);
+        }
+
+        private void removeMeters(MeterRegistry registry) {
+            for (Meter meter : List.of(depth, joins, matches, spillovers, waitTime, ratingGap)) {
+                registry.remove(meter);
+            }
+        }
+
+        public String getName() { return name; }
+        public int getDepth() { return queue.size(); }
+        public long getMatches() { return (long) matches.count(); }
+        public long getSpillovers() { return (long) spillovers.count(); }
+        public Timer getWaitTime() { return waitTime; }
+        public DistributionSummary getRatingGap() { return ratingGap; }
+    }
+
+    // Published when a match is made outside a join request, i.e. by the sweeper
+    public record MatchFoundEvent(String initiatorId, String partnerId) {}
+
+    // Published when a user leaves their university shard for a global shard on another node
+    public record SpilledOverEvent(String uuid) {}
 }
@@ -0,0 +1,319 @@
+package com.uknight.server.service;
+
+/**
+ * Puck physics for Knockout, with two solvers for the same motion: each step a
+ * puck moves by its velocity, then the velocity shrinks by {@link #FRICTION},
+ * for at most {@link #MAX_STEPS} steps.
+ *
+ * {@link Solver#STEPPED} is the fixed-timestep integrator. Its step order and
+ * arithmetic match the original integrator over Puck objects exactly, so
+ * results are bit-identical; the only difference is that far-apart pairs and
+ * clearly in/out pucks are decided on squared distances, with
+ * {@link Math#sqrt} kept for the borderline cases where rounding could change
+ * the answer. It checks for contact only between steps, so fast pucks can pass
+ * through each other.
+ *
+ * {@link Solver#ANALYTIC} treats the steps as continuous: after t steps every
+ * puck has moved by its velocity times s = (1 - FRICTION^t) / (1 - FRICTION),
+ * the same s for all pucks. Positions are linear in s, so the next contact or
+ * platform-edge crossing is the root of a quadratic, and the solver jumps from
+ * event to event. A puck that crosses the edge has fallen and hits nothing
+ * after that. A shot costs a few events instead of up to 50 steps, and contacts
+ * are never missed.
+ *
+ * Puck state lives in primitive arrays (structure-of-arrays) that are allocated
+ * once per game, so applying and simulating a shot allocates nothing.
+ */
+public class PhysicsEngine {
+
+    public enum Solver { STEPPED, ANALYTIC }
+
+    public static final int PUCK_COUNT = 2;
+
+    // Platform radius (normalized 0-1)
+    public static final double PLATFORM_RADIUS = 0.45;
+    public static final double PUCK_RADIUS = 0.05;
+    public static final double START_X = 0.3;
+
+    static final int MAX_STEPS = 50;
+    static final double FRICTION = 0.98;
+    static final double SHOT_POWER = 0.015;
+    static final double STOP_SPEED = 0.0001;
+
+    // FRICTION^MAX_STEPS: how far velocities may decay within one simulate()
+    private static final double MAX_DECAY = Math.pow(FRICTION, MAX_STEPS);
+    // Contacts and edge crossings one analytic run resolves before coasting to the end
+    private static final int MAX_EVENTS = 16;
+
+    // Squared-distance bounds around the platform edge: below INSIDE a puck is certainly on,
+    // above OUTSIDE it is certainly off; in between we fall back to the exact sqrt comparison
+    private static final double PLATFORM_INSIDE_SQ = Math.nextDown(PLATFORM_RADIUS * PLATFORM_RADIUS);
+    private static final double PLATFORM_OUTSIDE_SQ =
+            Math.nextUp(Math.nextUp(PLATFORM_RADIUS) * Math.nextUp(PLATFORM_RADIUS));
+
+    private final double[] x = new double[PUCK_COUNT];
+    private final double[] y = new double[PUCK_COUNT];
+    private final double[] vx = new double[PUCK_COUNT];
+    private final double[] vy = new double[PUCK_COUNT];
+    private final double[] radius = new double[PUCK_COUNT];
+
+    private final Solver solver;
+    // Analytic solver: pucks that have left the platform during the current run
+    private final boolean[] fallen = new boolean[PUCK_COUNT];
+
+    public PhysicsEngine() {
+        this(Solver.STEPPED);
+    }
+
+    public PhysicsEngine(Solver solver) {
+        this.solver = solver;
+        reset();
+    }
+
+    // Puts both pucks back at their starting positions, at rest
+    public void reset() {
+        place(0, -START_X, 0.0, PUCK_RADIUS); // Player 1 on left
+        place(1, START_X, 0.0, PUCK_RADIUS);  // Player 2 on right
+    }
+
+    public void place(int puck, double px, double py, double r) {
+        x[puck] = px;
+        y[puck] = py;
+        radius[puck] = r;
+        vx[puck] = 0;
+        vy[puck] = 0;
+    }
+
+    public void setVelocity(int puck, double pvx, double pvy) {
+        vx[puck] = pvx;
+        vy[puck] = pvy;
+    }
+
+    public void applyShot(int puck, double dx, double dy) {
+        vx[puck] = dx * SHOT_POWER; // Scale power
+        vy[puck] = dy * SHOT_POWER;
+    }
+
+    public void copyFrom(PhysicsEngine other) {
+        System.arraycopy(other.x, 0, x, 0, PUCK_COUNT);
+        System.arraycopy(other.y, 0, y, 0, PUCK_COUNT);
+        System.arraycopy(other.vx, 0, vx, 0, PUCK_COUNT);
+        System.arraycopy(other.vy, 0, vy, 0, PUCK_COUNT);
+        System.arraycopy(other.radius, 0, radius, 0, PUCK_COUNT);
+    }
+
+    public void simulate() {
+        if (solver == Solver.ANALYTIC) {
+            solve();
+            return;
+        }
+
+        // Simple physics simulation with multiple steps for stability
+        for (int step = 0; step < MAX_STEPS; step++) {
+            // Update positions
+            for (int i = 0; i < PUCK_COUNT; i++) {
+                x[i] += vx[i];
+                y[i] += vy[i];
+
+                // Friction
+                vx[i] *= FRICTION;
+                vy[i] *= FRICTION;
+            }
+
+            // Collision detection between pucks
+            for (int i = 0; i < PUCK_COUNT; i++) {
+                for (int j = i + 1; j < PUCK_COUNT; j++) {
+                    resolveCollision(i, j);
+                }
+            }
+
+            // Stop if velocities are very low
+            if (isMovementStopped()) break;
+        }
+    }
+
+    private void resolveCollision(int a, int b) {
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        double distanceSq = dx * dx + dy * dy;
+        double minDistance = radius[a] + radius[b];
+
+        // Clearly apart: sqrt(distanceSq) >= minDistance regardless of rounding
+        if (distanceSq > Math.nextUp(minDistance * minDistance)) return;
+
+        double distance = Math.sqrt(distanceSq);
+        if (distance < minDistance && distance > 0) {
+            // Normalize collision vector
+            double nx = dx / distance;
+            double ny = dy / distance;
+
+            // Relative velocity
+            double dvx = vx[a] - vx[b];
+            double dvy = vy[a] - vy[b];
+
+            // Relative velocity along collision normal
+            double dvn = dvx * nx + dvy * ny;
+
+            // Only resolve if objects are moving towards each other
+            if (dvn > 0) {
+                // Apply impulse (elastic collision)
+                double impulse = dvn;
+                vx[a] -= impulse * nx;
+                vy[a] -= impulse * ny;
+                vx[b] += impulse * nx;
+                vy[b] += impulse * ny;
+            }
+
+            // Separate pucks to prevent overlap
+            double overlap = (minDistance - distance) / 2;
+            x[a] -= overlap * nx;
+            y[a] -= overlap * ny;
+            x[b] += overlap * nx;
+            y[b] += overlap * ny;
+        }
+    }
+
+    private void solve() {
+        for (int i = 0; i < PUCK_COUNT; i++) {
+            fallen[i] = isOutOfBounds(i);
+        }
+
+        // Velocity decay still allowed by the step limit
+        double budget = MAX_DECAY;
+        for (int event = 0; ; event++) {
+            // The run ends at the step limit or once every puck is down to STOP_SPEED
+            double endDecay = Math.max(budget, stopDecay());
+            if (endDecay >= 1) return;
+            double end = (1 - endDecay) / (1 - FRICTION);
+            if (event == MAX_EVENTS) {
+                advance(end);
+                return;
+            }
+
+            // Earliest contact or edge crossing before the end, in s
+            double next = end;
+            int first = -1;
+            int second = -1;
+            for (int i = 0; i < PUCK_COUNT; i++) {
+                if (fallen[i]) continue;
+                double s = edgeCrossing(i);
+                if (s >= 0 && s < next) {
+                    next = s;
+                    first = i;
+                    second = -1;
+                }
+                for (int j = i + 1; j < PUCK_COUNT; j++) {
+                    if (fallen[j]) continue;
+                    s = contact(i, j);
+                    if (s >= 0 && s < next) {
+                        next = s;
+                        first = i;
+                        second = j;
+                    }
+                }
+            }
+
+            budget /= advance(next);
+            if (first < 0) return;
+            if (second < 0) {
+                fallen[first] = true;
+            } else {
+                bounce(first, second);
+            }
+        }
+    }
+
+    // Velocity decay at which every puck is down to STOP_SPEED (1 if none is moving)
+    private double stopDecay() {
+        double decay = 1;
+        for (int i = 0; i < PUCK_COUNT; i++) {
+            double speed = Math.max(Math.abs(vx[i]), Math.abs(vy[i]));
+            if (speed > STOP_SPEED) {
+                decay = Math.min(decay, STOP_SPEED / speed);
+            }
+        }
+        return decay;
+    }
+
+    // Moves every puck by s; returns the velocity decay over that stretch
+    private double advance(double s) {
+        double decay = 1 - s * (1 - FRICTION);
+        for (int i = 0; i < PUCK_COUNT; i++) {
+            x[i] += vx[i] * s;
+            y[i] += vy[i] * s;
+            vx[i] *= decay;
+            vy[i] *= decay;
+        }
+        return decay;
+    }
+
+    // s at which a and b touch while closing in, or -1 if they don't
+    private double contact(int a, int b) {
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        double wx = vx[b] - vx[a];
+        double wy = vy[b] - vy[a];
+        double closing = dx * wx + dy * wy;
+        if (closing >= 0) return -1;
+
+        double minDistance = radius[a] + radius[b];
+        double gap = dx * dx + dy * dy - minDistance * minDistance;
+        if (gap <= 0) return 0; // Already touching
+        double discriminant = closing * closing - (wx * wx + wy * wy) * gap;
+        if (discriminant < 0) return -1;
+        // Smaller root of |d + w s|^2 = minDistance^2, in the form that doesn't cancel
+        return gap / (Math.sqrt(discriminant) - closing);
+    }
+
+    // s at which the centre of puck i leaves the platform, or -1 if it is at rest
+    private double edgeCrossing(int i) {
+        double speedSq = vx[i] * vx[i] + vy[i] * vy[i];
+        if (speedSq == 0) return -1;
+        double outward = x[i] * vx[i] + y[i] * vy[i];
+        double gap = x[i] * x[i] + y[i] * y[i] - PLATFORM_RADIUS * PLATFORM_RADIUS; // < 0 on the platform
+        double q = -(outward + Math.copySign(Math.sqrt(outward * outward - speedSq * gap), outward));
+        // The roots are q / speedSq and gap / q, one either side of zero
+        return Math.max(q / speedSq, gap / q);
+    }
+
+    // Equal-mass elastic collision of two touching pucks, as in resolveCollision
+    private void bounce(int a, int b) {
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance == 0) return;
+        double nx = dx / distance;
+        double ny = dy / distance;
+
+        double dvn = (vx[a] - vx[b]) * nx + (vy[a] - vy[b]) * ny;
+        if (dvn > 0) {
+            vx[a] -= dvn * nx;
+            vy[a] -= dvn * ny;
+            vx[b] += dvn * nx;
+            vy[b] += dvn * ny;
+        }
+    }
+
+    private boolean isMovementStopped() {
+        for (int i = 0; i < PUCK_COUNT; i++) {
+            if (Math.abs(vx[i]) > STOP_SPEED || Math.abs(vy[i]) > STOP_SPEED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isOutOfBounds(int puck) {
+        double distanceSq = x[puck] * x[puck] + y[puck] * y[puck];
+        if (distanceSq < PLATFORM_INSIDE_SQ) return false;
+        if (distanceSq > PLATFORM_OUTSIDE_SQ) return true;
+        return Math.sqrt(distanceSq) > PLATFORM_RADIUS;
+    }
+
+    public double getX(int puck) { return x[puck]; }
+    public double getY(int puck) { return y[puck]; }
+    public double getVx(int puck) { return vx[puck]; }
+    public double getVy(int puck) { return vy[puck]; }
+    public double getRadius(int puck) { return radius[puck]; }
+    public Solver getSolver() { return solver; }
+}
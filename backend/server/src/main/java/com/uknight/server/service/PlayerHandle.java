@@ -0,0 +1,81 @@
+package com.uknight.server.service;
+
+/**
+ * A player's uuid together with the destinations the server sends that player
+ * to, built once when the handle is.
+ *
+ * {@link SessionRegistry} creates the handle on CONNECT, leaves it in the
+ * session's attributes and drops it on DISCONNECT, so handlers get it from the
+ * message headers without reading the uuid header or building topic strings.
+ * Games and matchmaking tickets hold handles instead of strings. Ids that come
+ * from clients (targets, invitees) are looked up in the registry and never
+ * create an entry there.
+ *
+ * Two handles are the same player when their uuids are equal. A game created
+ * from the registry's handles gets the same objects back with every move, so
+ * turn checks and opponent lookups are usually settled by identity.
+ */
+public final class PlayerHandle {
+
+    // Per-player destinations; the broker's topic for each is prefix + uuid
+    public enum Topic {
+        GAME("/topic/game/"),
+        MATCH("/topic/match/"),
+        SIGNAL("/topic/signal/"),
+        CHAT("/topic/chat/");
+
+        private final String prefix;
+
+        Topic(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String prefix() { return prefix; }
+
+        // For players without a handle here, e.g. connected to another node
+        public String of(String uuid) { return prefix + uuid; }
+    }
+
+    private static final Topic[] TOPICS = Topic.values();
+
+    private final String uuid;
+    private final String[] topics = new String[TOPICS.length];
+
+    private PlayerHandle(String uuid) {
+        this.uuid = uuid;
+        for (Topic topic : TOPICS) {
+            topics[topic.ordinal()] = topic.of(uuid);
+        }
+    }
+
+    public static PlayerHandle of(String uuid) {
+        return new PlayerHandle(uuid);
+    }
+
+    // Null-tolerant, for ids that may be absent (e.g. the winner of a drawn round)
+    public static PlayerHandle ofNullable(String uuid) {
+        return uuid != null ? of(uuid) : null;
+    }
+
+    public static String uuidOf(PlayerHandle handle) {
+        return handle != null ? handle.uuid : null;
+    }
+
+    public String uuid() { return uuid; }
+    public String topic(Topic topic) { return topics[topic.ordinal()]; }
+
+    @Override
+    public boolean equals(Object other) {
+        return other == this || (other instanceof PlayerHandle handle && uuid.equals(handle.uuid));
+    }
+
+    @Override
+    public int hashCode() {
+        return uuid.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return uuid;
+    }
+}
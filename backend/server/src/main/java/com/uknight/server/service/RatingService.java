@@ -0,0 +1,135 @@
+package com.uknight.server.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elo rating per player, used by {@link MatchmakingService} to pair players of
+ * similar strength.
+ *
+ * Everyone starts at {@link #INITIAL_RATING}. When a match ends the winner
+ * takes points from the loser in proportion to how unexpected the result was,
+ * at most {@code rating.k-factor} (default 32). Games against the bot are not
+ * rated. Ratings live in memory on the node that ran the game, so they start
+ * over after a restart. A player unrated for {@code rating.idle-ttl-ms} is
+ * forgotten, and at most {@code rating.max-players} are kept; when full, the
+ * player rated longest ago makes room.
+ */
+@Slf4j
+@Service
+public class RatingService {
+
+    public static final int INITIAL_RATING = 1500;
+
+    public static final int DEFAULT_MAX_PLAYERS = 100_000;
+    public static final long DEFAULT_IDLE_TTL_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final double kFactor;
+
+    // Upper bound on stored ratings (0 = unbounded); when full the player rated longest ago makes room
+    private final int maxPlayers;
+
+    // A player with no rated match for this long is dropped by the sweeper (0 = never)
+    private final long idleTtlNanos;
+
+    // playerId -> rating; only players who finished a rated match are stored
+    private final Map<String, Rating> ratings = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RatingService(@Value("${rating.k-factor:32}") double kFactor,
+                         @Value("${rating.max-players:100000}") int maxPlayers,
+                         @Value("${rating.idle-ttl-ms:86400000}") long idleTtlMs) {
+        this.kFactor = kFactor;
+        this.maxPlayers = maxPlayers;
+        this.idleTtlNanos = TimeUnit.MILLISECONDS.toNanos(idleTtlMs);
+    }
+
+    // For tests and benchmarks: the default bounds with the given k-factor
+    public static RatingService withDefaults(double kFactor) {
+        return new RatingService(kFactor, DEFAULT_MAX_PLAYERS, DEFAULT_IDLE_TTL_MS);
+    }
+
+    public int getRating(String playerId) {
+        return (int) Math.round(valueOf(playerId));
+    }
+
+    public int getPlayerCount() {
+        return ratings.size();
+    }
+
+    @EventListener
+    public void onMatchFinished(GameService.MatchFinishedEvent event) {
+        recordResult(event.player1Id(), event.player2Id(), event.winnerId());
+    }
+
+    // A null winner is a draw
+    public void recordResult(String player1Id, String player2Id, String winnerId) {
+        recordResult(player1Id, player2Id, winnerId, System.nanoTime());
+    }
+
+    void recordResult(String player1Id, String player2Id, String winnerId, long now) {
+        if (BotPlayer.ID.equals(player1Id) || BotPlayer.ID.equals(player2Id) || player1Id.equals(player2Id)) {
+            return;
+        }
+        double rating1 = valueOf(player1Id);
+        double rating2 = valueOf(player2Id);
+        double expected1 = 1 / (1 + Math.pow(10, (rating2 - rating1) / 400));
+        double score1 = winnerId == null ? 0.5 : winnerId.equals(player1Id) ? 1 : 0;
+        double change = kFactor * (score1 - expected1);
+
+        // Applied as deltas, so a player's concurrent games don't overwrite each other
+        makeRoomFor(player1Id);
+        makeRoomFor(player2Id);
+        ratings.merge(player1Id, new Rating(INITIAL_RATING + change, now), (old, ignored) -> old.plus(change, now));
+        ratings.merge(player2Id, new Rating(INITIAL_RATING - change, now), (old, ignored) -> old.plus(-change, now));
+        log.info("Rated {} vs {}: {} points to {}", player1Id, player2Id, Math.abs(Math.round(change)),
+                change >= 0 ? player1Id : player2Id);
+    }
+
+    // Forgets players who have not finished a rated match within the idle TTL
+    @Scheduled(fixedDelayString = "${rating.sweep-ms:600000}")
+    public void expireIdleRatings() {
+        expireIdleRatings(System.nanoTime());
+    }
+
+    void expireIdleRatings(long now) {
+        if (idleTtlNanos <= 0) return;
+
+        ratings.values().removeIf(rating -> now - rating.ratedAt() > idleTtlNanos);
+    }
+
+    private double valueOf(String playerId) {
+        Rating rating = ratings.get(playerId);
+        return rating != null ? rating.value() : INITIAL_RATING;
+    }
+
+    // Only runs for a new player when the store is full; a linear scan is cheaper than keeping an LRU order
+    private void makeRoomFor(String playerId) {
+        if (maxPlayers <= 0 || ratings.size() < maxPlayers || ratings.containsKey(playerId)) return;
+
+        Map.Entry<String, Rating> idlest = null;
+        for (Map.Entry<String, Rating> entry : ratings.entrySet()) {
+            if (idlest == null || entry.getValue().ratedAt() - idlest.getValue().ratedAt() < 0) {
+                idlest = entry;
+            }
+        }
+        if (idlest != null) {
+            ratings.remove(idlest.getKey(), idlest.getValue());
+        }
+    }
+
+    // System.nanoTime() of the player's last rated match
+    private record Rating(double value, long ratedAt) {
+        Rating plus(double change, long now) {
+            return new Rating(value + change, now);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.uknight.server.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything the server holds for a connected client, indexed by STOMP session
+ * and by the client's uuid, so a disconnect can be cleaned up without scanning.
+ *
+ * A session learns its uuid from the CONNECT frame's {@code uuid} header, or
+ * from the first message that carries one, and gets its {@link PlayerHandle}
+ * then; a handle bound at CONNECT is also left in the session's attributes,
+ * where {@link #handleOf} finds it for every later message. The registry is the
+ * only table of handles: {@link #lookup} finds connected users by uuid, and the
+ * handle goes with the session on disconnect. On disconnect the user is taken out
+ * of matchmaking here and a {@link UserDisconnectedEvent} tells the messaging
+ * layer which peer to notify and which matches to close. If the same uuid has
+ * already reconnected on a newer session, the old session's disconnect only
+ * drops that session.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SessionRegistry {
+
+    // Session attribute holding the PlayerHandle bound at CONNECT
+    public static final String HANDLE_ATTRIBUTE = "uknight.player";
+
+    private final MatchmakingService matchmakingService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // STOMP session id -> session, and uuid -> that user's current session
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Session> users = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String sessionId = accessor.getSessionId();
+        if (sessionId == null) return;
+
+        sessions.putIfAbsent(sessionId, new Session());
+        String uuid = accessor.getFirstNativeHeader("uuid");
+        if (uuid == null) return;
+
+        PlayerHandle handle = register(sessionId, uuid);
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (handle != null && attributes != null) {
+            attributes.put(HANDLE_ATTRIBUTE, handle);
+        }
+    }
+
+    // The sender of an inbound message: the handle bound at CONNECT, else one for its uuid header or session id
+    public static PlayerHandle handleOf(SimpMessageHeaderAccessor headers) {
+        Map<String, Object> attributes = headers.getSessionAttributes();
+        if (attributes != null && attributes.get(HANDLE_ATTRIBUTE) instanceof PlayerHandle handle) {
+            return handle;
+        }
+        return PlayerHandle.of(clientId(headers.getFirstNativeHeader("uuid"), headers.getSessionId()));
+    }
+
+    public static PlayerHandle handleOf(MessageHeaders headers) {
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        if (attributes != null && attributes.get(HANDLE_ATTRIBUTE) instanceof PlayerHandle handle) {
+            return handle;
+        }
+        return PlayerHandle.of(clientId(NativeMessageHeaderAccessor.getFirstNativeHeader("uuid", headers),
+                SimpMessageHeaderAccessor.getSessionId(headers)));
+    }
+
+    // The bot's id is reserved: a client claiming it is known by its session id instead
+    private static String clientId(String uuid, String sessionId) {
+        return uuid != null && !BotPlayer.isBot(uuid) ? uuid : sessionId;
+    }
+
+    // The handle of a user connected here, or null; never creates one
+    public PlayerHandle lookup(String uuid) {
+        Session session = users.get(uuid);
+        return session != null ? session.handle : null;
+    }
+
+    // The user's handle if they are connected here, else a detached one (another node's user, the bot)
+    public PlayerHandle resolve(String uuid) {
+        PlayerHandle handle = lookup(uuid);
+        return handle != null ? handle : PlayerHandle.of(uuid);
+    }
+
+    // A user's destination, from their handle if they are connected here
+    public String topicOf(String uuid, PlayerHandle.Topic topic) {
+        PlayerHandle handle = lookup(uuid);
+        return handle != null ? handle.topic(topic) : topic.of(uuid);
+    }
+
+    // Binds a session to the client's uuid; a newer session for the same uuid takes over.
+    // Returns the session's handle, or null if the session is gone, bound to another uuid or the uuid is the bot's.
+    public PlayerHandle register(String sessionId, String uuid) {
+        if (BotPlayer.isBot(uuid)) {
+            log.warn("Session {} tried to connect as the bot", sessionId);
+            return null;
+        }
+        Session session = sessions.get(sessionId);
+        if (session == null) return null; // Already disconnected
+
+        if (session.handle == null) {
+            // A reconnect keeps the handle its games already hold
+            PlayerHandle current = lookup(uuid);
+            session.handle = current != null ? current : PlayerHandle.of(uuid);
+        } else if (!session.handle.uuid().equals(uuid)) {
+            log.warn("Session {} is bound to {}, ignoring uuid {}", sessionId, session.handle, uuid);
+            return null;
+        }
+        users.put(uuid, session);
+        return session.handle;
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Session session = accessor.getSessionId() != null ? sessions.get(accessor.getSessionId()) : null;
+        if (session != null && accessor.getSubscriptionId() != null && accessor.getDestination() != null) {
+            session.subscriptions.put(accessor.getSubscriptionId(), accessor.getDestination());
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Session session = accessor.getSessionId() != null ? sessions.get(accessor.getSessionId()) : null;
+        if (session != null && accessor.getSubscriptionId() != null) {
+            session.subscriptions.remove(accessor.getSubscriptionId());
+        }
+    }
+
+    // Records the WebRTC partners of a lobby match
+    public void pair(String uuid, String peerId) {
+        Session session = users.get(uuid);
+        Session peer = users.get(peerId);
+        if (session != null) session.peerId = peerId;
+        if (peer != null) peer.peerId = uuid;
+    }
+
+    public void addMatch(String uuid, String matchId) {
+        Session session = users.get(uuid);
+        if (session != null) {
+            session.matchIds.add(matchId);
+        }
+    }
+
+    public void removeMatch(String uuid, String matchId) {
+        Session session = users.get(uuid);
+        if (session != null) {
+            session.matchIds.remove(matchId);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        disconnect(event.getSessionId());
+    }
+
+    public void disconnect(String sessionId) {
+        // Spring may report the same disconnect more than once
+        Session session = sessions.remove(sessionId);
+        if (session == null) return;
+
+        String uuid = PlayerHandle.uuidOf(session.handle);
+        if (uuid == null || !users.remove(uuid, session)) {
+            return; // Never identified itself, or the user is back on a newer session
+        }
+
+        matchmakingService.removeUser(uuid);
+
+        // Not if they have moved on; a peer that isn't connected here may be on another node
+        String peerId = session.peerId;
+        Session peer = peerId != null ? users.get(peerId) : null;
+        if (peer != null && !uuid.equals(peer.peerId)) {
+            peerId = null;
+        }
+
+        log.info("User {} disconnected (session {}, {} matches)", uuid, sessionId, session.matchIds.size());
+        eventPublisher.publishEvent(new UserDisconnectedEvent(uuid, peerId, List.copyOf(session.matchIds)));
+    }
+
+    // Whether uuid is connected here and its lobby partner is still peerId
+    public boolean isPaired(String uuid, String peerId) {
+        Session session = users.get(uuid);
+        return session != null && peerId.equals(session.peerId);
+    }
+
+    // Matches uuid plays through this node; a live view
+    public Set<String> getMatches(String uuid) {
+        Session session = users.get(uuid);
+        return session != null ? Collections.unmodifiableSet(session.matchIds) : Set.of();
+    }
+
+    public boolean isConnected(String uuid) {
+        return users.containsKey(uuid);
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public int getUserCount() {
+        return users.size();
+    }
+
+    public Map<String, String> getSubscriptions(String uuid) {
+        Session session = users.get(uuid);
+        return session != null ? Map.copyOf(session.subscriptions) : Map.of();
+    }
+
+    private static class Session {
+        private volatile PlayerHandle handle;
+        private volatile String peerId;
+        private final Set<String> matchIds = ConcurrentHashMap.newKeySet();
+        // Subscription id -> destination
+        private final Map<String, String> subscriptions = new ConcurrentHashMap<>();
+    }
+
+    // peerId is the lobby partner to notify, null if there is none or they have moved on
+    // (only known for partners connected to this node)
+    public record UserDisconnectedEvent(String uuid, String peerId, List<String> matchIds) {}
+}
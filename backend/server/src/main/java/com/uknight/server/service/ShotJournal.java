@@ -0,0 +1,474 @@
+package com.uknight.server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of game lifecycle events and accepted shots, so a
+ * restarted server can rebuild its active games (see GameService).
+ *
+ * Records go into memory-mapped segment files of {@code game.journal.segment-bytes}
+ * each; appending is a copy into the mapping under a short lock, with no
+ * system call. A background thread forces what was appended to disk every
+ * {@code game.journal.flush-ms} (group commit), so a crash loses at most that
+ * window. A segment file is deleted once every match it mentions is closed.
+ *
+ * Each record is {@code [length][crc32c][body]}; a zero length ends the
+ * segment. Recovery stops reading a segment at the first record that is cut
+ * short or fails its checksum, and drops a match whose shot sequence then has
+ * a gap, since its state could no longer be rebuilt faithfully.
+ *
+ * Disabled unless {@code game.journal.dir} is set.
+ */
+@Slf4j
+@Service
+public class ShotJournal {
+
+    private static final int MAGIC = 0x554b4a31; // "UKJ1"
+    private static final int HEADER_BYTES = 4;
+    private static final int RECORD_OVERHEAD = 8;
+    private static final int MAX_RECORD_BYTES = 1024;
+
+    // Ids are written with a one-byte length, so longer ones are refused rather than cut
+    public static final int MAX_ID_BYTES = 255;
+    private static final String SUFFIX = ".journal";
+
+    private static final byte CREATED = 1;
+    private static final byte SHOT = 2;
+    private static final byte CLOSED = 3;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ScheduledExecutorService flusher;
+
+    private final Counter appends;
+    private final Counter errors;
+    private final Timer flushes;
+
+    // Everything below is guarded by this
+    private final List<Segment> segments = new ArrayList<>();
+    private final byte[] scratch = new byte[MAX_RECORD_BYTES];
+    private final CRC32C crc = new CRC32C();
+    private Segment current;
+    private boolean failed;
+
+    private List<RecoveredGame> recovered = List.of();
+
+    public ShotJournal(@Value("${game.journal.dir:}") String directory,
+                       @Value("${game.journal.segment-bytes:67108864}") int segmentBytes,
+                       @Value("${game.journal.flush-ms:5}") long flushMs,
+                       MeterRegistry meterRegistry) {
+        this.directory = directory.isBlank() ? null : Paths.get(directory);
+        this.segmentBytes = Math.max(segmentBytes, 4 * MAX_RECORD_BYTES);
+
+        this.appends = Counter.builder("game.journal.appends").register(meterRegistry);
+        this.errors = Counter.builder("game.journal.errors").register(meterRegistry);
+        this.flushes = Timer.builder("game.journal.flush").register(meterRegistry);
+
+        if (this.directory == null) {
+            this.flusher = null;
+            return;
+        }
+
+        try {
+            Files.createDirectories(this.directory);
+            long started = System.nanoTime();
+            recovered = recover();
+            log.info("Recovered {} active games from {} journal segments in {} ms", recovered.size(), segments.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the shot journal in " + this.directory, e);
+        }
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shot-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMs, Math.max(1, flushMs), TimeUnit.MILLISECONDS);
+    }
+
+    public static ShotJournal disabled() {
+        return new ShotJournal("", 0, 0, new SimpleMeterRegistry());
+    }
+
+    // Games that were still open when the journal was last written; handed out once
+    public synchronized List<RecoveredGame> takeRecoveredGames() {
+        List<RecoveredGame> games = recovered;
+        recovered = List.of();
+        return games;
+    }
+
+    // The solver is recorded so a restored game replays with the physics it was played with
+    // Throws IllegalArgumentException for an id over MAX_ID_BYTES, journaling enabled or not
+    public void gameCreated(String matchId, String player1Id, String player2Id, PhysicsEngine.Solver solver) {
+        // The game's later records repeat these ids, so they are checked once here
+        requireId(matchId);
+        requireId(player1Id);
+        requireId(player2Id);
+        if (directory == null) return;
+        synchronized (this) {
+            int length = 0;
+            scratch[length++] = CREATED;
+            length = putString(matchId, length);
+            length = putString(player1Id, length);
+            length = putString(player2Id, length);
+            length = putString(solver.name(), length);
+            append(matchId, length);
+        }
+    }
+
+    // sequence is the match's shot count including this one, so replay can spot a missing shot
+    public void shotAccepted(String matchId, String playerId, int sequence, double dx, double dy) {
+        if (directory == null) return;
+        synchronized (this) {
+            int length = 0;
+            scratch[length++] = SHOT;
+            length = putString(matchId, length);
+            length = putString(playerId, length);
+            length = putInt(sequence, length);
+            length = putLong(Double.doubleToRawLongBits(dx), length);
+            length = putLong(Double.doubleToRawLongBits(dy), length);
+            append(matchId, length);
+        }
+    }
+
+    public void gameClosed(String matchId) {
+        if (directory == null) return;
+        synchronized (this) {
+            int length = 0;
+            scratch[length++] = CLOSED;
+            length = putString(matchId, length);
+            append(matchId, length);
+
+            // Segments that only held closed matches are no longer needed
+            for (var it = segments.iterator(); it.hasNext(); ) {
+                Segment segment = it.next();
+                if (segment.openMatches.remove(matchId) && segment.openMatches.isEmpty() && segment != current) {
+                    it.remove();
+                    segment.delete();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flush();
+        }
+    }
+
+    int getSegmentCount() {
+        synchronized (this) {
+            return segments.size();
+        }
+    }
+
+    // Caller holds the lock; scratch[0, length) is the record body
+    private void append(String matchId, int length) {
+        if (failed) return;
+        try {
+            if (current == null || current.buffer.remaining() < RECORD_OVERHEAD + length) {
+                roll();
+            }
+            crc.reset();
+            crc.update(scratch, 0, length);
+            current.buffer.putInt(length).putInt((int) crc.getValue()).put(scratch, 0, length);
+            // CLOSED doesn't pin the segment; its match is gone
+            if (scratch[0] != CLOSED) {
+                current.openMatches.add(matchId);
+            }
+            appends.increment();
+        } catch (IOException e) {
+            failed = true;
+            errors.increment();
+            log.error("Shot journal disabled: cannot open a new segment in {}", directory, e);
+        }
+    }
+
+    private void roll() throws IOException {
+        long index = segments.isEmpty() ? 0 : segments.getLast().index + 1;
+        if (current != null && current.openMatches.isEmpty()) {
+            segments.remove(current);
+            current.delete();
+        }
+        current = Segment.create(directory.resolve(String.format("shots-%010d%s", index, SUFFIX)), index, segmentBytes);
+        segments.add(current);
+    }
+
+    // Group commit: one force covers every record appended since the last one
+    private void flush() {
+        Segment segment;
+        int from;
+        int to;
+        List<Segment> sealed = new ArrayList<>();
+        synchronized (this) {
+            for (Segment s : segments) {
+                if (s != current && s.flushedTo < s.buffer.position()) {
+                    sealed.add(s);
+                }
+            }
+            segment = current;
+            if (segment == null) return;
+            from = segment.flushedTo;
+            to = segment.buffer.position();
+            segment.flushedTo = to;
+            sealed.forEach(s -> s.flushedTo = s.buffer.position());
+        }
+        if (from == to && sealed.isEmpty()) return;
+
+        long started = System.nanoTime();
+        for (Segment s : sealed) {
+            s.buffer.force();
+        }
+        if (to > from) {
+            segment.buffer.force(from, to - from);
+        }
+        flushes.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private List<RecoveredGame> recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+
+        Map<String, GameLog> games = new LinkedHashMap<>();
+        for (Path file : files) {
+            long index = Long.parseLong(file.getFileName().toString().replaceAll("\\D", ""));
+            Segment segment = Segment.open(file, index);
+            segments.add(segment);
+            readSegment(segment, games);
+        }
+
+        // Matches that can't be recovered will never be closed, so they mustn't pin their segments
+        for (Segment segment : segments) {
+            segment.openMatches.retainAll(games.keySet());
+        }
+
+        // New appends start in a fresh segment, after whatever was cut short
+        List<Segment> unused = segments.stream().filter(s -> s.openMatches.isEmpty()).toList();
+        for (Segment segment : unused) {
+            segments.remove(segment);
+            segment.delete();
+        }
+        segments.sort((a, b) -> Long.compare(a.index, b.index));
+
+        return games.values().stream()
+                .filter(game -> game.player1Id != null)
+                .map(game -> new RecoveredGame(game.matchId, game.player1Id, game.player2Id, game.solver,
+                        List.copyOf(game.shots)))
+                .toList();
+    }
+
+    private void readSegment(Segment segment, Map<String, GameLog> games) {
+        ByteBuffer buffer = segment.buffer;
+        byte[] body = new byte[MAX_RECORD_BYTES];
+        CRC32C check = new CRC32C();
+        while (buffer.remaining() >= RECORD_OVERHEAD) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if (length == 0) {
+                buffer.position(start);
+                break; // End of what was written
+            }
+            int expectedCrc = buffer.getInt();
+            if (length < 0 || length > MAX_RECORD_BYTES || length > buffer.remaining()) {
+                log.warn("Journal segment {} cut short at offset {}", segment.path.getFileName(), start);
+                buffer.position(start);
+                break;
+            }
+            buffer.get(body, 0, length);
+            check.reset();
+            check.update(body, 0, length);
+            if ((int) check.getValue() != expectedCrc) {
+                log.warn("Journal segment {} has a torn record at offset {}", segment.path.getFileName(), start);
+                buffer.position(start);
+                break;
+            }
+            apply(ByteBuffer.wrap(body, 0, length), segment, games);
+        }
+    }
+
+    private void apply(ByteBuffer record, Segment segment, Map<String, GameLog> games) {
+        byte type = record.get();
+        String matchId = getString(record);
+        switch (type) {
+            case CREATED -> {
+                GameLog game = new GameLog(matchId);
+                game.player1Id = getString(record);
+                game.player2Id = getString(record);
+                // Absent from records written before it was journaled
+                game.solver = record.hasRemaining() ? solverOf(getString(record)) : null;
+                games.put(matchId, game);
+                segment.openMatches.add(matchId);
+            }
+            case SHOT -> {
+                GameLog game = games.get(matchId);
+                String playerId = getString(record);
+                int sequence = record.getInt();
+                double dx = Double.longBitsToDouble(record.getLong());
+                double dy = Double.longBitsToDouble(record.getLong());
+                if (game == null) {
+                    return; // Started in a segment already deleted, so closed before the crash, or dropped
+                }
+                if (sequence != game.shots.size() + 1) {
+                    log.warn("Journal lost shots of match {} (expected {}, found {}); not recovering it",
+                            matchId, game.shots.size() + 1, sequence);
+                    games.remove(matchId);
+                    return;
+                }
+                game.shots.add(new RecoveredShot(playerId, dx, dy));
+                segment.openMatches.add(matchId);
+            }
+            case CLOSED -> {
+                games.remove(matchId);
+                for (Segment s : segments) {
+                    s.openMatches.remove(matchId);
+                }
+            }
+            default -> log.warn("Unknown journal record type {}", type);
+        }
+    }
+
+    private static void requireId(String id) {
+        requireLength(id.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void requireLength(int bytes) {
+        if (bytes > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("An id of " + bytes + " bytes is longer than " + MAX_ID_BYTES);
+        }
+    }
+
+    // A record holds at most four ids, so it always fits in MAX_RECORD_BYTES
+    private int putString(String value, int offset) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        requireLength(bytes.length);
+        scratch[offset++] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, scratch, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    private int putInt(int value, int offset) {
+        scratch[offset++] = (byte) (value >>> 24);
+        scratch[offset++] = (byte) (value >>> 16);
+        scratch[offset++] = (byte) (value >>> 8);
+        scratch[offset++] = (byte) value;
+        return offset;
+    }
+
+    private int putLong(long value, int offset) {
+        offset = putInt((int) (value >>> 32), offset);
+        return putInt((int) value, offset);
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.get() & 0xff;
+        String value = new String(record.array(), record.arrayOffset() + record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static PhysicsEngine.Solver solverOf(String name) {
+        try {
+            return PhysicsEngine.Solver.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown solver {} in the journal", name);
+            return null;
+        }
+    }
+
+    // solver is null when the journal didn't record one; the game then replays with the configured solver
+    public record RecoveredGame(String matchId, String player1Id, String player2Id, PhysicsEngine.Solver solver,
+                                List<RecoveredShot> shots) {}
+
+    public record RecoveredShot(String playerId, double dx, double dy) {}
+
+    // A match's records while reading the journal
+    private static class GameLog {
+        private final String matchId;
+        private final List<RecoveredShot> shots = new ArrayList<>();
+        private String player1Id;
+        private String player2Id;
+        private PhysicsEngine.Solver solver;
+
+        GameLog(String matchId) {
+            this.matchId = matchId;
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long index;
+        private final MappedByteBuffer buffer;
+        // Matches with records here that haven't been closed yet
+        private final Set<String> openMatches = new HashSet<>();
+        private int flushedTo;
+
+        private Segment(Path path, long index, MappedByteBuffer buffer) {
+            this.path = path;
+            this.index = index;
+            this.buffer = buffer;
+            this.flushedTo = buffer.position();
+        }
+
+        static Segment create(Path path, long index, int size) throws IOException {
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                file.setLength(size);
+                MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(MAGIC);
+                return new Segment(path, index, buffer);
+            }
+        }
+
+        // Existing segments are only read; they are never appended to again
+        static Segment open(Path path, long index) throws IOException {
+            try (FileChannel channel = FileChannel.open(path)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+                    log.warn("Journal segment {} has no header; ignoring it", path.getFileName());
+                    buffer.position(buffer.limit());
+                }
+                return new Segment(path, index, buffer);
+            }
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Cannot delete journal segment {}", path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.uknight.server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.json.JsonFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards peer-to-peer messages (WebRTC signals, chat) without rebuilding them.
+ *
+ * The server only needs {@code targetPeerId} out of these bodies, so instead
+ * of binding the JSON to a map and serializing it again, the body is run
+ * through a streaming parser that decodes nothing but that one property (the
+ * rest, e.g. a multi-KB SDP string, is only checked for well-formedness) and
+ * the original bytes are relayed. The sender goes in a {@value #SENDER_HEADER}
+ * STOMP header rather than into the body. Chat bodies must also carry a string
+ * {@code message}.
+ *
+ * Optionally ({@code signal.ice.coalesce-window-ms} > 0), trickled ICE
+ * candidates from one peer to another are held for that window or until
+ * {@code signal.ice.max-batch} have queued, then delivered as one frame whose
+ * body is a JSON array of the original signals. Any other signal between the
+ * same two peers first flushes what is held, so the receiver still sees them
+ * in the order they were sent.
+ */
+@Slf4j
+@Service
+public class SignalRelay {
+
+    public static final String SENDER_HEADER = "senderId";
+
+    private static final String TARGET_PROPERTY = "targetPeerId";
+    private static final String TYPE_PROPERTY = "type";
+    private static final String MESSAGE_PROPERTY = "message";
+    private static final String ICE_TYPE = "ICE";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SessionRegistry sessionRegistry;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private final long coalesceWindowMs;
+    private final int maxBatch;
+    private final ScheduledExecutorService scheduler;
+
+    // "sender -> destination" -> candidates held for it
+    private final Map<String, IceBatch> iceBatches = new ConcurrentHashMap<>();
+
+    private final Counter iceCandidates;
+    private final Counter iceFrames;
+
+    public SignalRelay(SimpMessagingTemplate messagingTemplate,
+                       SessionRegistry sessionRegistry,
+                       MeterRegistry meterRegistry,
+                       @Value("${signal.ice.coalesce-window-ms:0}") long coalesceWindowMs,
+                       @Value("${signal.ice.max-batch:16}") int maxBatch) {
+        this.messagingTemplate = messagingTemplate;
+        this.sessionRegistry = sessionRegistry;
+        this.coalesceWindowMs = coalesceWindowMs;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.scheduler = coalesceWindowMs > 0 ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ice-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+
+        this.iceCandidates = Counter.builder("signal.ice.candidates").register(meterRegistry);
+        this.iceFrames = Counter.builder("signal.ice.frames").register(meterRegistry);
+        if (scheduler != null) {
+            log.info("Coalescing ICE candidates for up to {} ms / {} per frame", coalesceWindowMs, this.maxBatch);
+        }
+    }
+
+    /**
+     * Sends {@code body} unchanged to the target's {@code topic}.
+     *
+     * @return the target, or null if the body is not a JSON object with a string targetPeerId
+     *         (and, on the chat topic, a string message)
+     */
+    public String relay(PlayerHandle.Topic topic, byte[] body, String senderId) {
+        Envelope envelope = scan(body);
+        // Nobody reads the bot's topics but a client pretending to be it
+        if (envelope == null || BotPlayer.isBot(envelope.targetPeerId())
+                || (topic == PlayerHandle.Topic.CHAT && !envelope.textMessage())) {
+            return null;
+        }
+
+        // The target is whatever the client wrote, so it is only looked up
+        String destination = sessionRegistry.topicOf(envelope.targetPeerId(), topic);
+        if (topic != PlayerHandle.Topic.SIGNAL) {
+            send(destination, body, senderId);
+            return envelope.targetPeerId();
+        }
+
+        // Only signals are coalesced
+        boolean ice = ICE_TYPE.equals(envelope.type());
+        if (ice) {
+            iceCandidates.increment();
+        }
+
+        if (scheduler == null) {
+            if (ice) iceFrames.increment();
+            send(destination, body, senderId);
+        } else if (ice) {
+            hold(destination, body, senderId);
+        } else {
+            // Deliver held candidates first so nothing overtakes them
+            IceBatch held = iceBatches.get(batchKey(senderId, destination));
+            if (held != null) {
+                held.flush();
+            }
+            send(destination, body, senderId);
+        }
+        return envelope.targetPeerId();
+    }
+
+    // Top-level targetPeerId of a JSON object; null if missing, not a string, or the JSON is malformed
+    public String findTargetPeerId(byte[] json) {
+        Envelope envelope = scan(json);
+        return envelope != null ? envelope.targetPeerId() : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private Envelope scan(byte[] json) {
+        String targetPeerId = null;
+        String type = null;
+        boolean textMessage = false;
+        try (JsonParser parser = jsonFactory.createParser(ObjectReadContext.empty(), json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (TARGET_PROPERTY.equals(name)) {
+                    targetPeerId = value == JsonToken.VALUE_STRING ? parser.getString() : null;
+                } else if (TYPE_PROPERTY.equals(name) && value == JsonToken.VALUE_STRING) {
+                    type = parser.getString();
+                } else if (MESSAGE_PROPERTY.equals(name)) {
+                    textMessage = value == JsonToken.VALUE_STRING;
+                    parser.skipChildren();
+                } else {
+                    // Skipped values are scanned but never decoded into Strings
+                    parser.skipChildren();
+                }
+            }
+            // Relayed bodies must still be valid JSON for the receiving client
+            if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                return null;
+            }
+        } catch (JacksonException e) {
+            return null;
+        }
+        return targetPeerId != null ? new Envelope(targetPeerId, type, textMessage) : null;
+    }
+
+    private void hold(String destination, byte[] body, String senderId) {
+        String key = batchKey(senderId, destination);
+        // A batch that just flushed is retired; start a new one
+        while (!iceBatches.computeIfAbsent(key, k -> new IceBatch(k, destination, senderId)).add(body)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private void send(String destination, byte[] body, String senderId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setNativeHeader(SENDER_HEADER, senderId);
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(body, accessor.getMessageHeaders()));
+    }
+
+    private static String batchKey(String senderId, String destination) {
+        return senderId + "->" + destination;
+    }
+
+    private record Envelope(String targetPeerId, String type, boolean textMessage) {}
+
+    // Candidates held for one sender/destination during one window
+    private class IceBatch {
+        private final String key;
+        private final String destination;
+        private final String senderId;
+        private final List<byte[]> bodies = new ArrayList<>();
+        private ScheduledFuture<?> flushTask;
+        private boolean retired;
+
+        IceBatch(String key, String destination, String senderId) {
+            this.key = key;
+            this.destination = destination;
+            this.senderId = senderId;
+        }
+
+        synchronized boolean add(byte[] body) {
+            if (retired) {
+                return false;
+            }
+            bodies.add(body);
+            if (bodies.size() >= maxBatch) {
+                flush();
+            } else if (flushTask == null) {
+                flushTask = scheduler.schedule(this::flush, coalesceWindowMs, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+
+        // Sends under the lock so a later signal can't be relayed ahead of this batch
+        synchronized void flush() {
+            if (retired) {
+                return;
+            }
+            retired = true;
+            iceBatches.remove(key, this);
+            if (flushTask != null) {
+                flushTask.cancel(false);
+            }
+
+            iceFrames.increment();
+            send(destination, bodies.size() == 1 ? bodies.getFirst() : asJsonArray(bodies), senderId);
+        }
+
+        // The signals are already valid JSON, so the batch is just their bytes between brackets
+        private static byte[] asJsonArray(List<byte[]> bodies) {
+            int length = 1 + bodies.size();
+            for (byte[] body : bodies) {
+                length += body.length;
+            }
+
+            byte[] array = new byte[length];
+            int position = 0;
+            array[position++] = '[';
+            for (byte[] body : bodies) {
+                if (position > 1) {
+                    array[position++] = ',';
+                }
+                System.arraycopy(body, 0, array, position, body.length);
+                position += body.length;
+            }
+            array[position] = ']';
+            return array;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.uknight.server.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Encodes GAME_STATE_SYNC frames for one match in a compact binary layout.
+ *
+ * Each sync carries a sequence number and only the fields that changed since
+ * the previous sync of the match; a full snapshot (every field) is sent for
+ * the first sync and whenever a client asks for one, e.g. after spotting a
+ * gap in the sequence. Frames are written into a buffer reused across syncs,
+ * so encoding allocates only the final byte[] handed to the broker.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   u8  version
+ *   u8  flags      FULL, ROUND_OVER
+ *   u32 seq
+ *   u16 fields     bit per field below, in this order
+ *       PUCK_0, PUCK_1  5 x f64: x, y, radius, vx, vy
+ *       TURN            str
+ *       P1_SCORE        u16
+ *       P2_SCORE        u16
+ *       ROUND           u16
+ *       WINNER          str (length 0xFFFF = null)
+ *       MATCH_ID        str
+ *   str = u16 length + UTF-8 bytes
+ * </pre>
+ *
+ * Not thread-safe: a match's encoder is only used from that match's GameLoop worker.
+ */
+public class StateSyncEncoder {
+
+    public static final int VERSION = 1;
+
+    public static final int FLAG_FULL = 1;
+    public static final int FLAG_ROUND_OVER = 1 << 1;
+
+    public static final int PUCK_0 = 1;
+    public static final int PUCK_1 = 1 << 1;
+    public static final int TURN = 1 << 2;
+    public static final int P1_SCORE = 1 << 3;
+    public static final int P2_SCORE = 1 << 4;
+    public static final int ROUND = 1 << 5;
+    public static final int WINNER = 1 << 6;
+    public static final int MATCH_ID = 1 << 7;
+    public static final int ALL_FIELDS = (MATCH_ID << 1) - 1;
+
+    private static final int NULL_STRING = 0xFFFF;
+    private static final int PUCK_FIELDS = 5;
+
+    private byte[] buffer = new byte[256];
+    private int position;
+
+    private long sequence;
+    private boolean hasBaseline;
+
+    // Last snapshot handed out and the sequence it was taken at, shared until the next delta
+    private byte[] sharedSnapshot;
+    private long sharedSequence = -1;
+
+    // Values as of the last delta, to diff the next one against
+    private final double[] lastPucks = new double[PhysicsEngine.PUCK_COUNT * PUCK_FIELDS];
+    private String lastTurn;
+    private int lastPlayer1Score;
+    private int lastPlayer2Score;
+    private int lastRound;
+    private String lastWinner;
+
+    // Next sync for both players: only what changed since the previous one
+    public byte[] encodeDelta(GameService.GameState game) {
+        sequence++;
+        if (!hasBaseline) {
+            hasBaseline = true;
+            remember(game);
+            return encode(game, ALL_FIELDS, true);
+        }
+
+        PhysicsEngine physics = game.getPhysics();
+        int fields = 0;
+        for (int i = 0; i < PhysicsEngine.PUCK_COUNT; i++) {
+            if (puckChanged(physics, i)) fields |= PUCK_0 << i;
+        }
+        if (!Objects.equals(lastTurn, game.getCurrentTurn())) fields |= TURN;
+        if (lastPlayer1Score != game.getPlayer1Score()) fields |= P1_SCORE;
+        if (lastPlayer2Score != game.getPlayer2Score()) fields |= P2_SCORE;
+        if (lastRound != game.getRound()) fields |= ROUND;
+        if (!Objects.equals(lastWinner, game.getWinner())) fields |= WINNER;
+
+        remember(game);
+        return encode(game, fields, false);
+    }
+
+    // Full state at the current sequence number, for a client that lost track
+    public byte[] encodeSnapshot(GameService.GameState game) {
+        return encode(game, ALL_FIELDS, true);
+    }
+
+    // encodeSnapshot, encoded once per sequence number however many sessions ask for it
+    public byte[] sharedSnapshot(GameService.GameState game) {
+        if (sharedSequence != sequence) {
+            sharedSnapshot = encodeSnapshot(game);
+            sharedSequence = sequence;
+        }
+        return sharedSnapshot;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    private boolean puckChanged(PhysicsEngine physics, int puck) {
+        int base = puck * PUCK_FIELDS;
+        return lastPucks[base] != physics.getX(puck)
+                || lastPucks[base + 1] != physics.getY(puck)
+                || lastPucks[base + 2] != physics.getRadius(puck)
+                || lastPucks[base + 3] != physics.getVx(puck)
+                || lastPucks[base + 4] != physics.getVy(puck);
+    }
+
+    private void remember(GameService.GameState game) {
+        PhysicsEngine physics = game.getPhysics();
+        for (int i = 0; i < PhysicsEngine.PUCK_COUNT; i++) {
+            int base = i * PUCK_FIELDS;
+            lastPucks[base] = physics.getX(i);
+            lastPucks[base + 1] = physics.getY(i);
+            lastPucks[base + 2] = physics.getRadius(i);
+            lastPucks[base + 3] = physics.getVx(i);
+            lastPucks[base + 4] = physics.getVy(i);
+        }
+        lastTurn = game.getCurrentTurn();
+        lastPlayer1Score = game.getPlayer1Score();
+        lastPlayer2Score = game.getPlayer2Score();
+        lastRound = game.getRound();
+        lastWinner = game.getWinner();
+    }
+
+    private byte[] encode(GameService.GameState game, int fields, boolean full) {
+        position = 0;
+        int flags = (full ? FLAG_FULL : 0) | (game.isRoundOver() ? FLAG_ROUND_OVER : 0);
+
+        writeByte(VERSION);
+        writeByte(flags);
+        writeInt((int) sequence);
+        writeShort(fields);
+
+        PhysicsEngine physics = game.getPhysics();
+        for (int i = 0; i < PhysicsEngine.PUCK_COUNT; i++) {
+            if ((fields & (PUCK_0 << i)) != 0) {
+                writeDouble(physics.getX(i));
+                writeDouble(physics.getY(i));
+                writeDouble(physics.getRadius(i));
+                writeDouble(physics.getVx(i));
+                writeDouble(physics.getVy(i));
+            }
+        }
+        if ((fields & TURN) != 0) writeString(game.getCurrentTurn());
+        if ((fields & P1_SCORE) != 0) writeShort(game.getPlayer1Score());
+        if ((fields & P2_SCORE) != 0) writeShort(game.getPlayer2Score());
+        if ((fields & ROUND) != 0) writeShort(game.getRound());
+        if ((fields & WINNER) != 0) writeString(game.getWinner());
+        if ((fields & MATCH_ID) != 0) writeString(game.getMatchId());
+
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (position + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+        }
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeShort(int value) {
+        ensureCapacity(2);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        writeInt((int) (bits >>> 32));
+        writeInt((int) bits);
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeShort(NULL_STRING);
+            return;
+        }
+
+        // Player and match ids are ASCII uuids; copy them without an intermediate byte[]
+        int length = value.length();
+        boolean ascii = length < NULL_STRING;
+        for (int i = 0; i < length && ascii; i++) {
+            ascii = value.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            writeShort(length);
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                buffer[position++] = (byte) value.charAt(i);
+            }
+        } else {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeShort(Math.min(utf8.length, NULL_STRING - 1));
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, buffer, position, Math.min(utf8.length, NULL_STRING - 1));
+            position += Math.min(utf8.length, NULL_STRING - 1);
+        }
+    }
+}
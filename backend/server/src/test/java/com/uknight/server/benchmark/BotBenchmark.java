@@ -0,0 +1,52 @@
+package com.uknight.server.benchmark;
+
+import com.uknight.server.service.BotPlayer;
+import com.uknight.server.service.GameService;
+import com.uknight.server.service.PhysicsEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Candidate shots the bot evaluates per second per core: one full move search
+ * on a single-thread bot pool, from a mid-game position, with a budget large
+ * enough that every candidate is tried. Scores are per candidate
+ * ({@link OperationsPerInvocation}), so multiply by {@code game.bot.threads}
+ * for the bots' total.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BotBenchmark {
+
+    static final int CANDIDATES = 4096;
+
+    @Param({"STEPPED", "ANALYTIC"})
+    public PhysicsEngine.Solver solver;
+
+    private BotPlayer bot;
+    private GameService.GameState game;
+
+    @Setup
+    public void setUp() {
+        bot = new BotPlayer(new SimpleMeterRegistry(), 1, CANDIDATES, 60_000);
+        game = new GameService.GameState("m1", "alice", BotPlayer.ID, solver);
+        game.getPhysics().place(0, -0.12, 0.2, PhysicsEngine.PUCK_RADIUS);
+        game.getPhysics().place(1, 0.15, -0.05, PhysicsEngine.PUCK_RADIUS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        bot.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CANDIDATES)
+    public GameService.Shot search() {
+        return bot.chooseShot(game).join();
+    }
+}
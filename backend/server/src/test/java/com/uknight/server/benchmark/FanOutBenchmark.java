@@ -0,0 +1,62 @@
+package com.uknight.server.benchmark;
+
+import com.uknight.server.service.GameMessenger;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of handing one GAME_MOVE_ANNOUNCE to the broker for both players:
+ * a convertAndSend per player against a single conversion fanned out by
+ * {@link GameMessenger}. The channel discards messages, so this is the
+ * conversion and header work on the inbound thread only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+
+    private static final String PLAYER_1 = "/topic/game/a7c1e9d2-5b3f-4e8a-b6d0-1f2e3d4c5b6a";
+    private static final String PLAYER_2 = "/topic/game/c4d5e6f7-0a1b-4c2d-8e3f-9a0b1c2d3e4f";
+
+    private SimpMessagingTemplate messagingTemplate;
+    private GameMessenger gameMessenger;
+    private Map<String, Object> announce;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        messagingTemplate = new SimpMessagingTemplate((message, timeout) -> true);
+        messagingTemplate.setMessageConverter(new CompositeMessageConverter(List.of(
+                new StringMessageConverter(), new ByteArrayMessageConverter(), new JacksonJsonMessageConverter())));
+        gameMessenger = new GameMessenger(messagingTemplate);
+
+        announce = new HashMap<>();
+        announce.put("matchId", "3f2b6a0e-8c1d-4b7e-9a55-2d4c6e8f0a1b");
+        announce.put("dx", 0.734512);
+        announce.put("dy", -0.218843);
+        announce.put("type", "GAME_MOVE_ANNOUNCE");
+        announce.put("senderId", "a7c1e9d2-5b3f-4e8a-b6d0-1f2e3d4c5b6a");
+    }
+
+    @Benchmark
+    public void convertPerDestination() {
+        messagingTemplate.convertAndSend(PLAYER_1, (Object) announce);
+        messagingTemplate.convertAndSend(PLAYER_2, (Object) announce);
+    }
+
+    @Benchmark
+    public void convertOnce() {
+        gameMessenger.sendToAll(announce, PLAYER_1, PLAYER_2);
+    }
+}
@@ -0,0 +1,104 @@
+package com.uknight.server.benchmark;
+
+import com.uknight.server.service.GameService;
+import com.uknight.server.service.PhysicsEngine;
+import com.uknight.server.service.ShotJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The shot journal's two costs: appending a shot on the game loop, and
+ * rebuilding the active games on startup.
+ *
+ * {@code appendShot} journals shots for a rotating set of short games, closing
+ * each after a best-of-three's worth of shots so finished segments are deleted
+ * as they would be in production. {@code recover} restarts against a journal
+ * holding {@link #GAMES} open games of {@link #SHOTS} shots each, replaying
+ * every shot through the physics.
+ */
+@State(Scope.Thread)
+@Fork(1)
+public class JournalBenchmark {
+
+    static final int GAMES = 2_000;
+    static final int SHOTS = 30;
+
+    private Path appendDir;
+    private Path recoverDir;
+    private ShotJournal appending;
+    private long shot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        appendDir = Files.createTempDirectory("journal-append");
+        appending = new ShotJournal(appendDir.toString(), 4 << 20, 5, new SimpleMeterRegistry());
+
+        recoverDir = Files.createTempDirectory("journal-recover");
+        ShotJournal journal = new ShotJournal(recoverDir.toString(), 64 << 20, 5, new SimpleMeterRegistry());
+        GameService gameService = new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0, journal);
+        for (int g = 0; g < GAMES; g++) {
+            String matchId = matchId(g);
+            gameService.createGame(matchId, "p1-" + g, "p2-" + g);
+            GameService.GameState game = gameService.getGameState(matchId);
+            for (int s = 0; s < SHOTS; s++) {
+                gameService.processShot(game, game.getCurrentPlayer(), new GameService.Shot(0.01 * (s % 5 - 2), 0.005));
+            }
+        }
+        journal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        appending.close();
+        delete(appendDir);
+        delete(recoverDir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void appendShot() {
+        long n = shot++;
+        String matchId = matchId((int) (n / SHOTS % 64));
+        if (n % SHOTS == 0) {
+            appending.gameClosed(matchId);
+            appending.gameCreated(matchId, "p1", "p2", PhysicsEngine.Solver.STEPPED);
+        }
+        appending.shotAccepted(matchId, "p1", (int) (n % SHOTS) + 1, 0.25, -0.125);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public int recover() {
+        ShotJournal journal = new ShotJournal(recoverDir.toString(), 64 << 20, 5, new SimpleMeterRegistry());
+        try {
+            return new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0, journal).getActiveGameCount();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private static String matchId(int game) {
+        return String.format("00000000-0000-4000-8000-%012d", game);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.uknight.server.benchmark;
+
+/**
+ * The original GameState integrator over Puck objects, kept verbatim as the
+ * reference for PhysicsEngine equivalence tests and benchmarks.
+ */
+public class LegacyPuckPhysics {
+
+    private static final double PLATFORM_RADIUS = 0.45;
+
+    public final Puck[] pucks = new Puck[2];
+
+    public LegacyPuckPhysics() {
+        resetRound();
+    }
+
+    public void resetRound() {
+        pucks[0] = new Puck(-0.3, 0.0, 0.05);
+        pucks[1] = new Puck(0.3, 0.0, 0.05);
+    }
+
+    public void applyShot(int puckIndex, double dx, double dy) {
+        if (pucks[puckIndex] != null) {
+            pucks[puckIndex].vx = dx * 0.015;
+            pucks[puckIndex].vy = dy * 0.015;
+        }
+    }
+
+    public void runPhysicsSimulation() {
+        for (int step = 0; step < 50; step++) {
+            for (Puck puck : pucks) {
+                if (puck != null) {
+                    puck.x += puck.vx;
+                    puck.y += puck.vy;
+
+                    puck.vx *= 0.98;
+                    puck.vy *= 0.98;
+                }
+            }
+
+            detectPuckCollision();
+
+            if (isMovementStopped()) break;
+        }
+    }
+
+    private void detectPuckCollision() {
+        if (pucks[0] == null || pucks[1] == null) return;
+
+        double dx = pucks[1].x - pucks[0].x;
+        double dy = pucks[1].y - pucks[0].y;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        double minDistance = pucks[0].radius + pucks[1].radius;
+
+        if (distance < minDistance && distance > 0) {
+            double nx = dx / distance;
+            double ny = dy / distance;
+
+            double dvx = pucks[0].vx - pucks[1].vx;
+            double dvy = pucks[0].vy - pucks[1].vy;
+
+            double dvn = dvx * nx + dvy * ny;
+
+            if (dvn > 0) {
+                double impulse = dvn;
+                pucks[0].vx -= impulse * nx;
+                pucks[0].vy -= impulse * ny;
+                pucks[1].vx += impulse * nx;
+                pucks[1].vy += impulse * ny;
+            }
+
+            double overlap = (minDistance - distance) / 2;
+            pucks[0].x -= overlap * nx;
+            pucks[0].y -= overlap * ny;
+            pucks[1].x += overlap * nx;
+            pucks[1].y += overlap * ny;
+        }
+    }
+
+    private boolean isMovementStopped() {
+        for (Puck puck : pucks) {
+            if (puck != null && (Math.abs(puck.vx) > 0.0001 || Math.abs(puck.vy) > 0.0001)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isOutOfBounds(int puckIndex) {
+        Puck puck = pucks[puckIndex];
+        if (puck == null) return false;
+        double distance = Math.sqrt(puck.x * puck.x + puck.y * puck.y);
+        return distance > PLATFORM_RADIUS;
+    }
+
+    public static class Puck {
+        public double x;
+        public double y;
+        public double radius;
+        public double vx;
+        public double vy;
+
+        public Puck(double x, double y, double radius) {
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.vx = 0;
+            this.vy = 0;
+        }
+    }
+}
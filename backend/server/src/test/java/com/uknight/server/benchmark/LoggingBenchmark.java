@@ -0,0 +1,133 @@
+package com.uknight.server.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import com.uknight.server.cluster.ClusterMembership;
+import com.uknight.server.config.SampledLogFilter;
+import com.uknight.server.controller.LobbyController;
+import com.uknight.server.service.MatchmakingService;
+import com.uknight.server.service.SessionRegistry;
+import com.uknight.server.service.SignalRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LobbyController.handleChat (relay + one info line per message) from four
+ * inbound threads under each logging setup:
+ * off, a synchronous file appender (what the console appender does to the
+ * inbound thread), the async appender from logback-spring.xml, and async
+ * plus the CHAT sampling budget. The file stands in for the console so the
+ * run doesn't flood the terminal; the channel discards messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class LoggingBenchmark {
+
+    private static final String PATTERN = "%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p --- [%15.15t] %-40.40logger{39} : %m%n";
+
+    @Param({"off", "sync", "async", "async-sampled"})
+    public String logging;
+
+    private LoggerContext loggerContext;
+    private File logFile;
+    private LobbyController controller;
+    private SimpMessageHeaderAccessor headers;
+    private byte[] chat;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.reset();
+        logFile = File.createTempFile("uknight-logging", ".log");
+        configure();
+
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> true);
+        SessionRegistry sessionRegistry = new SessionRegistry(
+                MatchmakingService.withDefaults(event -> {}, new SimpleMeterRegistry(), 10_000,
+                ClusterMembership.standalone(), List.of()), event -> {});
+        SignalRelay signalRelay = new SignalRelay(messagingTemplate, sessionRegistry, new SimpleMeterRegistry(), 0, 16);
+        // handleChat only touches the relay
+        controller = new LobbyController(null, null, null, null, signalRelay, messagingTemplate, null, null, null, null);
+
+        headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setNativeHeader("uuid", "a7c1e9d2-5b3f-4e8a-b6d0-1f2e3d4c5b6a");
+        chat = "{\"targetPeerId\":\"c4d5e6f7-0a1b-4c2d-8e3f-9a0b1c2d3e4f\",\"message\":\"gg, rematch?\"}"
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void handleChat() {
+        controller.handleChat(chat, headers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        loggerContext.stop();
+        System.out.printf("%n%s: %d log lines written%n", logging, Files.lines(logFile.toPath()).count());
+        Files.delete(logFile.toPath());
+    }
+
+    private void configure() {
+        Logger root = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        if (logging.equals("off")) {
+            root.setLevel(ch.qos.logback.classic.Level.OFF);
+            return;
+        }
+        root.setLevel(ch.qos.logback.classic.Level.INFO);
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+
+        FileAppender<ILoggingEvent> file = new FileAppender<>();
+        file.setContext(loggerContext);
+        file.setFile(logFile.getPath());
+        file.setEncoder(encoder);
+        file.start();
+
+        Appender<ILoggingEvent> appender = file;
+        if (logging.startsWith("async")) {
+            // As in logback-spring.xml
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(loggerContext);
+            async.setQueueSize(8192);
+            async.setDiscardingThreshold(0);
+            async.setNeverBlock(true);
+            async.addAppender(file);
+            async.start();
+            appender = async;
+        }
+        root.addAppender(appender);
+
+        if (logging.equals("async-sampled")) {
+            SampledLogFilter filter = new SampledLogFilter();
+            filter.setContext(loggerContext);
+            filter.setPerSecond(20);
+            filter.setMarkers("JOIN,SIGNAL,CHAT,MOVE,SYNC,QUEUE");
+            filter.start();
+            loggerContext.addTurboFilter(filter);
+        }
+    }
+}
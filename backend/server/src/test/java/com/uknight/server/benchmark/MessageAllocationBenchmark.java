@@ -0,0 +1,160 @@
+package com.uknight.server.benchmark;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import com.uknight.server.cluster.ClusterMembership;
+import com.uknight.server.cluster.ClusterService;
+import com.uknight.server.cluster.LocalClusterTransport;
+import com.uknight.server.config.OutboundConflator;
+import com.uknight.server.config.StompMetrics;
+import com.uknight.server.controller.LobbyController;
+import com.uknight.server.service.GameLoop;
+import com.uknight.server.service.GameMessenger;
+import com.uknight.server.service.GameService;
+import com.uknight.server.service.MatchmakingService;
+import com.uknight.server.service.SessionRegistry;
+import com.uknight.server.service.SignalRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes allocated per inbound message by the busiest handlers, through the
+ * real controller, game loop and message converters down to a channel that
+ * drops what the broker would send. Run with {@code -prof gc} and read
+ * {@code gc.alloc.rate.norm}; it counts every thread, so the game loop's share
+ * of a move is included.
+ * <ul>
+ *   <li>{@code move}: /app/game/move, the announce, physics and the state sync
+ *       to both players and the spectator topic (waits for the sync)</li>
+ *   <li>{@code chat}: /app/chat relayed to the peer</li>
+ *   <li>{@code invite}: /app/game/invite, the confirmation and the GAME_INVITE</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageAllocationBenchmark {
+
+    private static final String ALICE = "a7c1e9d2-5b3f-4e8a-b6d0-1f2e3d4c5b6a";
+    private static final String BOB = "c4d5e6f7-0a1b-4c2d-8e3f-9a0b1c2d3e4f";
+
+    // State syncs seen by the channel; three per move (both players and the spectator topic)
+    private final AtomicLong syncs = new AtomicLong();
+
+    private GameLoop gameLoop;
+    private LobbyController controller;
+    private SimpMessageHeaderAccessor aliceHeaders;
+    private SimpMessageHeaderAccessor bobHeaders;
+    private List<Map<String, Object>> moves;
+    private byte[] chat;
+    private Map<String, String> invite;
+    private long moveCount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Handlers log every message; that is LoggingBenchmark's subject, not this one's
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).getLogger(Logger.ROOT_LOGGER_NAME)
+                .setLevel(ch.qos.logback.classic.Level.OFF);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MessageChannel channel = (message, timeout) -> {
+            if (message.getHeaders().containsKey(OutboundConflator.CONFLATE_HEADER)) {
+                syncs.incrementAndGet();
+            }
+            return true;
+        };
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate(channel);
+        messagingTemplate.setMessageConverter(new CompositeMessageConverter(List.of(
+                new StringMessageConverter(), new ByteArrayMessageConverter(), new JacksonJsonMessageConverter())));
+
+        GameService gameService = new GameService(event -> {}, registry, 0, 0);
+        gameLoop = new GameLoop(gameService, 1, 1);
+        MatchmakingService matchmakingService = MatchmakingService.withDefaults(event -> {}, registry, 10_000,
+                ClusterMembership.standalone(), List.of());
+        SessionRegistry sessionRegistry = new SessionRegistry(matchmakingService, event -> {});
+        ClusterService clusterService = new ClusterService(ClusterMembership.standalone(), new LocalClusterTransport(),
+                sessionRegistry, matchmakingService, event -> {}, registry, 0);
+        controller = new LobbyController(matchmakingService, gameService, gameLoop, sessionRegistry,
+                new SignalRelay(messagingTemplate, sessionRegistry, registry, 0, 16), messagingTemplate,
+                new GameMessenger(messagingTemplate), new StompMetrics(registry), clusterService, null);
+
+        aliceHeaders = connect(sessionRegistry, "s-alice", ALICE);
+        bobHeaders = connect(sessionRegistry, "s-bob", BOB);
+        String matchId = "3f2b6a0e-8c1d-4b7e-9a55-2d4c6e8f0a1b";
+        controller.handleGameAccept(Map.of("targetPeerId", ALICE, "matchId", matchId), bobHeaders);
+
+        // Small shots back and forth, so nobody is knocked off and the turns alternate
+        moves = List.of(
+                Map.of("matchId", matchId, "dx", 0.002, "dy", 0.001),
+                Map.of("matchId", matchId, "dx", -0.002, "dy", 0.001),
+                Map.of("matchId", matchId, "dx", -0.002, "dy", -0.001),
+                Map.of("matchId", matchId, "dx", 0.002, "dy", -0.001));
+        chat = ("{\"targetPeerId\":\"" + BOB + "\",\"message\":\"gg, rematch?\"}").getBytes(StandardCharsets.UTF_8);
+        invite = Map.of("targetPeerId", BOB, "gameType", "knockout");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gameLoop.shutdown();
+    }
+
+    @Benchmark
+    public void move() {
+        long move = moveCount++;
+        controller.handleGameMove(moves.get((int) (move & 3)), (move & 1) == 0 ? aliceHeaders : bobHeaders);
+        long expected = 3 * (move + 1);
+        while (syncs.get() < expected) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Benchmark
+    public void chat() {
+        controller.handleChat(chat, aliceHeaders);
+    }
+
+    @Benchmark
+    public void invite() {
+        controller.handleGameInvite(invite, aliceHeaders);
+    }
+
+    // What a client's CONNECT leaves behind, and the headers of its later messages
+    private static SimpMessageHeaderAccessor connect(SessionRegistry sessionRegistry, String sessionId, String uuid) {
+        Map<String, Object> sessionAttributes = new ConcurrentHashMap<>();
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setSessionId(sessionId);
+        connect.setNativeHeader("uuid", uuid);
+        connect.setSessionAttributes(sessionAttributes);
+        sessionRegistry.onConnect(new SessionConnectEvent(sessionRegistry,
+                MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders())));
+
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setNativeHeader("uuid", uuid);
+        headers.setSessionAttributes(sessionAttributes);
+        return headers;
+    }
+}
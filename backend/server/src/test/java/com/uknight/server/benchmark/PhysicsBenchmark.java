@@ -0,0 +1,77 @@
+package com.uknight.server.benchmark;
+
+import com.uknight.server.service.PhysicsEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulated shots per second: PhysicsEngine's stepped and analytic solvers against the
+ * original Puck-object integrator.
+ * Each invocation plays one shot from a fixed pool of random shots and resets the round
+ * when a puck leaves the platform, like GameState does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhysicsBenchmark {
+
+    private static final int SHOTS = 1024;
+
+    private final double[] shotDx = new double[SHOTS];
+    private final double[] shotDy = new double[SHOTS];
+    private int next;
+
+    private PhysicsEngine engine;
+    private PhysicsEngine analytic;
+    private LegacyPuckPhysics legacy;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < SHOTS; i++) {
+            shotDx[i] = random.nextDouble(-10, 10);
+            shotDy[i] = random.nextDouble(-10, 10);
+        }
+        engine = new PhysicsEngine();
+        analytic = new PhysicsEngine(PhysicsEngine.Solver.ANALYTIC);
+        legacy = new LegacyPuckPhysics();
+    }
+
+    @Benchmark
+    public double physicsEngine() {
+        int i = next++ & (SHOTS - 1);
+        engine.applyShot(i & 1, shotDx[i], shotDy[i]);
+        engine.simulate();
+        if (engine.isOutOfBounds(0) || engine.isOutOfBounds(1)) {
+            engine.reset();
+        }
+        return engine.getX(0);
+    }
+
+    @Benchmark
+    public double analyticSolver() {
+        int i = next++ & (SHOTS - 1);
+        analytic.applyShot(i & 1, shotDx[i], shotDy[i]);
+        analytic.simulate();
+        if (analytic.isOutOfBounds(0) || analytic.isOutOfBounds(1)) {
+            analytic.reset();
+        }
+        return analytic.getX(0);
+    }
+
+    @Benchmark
+    public double legacyPucks() {
+        int i = next++ & (SHOTS - 1);
+        legacy.applyShot(i & 1, shotDx[i], shotDy[i]);
+        legacy.runPhysicsSimulation();
+        if (legacy.isOutOfBounds(0) || legacy.isOutOfBounds(1)) {
+            legacy.resetRound();
+        }
+        return legacy.pucks[0].x;
+    }
+}
@@ -0,0 +1,258 @@
+package com.uknight.server.benchmark;
+
+import com.uknight.server.cluster.ClusterMembership;
+import com.uknight.server.service.MatchmakingService;
+import com.uknight.server.service.PlayerHandle;
+import com.uknight.server.service.SessionRegistry;
+import com.uknight.server.service.SignalRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relaying one /app/signal message: the old bind-to-Map, add senderId,
+ * re-serialize path against {@link SignalRelay}'s streaming scan and
+ * pass-through. Bodies are what the lobby sends: an SDP offer (a Chrome
+ * audio+video offer, ~6 KB once JSON-escaped twice) and an ICE candidate.
+ * The channel discards messages, so this is the inbound thread's work only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignalRelayBenchmark {
+
+    private static final String TARGET = "c4d5e6f7-0a1b-4c2d-8e3f-9a0b1c2d3e4f";
+    private static final String SENDER = "a7c1e9d2-5b3f-4e8a-b6d0-1f2e3d4c5b6a";
+
+    private static final String SDP_OFFER = """
+            v=0
+            o=- 4611731400430051336 2 IN IP4 127.0.0.1
+            s=-
+            t=0 0
+            a=group:BUNDLE 0 1
+            a=extmap-allow-mixed
+            a=msid-semantic: WMS 6c9f0a3e-2b1d-4c5e-8f7a-9b0c1d2e3f4a
+            m=audio 9 UDP/TLS/RTP/SAVPF 111 63 9 0 8 13 110 126
+            c=IN IP4 0.0.0.0
+            a=rtcp:9 IN IP4 0.0.0.0
+            a=ice-ufrag:Xk3b
+            a=ice-pwd:9sWq2mLx7Rt4Yz1Nc8Vb5Hf0
+            a=ice-options:trickle
+            a=fingerprint:sha-256 4F:2A:9C:11:7E:D3:05:B8:6A:C2:1F:E9:38:74:AB:0D:52:96:E1:3C:8B:47:F0:2D:A5:19:6E:C8:73:B4:0A:DF
+            a=setup:actpass
+            a=mid:0
+            a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level
+            a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time
+            a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01
+            a=extmap:4 urn:ietf:params:rtp-hdrext:sdes:mid
+            a=sendrecv
+            a=msid:6c9f0a3e-2b1d-4c5e-8f7a-9b0c1d2e3f4a 1e2d3c4b-5a69-4788-96a5-b4c3d2e1f0a9
+            a=rtcp-mux
+            a=rtcp-rsize
+            a=rtpmap:111 opus/48000/2
+            a=rtcp-fb:111 transport-cc
+            a=fmtp:111 minptime=10;useinbandfec=1
+            a=rtpmap:63 red/48000/2
+            a=fmtp:63 111/111
+            a=rtpmap:9 G722/8000
+            a=rtpmap:0 PCMU/8000
+            a=rtpmap:8 PCMA/8000
+            a=rtpmap:13 CN/8000
+            a=rtpmap:110 telephone-event/48000
+            a=rtpmap:126 telephone-event/8000
+            a=ssrc:2944121187 cname:Qm9vbGVhbkNuYW1lMTIz
+            a=ssrc:2944121187 msid:6c9f0a3e-2b1d-4c5e-8f7a-9b0c1d2e3f4a 1e2d3c4b-5a69-4788-96a5-b4c3d2e1f0a9
+            m=video 9 UDP/TLS/RTP/SAVPF 96 97 102 103 104 105 106 107 108 109 127 125 39 40 45 46 98 99 100 101 112 113 116 117 118
+            c=IN IP4 0.0.0.0
+            a=rtcp:9 IN IP4 0.0.0.0
+            a=ice-ufrag:Xk3b
+            a=ice-pwd:9sWq2mLx7Rt4Yz1Nc8Vb5Hf0
+            a=ice-options:trickle
+            a=fingerprint:sha-256 4F:2A:9C:11:7E:D3:05:B8:6A:C2:1F:E9:38:74:AB:0D:52:96:E1:3C:8B:47:F0:2D:A5:19:6E:C8:73:B4:0A:DF
+            a=setup:actpass
+            a=mid:1
+            a=extmap:14 urn:ietf:params:rtp-hdrext:toffset
+            a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time
+            a=extmap:13 urn:3gpp:video-orientation
+            a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01
+            a=extmap:5 http://www.webrtc.org/experiments/rtp-hdrext/playout-delay
+            a=extmap:6 http://www.webrtc.org/experiments/rtp-hdrext/video-content-type
+            a=extmap:7 http://www.webrtc.org/experiments/rtp-hdrext/video-timing
+            a=extmap:8 http://www.webrtc.org/experiments/rtp-hdrext/color-space
+            a=extmap:4 urn:ietf:params:rtp-hdrext:sdes:mid
+            a=extmap:10 urn:ietf:params:rtp-hdrext:sdes:rtp-stream-id
+            a=extmap:11 urn:ietf:params:rtp-hdrext:sdes:repaired-rtp-stream-id
+            a=sendrecv
+            a=msid:6c9f0a3e-2b1d-4c5e-8f7a-9b0c1d2e3f4a 7f6e5d4c-3b2a-4190-8f7e-6d5c4b3a2918
+            a=rtcp-mux
+            a=rtcp-rsize
+            a=rtpmap:96 VP8/90000
+            a=rtcp-fb:96 goog-remb
+            a=rtcp-fb:96 transport-cc
+            a=rtcp-fb:96 ccm fir
+            a=rtcp-fb:96 nack
+            a=rtcp-fb:96 nack pli
+            a=rtpmap:97 rtx/90000
+            a=fmtp:97 apt=96
+            a=rtpmap:102 H264/90000
+            a=rtcp-fb:102 goog-remb
+            a=rtcp-fb:102 transport-cc
+            a=rtcp-fb:102 ccm fir
+            a=rtcp-fb:102 nack
+            a=rtcp-fb:102 nack pli
+            a=fmtp:102 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42001f
+            a=rtpmap:103 rtx/90000
+            a=fmtp:103 apt=102
+            a=rtpmap:104 H264/90000
+            a=rtcp-fb:104 goog-remb
+            a=rtcp-fb:104 transport-cc
+            a=rtcp-fb:104 ccm fir
+            a=rtcp-fb:104 nack
+            a=rtcp-fb:104 nack pli
+            a=fmtp:104 level-asymmetry-allowed=1;packetization-mode=0;profile-level-id=42001f
+            a=rtpmap:105 rtx/90000
+            a=fmtp:105 apt=104
+            a=rtpmap:106 H264/90000
+            a=rtcp-fb:106 goog-remb
+            a=rtcp-fb:106 transport-cc
+            a=rtcp-fb:106 ccm fir
+            a=rtcp-fb:106 nack
+            a=rtcp-fb:106 nack pli
+            a=fmtp:106 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f
+            a=rtpmap:107 rtx/90000
+            a=fmtp:107 apt=106
+            a=rtpmap:108 H264/90000
+            a=rtcp-fb:108 goog-remb
+            a=rtcp-fb:108 transport-cc
+            a=rtcp-fb:108 ccm fir
+            a=rtcp-fb:108 nack
+            a=rtcp-fb:108 nack pli
+            a=fmtp:108 level-asymmetry-allowed=1;packetization-mode=0;profile-level-id=42e01f
+            a=rtpmap:109 rtx/90000
+            a=fmtp:109 apt=108
+            a=rtpmap:127 H264/90000
+            a=rtcp-fb:127 goog-remb
+            a=rtcp-fb:127 transport-cc
+            a=rtcp-fb:127 ccm fir
+            a=rtcp-fb:127 nack
+            a=rtcp-fb:127 nack pli
+            a=fmtp:127 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=4d001f
+            a=rtpmap:125 rtx/90000
+            a=fmtp:125 apt=127
+            a=rtpmap:98 VP9/90000
+            a=rtcp-fb:98 goog-remb
+            a=rtcp-fb:98 transport-cc
+            a=rtcp-fb:98 ccm fir
+            a=rtcp-fb:98 nack
+            a=rtcp-fb:98 nack pli
+            a=fmtp:98 profile-id=0
+            a=rtpmap:99 rtx/90000
+            a=fmtp:99 apt=98
+            a=rtpmap:100 VP9/90000
+            a=rtcp-fb:100 goog-remb
+            a=rtcp-fb:100 transport-cc
+            a=rtcp-fb:100 ccm fir
+            a=rtcp-fb:100 nack
+            a=rtcp-fb:100 nack pli
+            a=fmtp:100 profile-id=2
+            a=rtpmap:101 rtx/90000
+            a=fmtp:101 apt=100
+            a=rtpmap:112 AV1/90000
+            a=rtcp-fb:112 goog-remb
+            a=rtcp-fb:112 transport-cc
+            a=rtcp-fb:112 ccm fir
+            a=rtcp-fb:112 nack
+            a=rtcp-fb:112 nack pli
+            a=rtpmap:113 rtx/90000
+            a=fmtp:113 apt=112
+            a=rtpmap:116 red/90000
+            a=rtpmap:117 rtx/90000
+            a=fmtp:117 apt=116
+            a=rtpmap:118 ulpfec/90000
+            a=ssrc-group:FID 1839273645 3029384756
+            a=ssrc:1839273645 cname:Qm9vbGVhbkNuYW1lMTIz
+            a=ssrc:1839273645 msid:6c9f0a3e-2b1d-4c5e-8f7a-9b0c1d2e3f4a 7f6e5d4c-3b2a-4190-8f7e-6d5c4b3a2918
+            a=ssrc:3029384756 cname:Qm9vbGVhbkNuYW1lMTIz
+            a=ssrc:3029384756 msid:6c9f0a3e-2b1d-4c5e-8f7a-9b0c1d2e3f4a 7f6e5d4c-3b2a-4190-8f7e-6d5c4b3a2918
+            """.replace("\n", "\r\n");
+
+    private static final String ICE_CANDIDATE =
+            "{\"candidate\":\"candidate:3504216797 1 udp 2122260223 192.168.1.23 54321 typ host generation 0 "
+                    + "ufrag Xk3b network-id 1 network-cost 10\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0,"
+                    + "\"usernameFragment\":\"Xk3b\"}";
+
+    @Param({"offer", "ice"})
+    public String signal;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private SimpMessagingTemplate messagingTemplate;
+    private SignalRelay signalRelay;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        messagingTemplate = new SimpMessagingTemplate((message, timeout) -> true);
+        messagingTemplate.setMessageConverter(new CompositeMessageConverter(List.of(
+                new StringMessageConverter(), new ByteArrayMessageConverter(), new JacksonJsonMessageConverter())));
+        // The target is connected here, so the relay finds its handle
+        SessionRegistry sessionRegistry = new SessionRegistry(
+                MatchmakingService.withDefaults(event -> {}, new SimpleMeterRegistry(), 10_000,
+                ClusterMembership.standalone(), List.of()), event -> {});
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setSessionId("s-target");
+        connect.setNativeHeader("uuid", TARGET);
+        sessionRegistry.onConnect(new SessionConnectEvent(this,
+                MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders())));
+        signalRelay = new SignalRelay(messagingTemplate, sessionRegistry, new SimpleMeterRegistry(), 0, 16);
+
+        // Built the way the lobby does: JSON.stringify of the description/candidate inside JSON.stringify
+        Map<String, Object> payload = new LinkedHashMap<>();
+        if (signal.equals("offer")) {
+            payload.put("type", "OFFER");
+            payload.put("sdp", objectMapper.writeValueAsString(Map.of("type", "offer", "sdp", SDP_OFFER)));
+        } else {
+            payload.put("type", "ICE");
+            payload.put("candidate", ICE_CANDIDATE);
+        }
+        payload.put("targetPeerId", TARGET);
+        body = objectMapper.writeValueAsBytes(payload);
+    }
+
+    // What LobbyController.handleSignal used to do
+    @Benchmark
+    public void mapRoundTrip() {
+        Map<String, Object> signal = objectMapper.readValue(body, new TypeReference<Map<String, Object>>() {});
+        String targetPeerId = (String) signal.get("targetPeerId");
+        signal.put("senderId", SENDER);
+        messagingTemplate.convertAndSend("/topic/signal/" + targetPeerId, (Object) signal);
+    }
+
+    @Benchmark
+    public String passThrough() {
+        return signalRelay.relay(PlayerHandle.Topic.SIGNAL, body, SENDER);
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.printf("%n%s body: %d bytes%n", signal, body.length);
+    }
+}
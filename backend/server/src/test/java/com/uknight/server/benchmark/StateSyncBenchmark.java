@@ -0,0 +1,102 @@
+package com.uknight.server.benchmark;
+
+import com.uknight.server.service.GameService;
+import com.uknight.server.service.PhysicsEngine;
+import com.uknight.server.service.StateSyncEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one GAME_STATE_SYNC after a shot: the binary delta encoder against
+ * the previous HashMap-per-state/per-puck payload serialized by Jackson.
+ *
+ * Run with {@code -prof gc} for allocations (gc.alloc.rate.norm is bytes
+ * allocated per sync); the wire size of each format is printed at the end of
+ * every trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateSyncBenchmark {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private final StateSyncEncoder encoder = new StateSyncEncoder();
+
+    // Two consecutive states of one match; syncing them alternately gives a
+    // typical post-shot delta (both pucks moved, turn passed)
+    private final GameService.GameState[] states = new GameService.GameState[2];
+    private int next;
+    private long bytes;
+    private long frames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GameService gameService = new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0);
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new GameService.GameState("3f2b6a0e-8c1d-4b7e-9a55-2d4c6e8f0a1b",
+                    "a7c1e9d2-5b3f-4e8a-b6d0-1f2e3d4c5b6a", "c4d5e6f7-0a1b-4c2d-8e3f-9a0b1c2d3e4f");
+            gameService.processShot(states[i], states[i].getPlayer1(), new GameService.Shot(0.5, 0.1));
+        }
+        gameService.processShot(states[1], states[1].getPlayer2(), new GameService.Shot(-0.4, 0.2));
+        encoder.encodeDelta(states[1]);
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.printf("%nbytes per sync: %d%n", bytes / frames);
+    }
+
+    @Benchmark
+    public byte[] binaryDelta() {
+        byte[] frame = encoder.encodeDelta(states[next++ & 1]);
+        bytes += frame.length;
+        frames++;
+        return frame;
+    }
+
+    @Benchmark
+    public byte[] legacyMapJson() {
+        byte[] frame = legacyJson(states[next++ & 1]);
+        bytes += frame.length;
+        frames++;
+        return frame;
+    }
+
+    // The payload LobbyController used to build for every sync
+    private byte[] legacyJson(GameService.GameState game) {
+        Map<String, Object> statePayload = new HashMap<>();
+        statePayload.put("type", "GAME_STATE_SYNC");
+        statePayload.put("matchId", game.getMatchId());
+        statePayload.put("pucks", serializePucks(game.getPhysics()));
+        statePayload.put("currentTurn", game.getCurrentTurn());
+        statePayload.put("player1Score", game.getPlayer1Score());
+        statePayload.put("player2Score", game.getPlayer2Score());
+        statePayload.put("round", game.getRound());
+        statePayload.put("roundOver", game.isRoundOver());
+        statePayload.put("winner", game.getWinner());
+        return objectMapper.writeValueAsBytes(statePayload);
+    }
+
+    private static Object[] serializePucks(PhysicsEngine physics) {
+        Object[] result = new Object[PhysicsEngine.PUCK_COUNT];
+        for (int i = 0; i < PhysicsEngine.PUCK_COUNT; i++) {
+            Map<String, Object> puckData = new HashMap<>();
+            puckData.put("x", physics.getX(i));
+            puckData.put("y", physics.getY(i));
+            puckData.put("radius", physics.getRadius(i));
+            puckData.put("vx", physics.getVx(i));
+            puckData.put("vy", physics.getVy(i));
+            result[i] = puckData;
+        }
+        return result;
+    }
+}
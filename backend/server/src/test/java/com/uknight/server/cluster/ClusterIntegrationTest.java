@@ -0,0 +1,224 @@
+package com.uknight.server.cluster;
+
+import com.uknight.server.ServerApplication;
+import com.uknight.server.service.GameService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two server instances in one JVM, joined by {@link LocalClusterTransport}
+ * and the simple broker plus {@link ClusterBrokerBridge}, with one user
+ * connected to each.
+ */
+class ClusterIntegrationTest {
+
+    private static final String PROBE_CONFIRM = "GAME_INVITE_SENT_CONFIRM";
+
+    // A university shard, owned by either node
+    private static final String UNIVERSITY = "Cluster University";
+
+    private static ConfigurableApplicationContext node1;
+    private static ConfigurableApplicationContext node2;
+    private static WebSocketStompClient stompClient;
+
+    @BeforeAll
+    static void startNodes() {
+        // Each node waits for the other to join before it finishes starting
+        CompletableFuture<ConfigurableApplicationContext> starting = CompletableFuture.supplyAsync(() -> startNode("n1"));
+        node2 = startNode("n2");
+        node1 = starting.join();
+        stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new CompositeMessageConverter(List.of(
+                new StringMessageConverter(), new ByteArrayMessageConverter(), new JacksonJsonMessageConverter())));
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        stompClient.stop();
+        node1.close();
+        node2.close();
+    }
+
+    private static ConfigurableApplicationContext startNode(String nodeId) {
+        return startNode(nodeId, "n1,n2", 30_000);
+    }
+
+    private static ConfigurableApplicationContext startNode(String nodeId, String nodes, long joinTimeoutMs) {
+        return new SpringApplicationBuilder(ServerApplication.class)
+                .properties("server.port=0", "cluster.node-id=" + nodeId, "cluster.nodes=" + nodes,
+                        "cluster.join-timeout-ms=" + joinTimeoutMs,
+                        "matchmaking.universities=" + UNIVERSITY, "logging.level.com.uknight.server=WARN")
+                .run();
+    }
+
+    @Test
+    void nodeWithAPeerOutsideThisJvmFailsToStart() {
+        Exception e = assertThrows(Exception.class, () -> startNode("n3", "n3,elsewhere", 200));
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        assertInstanceOf(IllegalStateException.class, cause);
+        assertTrue(cause.getMessage().contains("[elsewhere]"), cause.getMessage());
+    }
+
+    @Test
+    void usersOnDifferentNodesAreMatchedAndCanSignal() throws Exception {
+        Client alice = new Client(node1);
+        Client bob = new Client(node2);
+        try {
+            alice.send("/app/join", UNIVERSITY);
+            bob.send("/app/join", UNIVERSITY);
+
+            assertEquals(bob.uuid, alice.next("/topic/match/").get("peerId"));
+            assertEquals(alice.uuid, bob.next("/topic/match/").get("peerId"));
+
+            alice.send("/app/signal", Map.of("type", "OFFER", "sdp", "v=0", "targetPeerId", bob.uuid));
+            Map<?, ?> offer = bob.next("/topic/signal/");
+            assertEquals("v=0", offer.get("sdp"));
+
+            // Bob's node learned of the pairing, so it tells alice when bob leaves
+            bob.session.disconnect();
+            Map<?, ?> bye = alice.next("/topic/signal/");
+            assertEquals("BYE", bye.get("type"));
+            assertEquals(bob.uuid, bye.get("senderId"));
+        } finally {
+            alice.session.disconnect();
+        }
+    }
+
+    @Test
+    void gameCommandsRunOnTheMatchOwner() throws Exception {
+        ClusterMembership membership = node1.getBean(ClusterMembership.class);
+        String matchId;
+        do {
+            matchId = UUID.randomUUID().toString();
+        } while (!membership.ownerOfMatch(matchId).equals("n1"));
+
+        Client alice = new Client(node1);
+        Client bob = new Client(node2);
+        try {
+            // Bob is invited and goes first; his commands reach node 1 through the cluster
+            alice.send("/app/game/accept", Map.of("targetPeerId", bob.uuid, "matchId", matchId));
+            assertEquals("GAME_START", alice.next("/topic/game/").get("type"));
+            assertEquals("GAME_START", bob.next("/topic/game/").get("type"));
+            assertTrue(node1.getBean(GameService.class).getGame(matchId).isPresent());
+            assertTrue(node2.getBean(GameService.class).getGame(matchId).isEmpty());
+
+            bob.send("/app/game/move", Map.of("matchId", matchId, "dx", 0.1, "dy", 0.0));
+            assertEquals("GAME_MOVE_ANNOUNCE", alice.next("/topic/game/").get("type"));
+            assertEquals("GAME_MOVE_ANNOUNCE", bob.next("/topic/game/").get("type"));
+            assertNotNull(alice.nextBinary());
+            assertNotNull(bob.nextBinary());
+
+            bob.send("/app/game/close", Map.of("matchId", matchId));
+            assertEquals("GAME_CLOSED", alice.next("/topic/game/").get("type"));
+            assertTrue(node1.getBean(GameService.class).getGame(matchId).isEmpty());
+        } finally {
+            alice.session.disconnect();
+            bob.session.disconnect();
+        }
+    }
+
+    // One user: subscribed to their match, signal and game topics
+    private static class Client {
+        private final String uuid = UUID.randomUUID().toString();
+        private final BlockingQueue<Received> received = new LinkedBlockingQueue<>();
+        private final StompSession session;
+
+        Client(ConfigurableApplicationContext node) throws Exception {
+            String url = "ws://localhost:" + node.getEnvironment().getProperty("local.server.port") + "/ws";
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("uuid", uuid);
+            session = stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders,
+                    new StompSessionHandlerAdapter() {}).get(10, TimeUnit.SECONDS);
+
+            for (String topic : List.of("/topic/match/", "/topic/signal/", "/topic/game/")) {
+                session.subscribe(topic + uuid, new Handler(topic));
+            }
+
+            // The simple broker has no receipts: an invite to nobody is confirmed on our game topic
+            for (int attempt = 0; attempt < 50; attempt++) {
+                send("/app/game/invite", Map.of("gameType", "probe"));
+                if (received.poll(100, TimeUnit.MILLISECONDS) != null) {
+                    return;
+                }
+            }
+            fail("never subscribed");
+        }
+
+        void send(String destination, Object payload) {
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination(destination);
+            headers.add("uuid", uuid);
+            session.send(headers, payload);
+        }
+
+        Map<?, ?> next(String topic) throws InterruptedException {
+            Received message = take();
+            assertEquals(topic, message.topic(), () -> "unexpected " + message);
+            return assertInstanceOf(Map.class, message.payload());
+        }
+
+        byte[] nextBinary() throws InterruptedException {
+            return assertInstanceOf(byte[].class, take().payload());
+        }
+
+        // Skips confirmations of probes that were still in flight
+        private Received take() throws InterruptedException {
+            while (true) {
+                Received message = received.poll(10, TimeUnit.SECONDS);
+                assertNotNull(message, uuid + " received nothing");
+                if (!(message.payload() instanceof Map<?, ?> map && PROBE_CONFIRM.equals(map.get("type")))) {
+                    return message;
+                }
+            }
+        }
+
+        private class Handler implements StompFrameHandler {
+            private final String topic;
+
+            Handler(String topic) {
+                this.topic = topic;
+            }
+
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return MimeTypeUtils.APPLICATION_OCTET_STREAM.equals(headers.getContentType()) ? byte[].class : Map.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add(new Received(topic, payload));
+            }
+        }
+    }
+
+    private record Received(String topic, Object payload) {}
+}
@@ -0,0 +1,65 @@
+package com.uknight.server.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterMembershipTest {
+
+    private static final int MATCHES = 30_000;
+
+    @Test
+    void standaloneOwnsEverything() {
+        ClusterMembership membership = ClusterMembership.standalone();
+
+        assertFalse(membership.isClustered());
+        assertEquals(List.of(), membership.getPeers());
+        assertEquals(membership.getNodeId(), membership.ownerOfMatch("m1"));
+        assertEquals(membership.getNodeId(), membership.ownerOfShard("ucf"));
+    }
+
+    @Test
+    void everyNodeAgreesOnTheOwner() {
+        ClusterMembership n1 = new ClusterMembership("n1", "n1,n2,n3");
+        ClusterMembership n3 = new ClusterMembership("n3", " n3, n2 ,n1");
+
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(n1.ownerOfMatch("m" + i), n3.ownerOfMatch("m" + i));
+        }
+        assertEquals(List.of("n2", "n3"), n1.getPeers());
+    }
+
+    @Test
+    void spreadsMatchesEvenly() {
+        Map<String, Integer> owned = new HashMap<>();
+        ClusterMembership membership = new ClusterMembership("n1", "n1,n2,n3");
+        for (int i = 0; i < MATCHES; i++) {
+            owned.merge(membership.ownerOfMatch("m" + i), 1, Integer::sum);
+        }
+
+        assertEquals(3, owned.size());
+        owned.values().forEach(count -> assertTrue(Math.abs(count - MATCHES / 3) < MATCHES / 30, owned.toString()));
+    }
+
+    @Test
+    void removingANodeOnlyMovesItsOwnMatches() {
+        ClusterMembership before = new ClusterMembership("n1", "n1,n2,n3");
+        ClusterMembership after = new ClusterMembership("n1", "n1,n2");
+
+        for (int i = 0; i < 1_000; i++) {
+            String owner = before.ownerOfMatch("m" + i);
+            if (!owner.equals("n3")) {
+                assertEquals(owner, after.ownerOfMatch("m" + i));
+            }
+        }
+    }
+
+    @Test
+    void rejectsANodeOutsideTheCluster() {
+        assertThrows(IllegalStateException.class, () -> new ClusterMembership("n4", "n1,n2,n3"));
+    }
+}
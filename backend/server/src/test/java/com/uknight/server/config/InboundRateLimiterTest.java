@@ -0,0 +1,204 @@
+package com.uknight.server.config;
+
+import com.uknight.server.cluster.ClusterMembership;
+import com.uknight.server.service.GameService;
+import com.uknight.server.service.MatchmakingService;
+import com.uknight.server.service.SessionRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InboundRateLimiterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GameService gameService = new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0);
+    private final SessionRegistry sessionRegistry = new SessionRegistry(
+            MatchmakingService.withDefaults(event -> {}, new SimpleMeterRegistry(), 10_000,
+                ClusterMembership.standalone(), List.of()), event -> {});
+
+    // Deferred frames come back through the channel
+    private final BlockingQueue<Message<?>> resent = new LinkedBlockingQueue<>();
+    private final MessageChannel channel = (message, timeout) -> resent.add(message);
+
+    private InboundRateLimiter limiter;
+
+    @AfterEach
+    void close() {
+        limiter.close();
+    }
+
+    // chat: 5/s with a burst of chatBurst; signal and move as configured by default
+    private InboundRateLimiter limiter(String policy, int chatBurst) {
+        limiter = new InboundRateLimiter(gameService, meterRegistry, policy, 500,
+                50, 200, 5, chatBurst, 5, 5);
+        return limiter;
+    }
+
+    @Test
+    void dropsFramesBeyondTheBurstPerSessionAndDestination() {
+        limiter("drop", 10);
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(limiter.admit(send("s1", null, InboundRateLimiter.CHAT), channel, 0));
+        }
+
+        assertNull(limiter.admit(send("s1", null, InboundRateLimiter.CHAT), channel, 0));
+        // Other sessions and destinations have their own buckets
+        assertNotNull(limiter.admit(send("s2", null, InboundRateLimiter.CHAT), channel, 0));
+        assertNotNull(limiter.admit(send("s1", null, InboundRateLimiter.SIGNAL), channel, 0));
+        assertNotNull(limiter.admit(send("s1", null, "/app/join"), channel, 0));
+        // One token back every 200 ms
+        assertNotNull(limiter.admit(send("s1", null, InboundRateLimiter.CHAT), channel, 200 * MS));
+        assertNull(limiter.admit(send("s1", null, InboundRateLimiter.CHAT), channel, 200 * MS));
+
+        assertEquals(2, throttled(InboundRateLimiter.CHAT, "dropped"));
+        assertEquals(0, throttled(InboundRateLimiter.SIGNAL, "dropped"));
+    }
+
+    @Test
+    void defersExcessFramesInOrderUpToTheLimit() throws InterruptedException {
+        limiter("defer", 1);
+        Message<byte[]> first = send("s1", null, InboundRateLimiter.CHAT);
+        Message<byte[]> second = send("s1", null, InboundRateLimiter.CHAT);
+        Message<byte[]> third = send("s1", null, InboundRateLimiter.CHAT);
+        Message<byte[]> fourth = send("s1", null, InboundRateLimiter.CHAT);
+
+        assertSame(first, limiter.admit(first, channel, 0));
+        assertNull(limiter.admit(second, channel, 0)); // Due in 200 ms
+        assertNull(limiter.admit(third, channel, 0)); // 400 ms
+        assertNull(limiter.admit(fourth, channel, 0)); // 600 ms is past max-defer-ms
+
+        Message<?> deferredSecond = resent.poll(5, TimeUnit.SECONDS);
+        Message<?> deferredThird = resent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(deferredSecond);
+        assertNotNull(deferredThird);
+        assertSame(second.getPayload(), deferredSecond.getPayload());
+        assertSame(third.getPayload(), deferredThird.getPayload());
+        assertNull(resent.poll(300, TimeUnit.MILLISECONDS));
+
+        // On their second pass they go straight through
+        assertSame(deferredSecond, limiter.admit(deferredSecond, channel, 0));
+        assertEquals(2, throttled(InboundRateLimiter.CHAT, "deferred"));
+        assertEquals(1, throttled(InboundRateLimiter.CHAT, "dropped"));
+    }
+
+    @Test
+    void rejectsMovesOutOfTurn() {
+        limiter("drop", 10);
+        connect("s1", "alice");
+        connect("s2", "bob");
+        connect("s3", "carol");
+        gameService.createGame("m1", "alice", "bob");
+
+        assertNull(limiter.admit(move("s2", "bob", "m1"), channel, 0));
+        assertNotNull(limiter.admit(move("s1", "alice", "m1"), channel, 0));
+        // No game here to judge by, e.g. it lives on another node
+        assertNotNull(limiter.admit(move("s3", "carol", "m2"), channel, 0));
+
+        assertEquals(1, meterRegistry.get("stomp.move.out_of_turn").counter().count());
+    }
+
+    @Test
+    void chargesMovesBeforeJudgingTheTurn() {
+        limiter("drop", 10);
+        connect("s2", "bob");
+        gameService.createGame("m1", "alice", "bob");
+
+        // A flood out of turn spends the move burst of 5 like any other; only what it admits is judged
+        for (int i = 0; i < 7; i++) {
+            assertNull(limiter.admit(move("s2", "bob", "m1"), channel, 0));
+        }
+
+        assertEquals(5, meterRegistry.get("stomp.move.out_of_turn").counter().count());
+        assertEquals(2, throttled(InboundRateLimiter.MOVE, "dropped"));
+    }
+
+    @Test
+    void judgesTheTurnInTheMovesOwnMatch() {
+        limiter("drop", 10);
+        connect("s1", "alice");
+        connect("s2", "bob");
+        connect("s3", "carol");
+        gameService.createGame("m1", "alice", "bob");
+        gameService.createGame("m2", "carol", "alice");
+
+        // Alice's turn in m1 doesn't let her move in m2, where it is carol's
+        assertNull(limiter.admit(move("s1", "alice", "m2"), channel, 0));
+        assertNotNull(limiter.admit(move("s1", "alice", "m1"), channel, 0));
+        assertNotNull(limiter.admit(move("s3", "carol", "m2"), channel, 0));
+    }
+
+    @Test
+    void dropsDeferredFramesOfSessionsThatDisconnected() throws InterruptedException {
+        limiter("defer", 1);
+        assertNotNull(limiter.admit(send("s1", null, InboundRateLimiter.CHAT), channel, 0));
+        assertNull(limiter.admit(send("s1", null, InboundRateLimiter.CHAT), channel, 0)); // Due in 200 ms
+
+        limiter.admit(disconnect("s1"), channel, 0);
+
+        assertNull(resent.poll(400, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void forgetsSessionsOnDisconnect() {
+        limiter("drop", 10);
+        limiter.admit(send("s1", null, InboundRateLimiter.CHAT), channel, 0);
+        assertEquals(1, limiter.getSessionCount());
+
+        limiter.admit(disconnect("s1"), channel, 0);
+
+        assertEquals(0, limiter.getSessionCount());
+    }
+
+    private double throttled(String destination, String action) {
+        return meterRegistry.get("stomp.throttled").tags("destination", destination, "action", action).counter().count();
+    }
+
+    private void connect(String sessionId, String uuid) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setNativeHeader("uuid", uuid);
+        sessionRegistry.onConnect(new SessionConnectEvent(this,
+                MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders())));
+    }
+
+    private static Message<byte[]> disconnect(String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> move(String sessionId, String uuid, String matchId) {
+        byte[] body = ("{\"dx\":0.1,\"dy\":0.2,\"matchId\":\"" + matchId + "\"}").getBytes(StandardCharsets.UTF_8);
+        return send(sessionId, uuid, InboundRateLimiter.MOVE, body);
+    }
+
+    private static Message<byte[]> send(String sessionId, String uuid, String destination) {
+        return send(sessionId, uuid, destination, new byte[0]);
+    }
+
+    private static Message<byte[]> send(String sessionId, String uuid, String destination, byte[] body) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+        if (uuid != null) {
+            accessor.setNativeHeader("uuid", uuid);
+        }
+        return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+}
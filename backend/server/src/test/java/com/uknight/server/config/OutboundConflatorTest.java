@@ -0,0 +1,201 @@
+package com.uknight.server.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundConflatorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final OutboundConflator conflator = new OutboundConflator(registry);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(executor);
+
+    // Stands in for the WebSocket handler; s1's socket is stuck until the latch opens
+    private final CountDownLatch s1Writable = new CountDownLatch(1);
+    private final BlockingQueue<String> written = new LinkedBlockingQueue<>();
+    // Snapshots the conflator asked for, in order
+    private final List<String> snapshotsBuilt = new CopyOnWriteArrayList<>();
+
+    OutboundConflatorTest() {
+        channel.addInterceptor(conflator);
+        channel.subscribe(message -> {
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+            if (sessionId.equals("s1")) {
+                try {
+                    s1Writable.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Object payload = message.getPayload();
+            written.add(sessionId + ":" + (payload instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : payload));
+        });
+    }
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void newerSyncReplacesAnUnsentOneButLifecycleFramesStay() throws InterruptedException {
+        channel.send(message("s1", "sync-1", "m1"));
+        channel.send(message("s1", "sync-2", "m1"));
+        channel.send(message("s1", "GAME_START", null));
+        channel.send(message("s1", "sync-3", "m1"));
+        channel.send(message("s1", "other-match", "m2"));
+        channel.send(message("s1", "sync-4", "m1"));
+        // sync-1 is being written; sync-4 has replaced sync-2, then sync-3
+        assertEquals(3, conflator.getQueuedCount());
+
+        s1Writable.countDown();
+
+        assertEquals(List.of("s1:sync-1", "s1:GAME_START", "s1:other-match", "s1:sync-4"), take(4));
+        assertNull(written.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(2, registry.get("stomp.outbound.conflated").counter().count());
+        assertEquals(0, conflator.getQueuedCount());
+        assertEquals(3, registry.get("stomp.outbound.queue.depth").summary().max());
+    }
+
+    @Test
+    void aReplacedDeltaIsSentAsTheFullState() throws InterruptedException {
+        channel.send(message("s1", "sync-1", "m1", "full-1"));
+        channel.send(message("s1", "sync-2", "m1", "full-2"));
+        channel.send(message("s1", "sync-3", "m1", "full-3"));
+
+        s1Writable.countDown();
+
+        // The client never sees sync-2, so sync-3 alone would leave it with a gap
+        assertEquals(List.of("s1:sync-1", "s1:full-3"), take(2));
+        assertNull(written.poll(100, TimeUnit.MILLISECONDS));
+        // Only the sync that replaced another needed its full state
+        assertEquals(List.of("full-3"), snapshotsBuilt);
+    }
+
+    @Test
+    void closesASessionWhoseBacklogPassesTheBufferLimit() throws Exception {
+        SimpleMeterRegistry limitedRegistry = new SimpleMeterRegistry();
+        OutboundConflator limited = new OutboundConflator(limitedRegistry, 32);
+        ExecutorSubscribableChannel limitedChannel = new ExecutorSubscribableChannel(executor);
+        limitedChannel.addInterceptor(limited);
+        limitedChannel.subscribe(message -> {
+            try {
+                s1Writable.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CompletableFuture<CloseStatus> closed = new CompletableFuture<>();
+        limited.decorate(new TextWebSocketHandler()).afterConnectionEstablished(session("s1", closed));
+
+        limitedChannel.send(message("s1", "in-flight", null));
+        for (int i = 0; i < 3; i++) {
+            limitedChannel.send(message("s1", "frame-" + i + "-0123456789", null));
+        }
+
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE, closed.get(5, TimeUnit.SECONDS));
+        assertEquals(0, limited.getQueuedCount());
+        assertEquals(1, limitedRegistry.get("stomp.outbound.overflowed").counter().count());
+        s1Writable.countDown();
+    }
+
+    @Test
+    void aSlowSessionDoesNotHoldUpOthers() throws InterruptedException {
+        channel.send(message("s1", "sync-1", "m1"));
+        channel.send(message("s1", "sync-2", "m1"));
+        channel.send(message("s2", "sync-1", "m1"));
+        channel.send(message("s2", "sync-2", "m1"));
+
+        // At most one s2 frame waits at a time, so there is nothing to replace
+        assertEquals(List.of("s2:sync-1"), take(1));
+        assertEquals(List.of("s2:sync-2"), take(1));
+
+        s1Writable.countDown();
+        assertEquals(List.of("s1:sync-1", "s1:sync-2"), take(2));
+        assertEquals(0, registry.get("stomp.outbound.conflated").counter().count());
+    }
+
+    @Test
+    void keepsPublishOrderForASession() throws InterruptedException {
+        s1Writable.countDown();
+        for (int i = 0; i < 200; i++) {
+            channel.send(message("s1", "frame-" + i, null));
+        }
+
+        List<String> frames = take(200);
+        for (int i = 0; i < 200; i++) {
+            assertEquals("s1:frame-" + i, frames.get(i));
+        }
+    }
+
+    private List<String> take(int count) throws InterruptedException {
+        String[] frames = new String[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = written.poll(5, TimeUnit.SECONDS);
+            assertNotNull(frames[i], "only " + i + " frames written");
+        }
+        return List.of(frames);
+    }
+
+    private Message<?> message(String sessionId, String payload, String conflateKey) {
+        return message(sessionId, payload, conflateKey, null);
+    }
+
+    // Payloads are strings here, except that a snapshot makes the message bytes as in the game
+    private Message<?> message(String sessionId, String payload, String conflateKey, String snapshot) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination("/topic/game/" + sessionId);
+        if (conflateKey != null) {
+            accessor.setHeader(OutboundConflator.CONFLATE_HEADER, conflateKey);
+        }
+        if (snapshot != null) {
+            accessor.setHeader(OutboundConflator.SNAPSHOT_HEADER, (Supplier<byte[]>) () -> {
+                snapshotsBuilt.add(snapshot);
+                return snapshot.getBytes(StandardCharsets.UTF_8);
+            });
+            return MessageBuilder.createMessage(payload.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+        }
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    // Just enough of a WebSocket session to be closed
+    private static WebSocketSession session(String id, CompletableFuture<CloseStatus> closed) {
+        return (WebSocketSession) Proxy.newProxyInstance(WebSocketSession.class.getClassLoader(),
+                new Class<?>[] {WebSocketSession.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> id;
+                    case "close" -> {
+                        closed.complete(args != null && args.length == 1 ? (CloseStatus) args[0] : CloseStatus.NORMAL);
+                        yield null;
+                    }
+                    case "isOpen" -> !closed.isDone();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+}
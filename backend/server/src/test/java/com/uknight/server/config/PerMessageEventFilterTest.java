@@ -0,0 +1,50 @@
+package com.uknight.server.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Marker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerMessageEventFilterTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("per-message");
+    private final PerMessageEventFilter filter = new PerMessageEventFilter();
+
+    @BeforeEach
+    void setUp() {
+        filter.setContext(context);
+        filter.setMarkers("MOVE, SIGNAL");
+        filter.setOnMatch(FilterReply.NEUTRAL);
+        filter.setOnMismatch(FilterReply.DENY);
+        filter.start();
+    }
+
+    @Test
+    void matchesListedCategoriesBelowWarn() {
+        assertEquals(FilterReply.NEUTRAL, decide(LogMarkers.MOVE, Level.INFO));
+        assertEquals(FilterReply.NEUTRAL, decide(LogMarkers.SIGNAL, Level.DEBUG));
+    }
+
+    @Test
+    void leavesWarningsAndLifecycleEventsToTheOtherAppender() {
+        assertEquals(FilterReply.DENY, decide(LogMarkers.MOVE, Level.WARN));
+        assertEquals(FilterReply.DENY, decide(LogMarkers.SIGNAL, Level.ERROR));
+        assertEquals(FilterReply.DENY, decide(LogMarkers.CHAT, Level.INFO));
+        assertEquals(FilterReply.DENY, decide(null, Level.INFO));
+    }
+
+    private FilterReply decide(Marker marker, Level level) {
+        LoggingEvent event = new LoggingEvent(Logger.FQCN, logger, level, "event", null, null);
+        if (marker != null) {
+            event.addMarker(marker);
+        }
+        return filter.decide(event);
+    }
+}
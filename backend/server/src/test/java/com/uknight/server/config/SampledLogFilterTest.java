@@ -0,0 +1,78 @@
+package com.uknight.server.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Marker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampledLogFilterTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("sampled");
+    private final SampledLogFilter filter = new SampledLogFilter();
+
+    @BeforeEach
+    void setUp() {
+        logger.setLevel(Level.INFO);
+        filter.setContext(context);
+        filter.setPerSecond(3);
+        filter.setMarkers("MOVE, SIGNAL");
+        filter.start();
+    }
+
+    @Test
+    void limitsEachCategoryToItsOwnBudget() {
+        int moves = allowed(LogMarkers.MOVE, Level.INFO, 10);
+        int signals = allowed(LogMarkers.SIGNAL, Level.WARN, 10);
+
+        // A second boundary can fall in between and refill a budget once
+        assertTrue(moves >= 3 && moves <= 6, "moves let through: " + moves);
+        assertTrue(signals >= 3 && signals <= 6, "signals let through: " + signals);
+        assertEquals(20 - moves - signals, filter.getSuppressedCount());
+    }
+
+    @Test
+    void leavesUnlistedAndUnmarkedEventsAlone() {
+        assertEquals(10, allowed(LogMarkers.CHAT, Level.INFO, 10));
+        assertEquals(10, allowed(null, Level.INFO, 10));
+        assertEquals(0, filter.getSuppressedCount());
+    }
+
+    @Test
+    void disabledStatementsDoNotUseTheBudget() {
+        allowed(LogMarkers.MOVE, Level.DEBUG, 100);
+
+        assertEquals(0, filter.getSuppressedCount());
+        assertEquals(FilterReply.NEUTRAL, decide(LogMarkers.MOVE, Level.INFO));
+    }
+
+    @Test
+    void refusesToStartWithoutABudget() {
+        SampledLogFilter unlimited = new SampledLogFilter();
+        unlimited.setContext(context);
+        unlimited.setPerSecond(0);
+        unlimited.setMarkers("MOVE");
+        unlimited.start();
+
+        assertFalse(unlimited.isStarted());
+    }
+
+    private int allowed(Marker marker, Level level, int events) {
+        int allowed = 0;
+        for (int i = 0; i < events; i++) {
+            if (decide(marker, level) == FilterReply.NEUTRAL) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+
+    private FilterReply decide(Marker marker, Level level) {
+        return filter.decide(marker, logger, level, "event {}", null, null);
+    }
+}
@@ -0,0 +1,58 @@
+package com.uknight.server.config;
+
+import com.uknight.server.ServerApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SecurityConfigTest {
+
+    private static ConfigurableApplicationContext server;
+    private static final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeAll
+    static void start() {
+        server = new SpringApplicationBuilder(ServerApplication.class)
+                .properties("server.port=0", "spring.security.user.name=scraper", "spring.security.user.password=secret",
+                        "logging.level.com.uknight.server=WARN")
+                .run();
+    }
+
+    @AfterAll
+    static void stop() {
+        server.close();
+    }
+
+    @Test
+    void onlyHealthIsPublic() throws Exception {
+        assertEquals(200, get("/actuator/health", null));
+        assertEquals(401, get("/actuator/prometheus", null));
+        assertEquals(401, get("/actuator/prometheus", "scraper:wrong"));
+    }
+
+    @Test
+    void prometheusAnswersTheConfiguredScraper() throws Exception {
+        assertEquals(200, get("/actuator/prometheus", "scraper:secret"));
+    }
+
+    private static int get(String path, String credentials) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + server.getEnvironment().getProperty("local.server.port") + path));
+        if (credentials != null) {
+            request.header("Authorization",
+                    "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
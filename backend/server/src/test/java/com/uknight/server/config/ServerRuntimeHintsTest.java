@@ -0,0 +1,40 @@
+package com.uknight.server.config;
+
+import com.uknight.server.cluster.ClusterCommand;
+import com.uknight.server.service.GameService;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerRuntimeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    ServerRuntimeHintsTest() {
+        new ServerRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void coversMapPayloads() throws Exception {
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onConstructorInvocation(LinkedHashMap.class.getConstructor()).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(Map.of("k", "v").getClass()).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(Map.of("k", "v", "k2", "v2").getClass()).test(hints));
+    }
+
+    @Test
+    void bindsGameClassesAndEvents() throws Exception {
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onMethodInvocation(GameService.GameState.class.getMethod("getMatchId")).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(GameService.Shot.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onMethodInvocation(GameService.MatchFinishedEvent.class.getMethod("winnerId")).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onMethodInvocation(ClusterCommand.class.getMethod("payload")).test(hints));
+    }
+}
@@ -0,0 +1,89 @@
+package com.uknight.server.config;
+
+import com.uknight.server.service.GameLoop;
+import com.uknight.server.service.GameService;
+import com.uknight.server.service.StateSyncEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpectatorSnapshotsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final GameService gameService = new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0);
+    private final GameLoop gameLoop = new GameLoop(gameService, 1, 1);
+    private final SpectatorSnapshots spectatorSnapshots = new SpectatorSnapshots(gameService, gameLoop, registry);
+
+    // What the broker would write to clients
+    private final BlockingQueue<Message<?>> outbound = new LinkedBlockingQueue<>();
+    private final MessageChannel clientOutboundChannel = (message, timeout) -> outbound.add(message);
+    private final SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(
+            new ExecutorSubscribableChannel(), clientOutboundChannel, new ExecutorSubscribableChannel(), List.of("/topic"));
+
+    @AfterEach
+    void tearDown() {
+        gameLoop.shutdown();
+    }
+
+    @Test
+    void sendsALateSubscriberTheCurrentStateAtTheLatestSequence() throws Exception {
+        gameService.createGame("m1", "alice", "bob");
+        GameService.GameState game = gameLoop.submitShot("m1", "alice", new GameService.Shot(0.5, 0)).get(5, TimeUnit.SECONDS);
+        gameLoop.executorFor("m1").execute(() -> game.getSyncEncoder().encodeDelta(game));
+
+        spectatorSnapshots.afterMessageHandled(subscribe("/topic/spectate/m1"), null, broker, null);
+
+        Message<?> snapshot = outbound.poll(5, TimeUnit.SECONDS);
+        assertNotNull(snapshot);
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(snapshot);
+        assertEquals(SimpMessageType.MESSAGE, headers.getMessageType());
+        assertEquals("s1", headers.getSessionId());
+        assertEquals("sub-0", headers.getSubscriptionId());
+        assertEquals("/topic/spectate/m1", headers.getDestination());
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, headers.getContentType());
+        // Never replaced by a delta queued after it
+        assertNull(headers.getHeader(OutboundConflator.CONFLATE_HEADER));
+
+        byte[] frame = (byte[]) snapshot.getPayload();
+        assertEquals(StateSyncEncoder.FLAG_FULL, frame[1] & StateSyncEncoder.FLAG_FULL);
+        assertEquals(1, frame[5]); // Sequence of the delta before it
+        assertEquals(1, registry.get("game.spectator.snapshots").counter().count());
+    }
+
+    @Test
+    void ignoresOtherSubscriptionsHandlersAndUnknownMatches() throws Exception {
+        gameService.createGame("m1", "alice", "bob");
+        MessageHandler controller = message -> {};
+
+        spectatorSnapshots.afterMessageHandled(subscribe("/topic/spectate/m1"), null, controller, null);
+        spectatorSnapshots.afterMessageHandled(subscribe("/topic/game/alice"), null, broker, null);
+        spectatorSnapshots.afterMessageHandled(subscribe("/topic/spectate/m2"), null, broker, null);
+        spectatorSnapshots.afterMessageHandled(subscribe("/topic/spectate/m1"), null, broker, new IllegalStateException());
+
+        assertNull(outbound.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private static Message<byte[]> subscribe(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId("s1");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
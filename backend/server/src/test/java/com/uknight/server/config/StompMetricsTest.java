@@ -0,0 +1,53 @@
+package com.uknight.server.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StompMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final StompMetrics stompMetrics = new StompMetrics(registry);
+    private final ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+    private final MessageHandler annotationHandler =
+            new SimpAnnotationMethodMessageHandler(channel, channel, new SimpMessagingTemplate(channel));
+
+    @Test
+    void timesAnnotatedHandlersByDestination() {
+        handle(message("/app/game/move"), annotationHandler);
+        handle(message("/app/game/move"), annotationHandler);
+        handle(message("/app/signal"), annotationHandler);
+
+        assertEquals(2, registry.get("stomp.handler").tag("destination", "/app/game/move").timer().count());
+        assertEquals(1, registry.get("stomp.handler").tag("destination", "/app/signal").timer().count());
+    }
+
+    @Test
+    void ignoresUnknownDestinationsAndOtherHandlers() {
+        handle(message("/app/unmapped"), annotationHandler);
+        handle(message("/topic/game/p1"), message -> {});
+
+        assertTrue(registry.get("stomp.handler").timers().stream().allMatch(timer -> timer.count() == 0));
+        assertNull(registry.find("stomp.handler").tag("destination", "/app/unmapped").timer());
+    }
+
+    private void handle(Message<?> message, MessageHandler handler) {
+        Message<?> intercepted = stompMetrics.beforeHandle(message, channel, handler);
+        stompMetrics.afterMessageHandled(intercepted, channel, handler, null);
+    }
+
+    private static Message<byte[]> message(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,388 @@
+package com.uknight.server.load;
+
+import com.uknight.server.ServerApplication;
+import com.uknight.server.load.LoadReport.Samples;
+import com.uknight.server.service.StateSyncEncoder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static com.uknight.server.load.LoadReport.round;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The whole lobby flow, end to end, for a crowd of headless clients.
+ *
+ * Starts the server in-process and connects {@code load.clients} STOMP clients
+ * (default 1000) over real WebSockets. Each one joins a campus, gets matched,
+ * trades an offer/answer and ICE candidates with its peer, and the initiator
+ * invites the peer to a game; the two then take {@code load.shots} turns
+ * (default 20) following the turn in the binary state syncs, and the host
+ * closes the game. Clients are driven by their own frames, so there is no
+ * thread per client.
+ *
+ * Reports join-to-match latency, signal relay latency, shot round trips
+ * (move sent to the shooter's state sync) and shots per second, plus the heap
+ * taken per connected session. Clients share the server's JVM, so that figure
+ * includes the client end of each socket. Results go to
+ * {@code end-to-end.json}, see {@link LoadReport}. Run with
+ * {@code ./mvnw -Pload test -Dtest=EndToEndLoadTest}.
+ */
+@Tag("load")
+class EndToEndLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 1000) & ~1;
+    private static final int SHOTS_PER_GAME = Integer.getInteger("load.shots", 20);
+
+    private static final int CAMPUSES = 16;
+    private static final int ICE_CANDIDATES = 4;
+    private static final int CONNECT_BATCH = 100;
+    private static final long PHASE_TIMEOUT_SECONDS = 120;
+
+    // Roughly the size of an SDP offer
+    private static final String SDP = "a=candidate:0 1 UDP 2122252543 192.168.1.2 54321 typ host\r\n".repeat(30);
+    private static final String ICE = "candidate:1 1 UDP 1686052607 203.0.113.7 61234 typ srflx raddr 192.168.1.2 rport 54321";
+
+    private final Samples joinToMatch = new Samples(CLIENTS);
+    private final Samples signalRelay = new Samples(CLIENTS / 2 * (ICE_CANDIDATES + 2));
+    private final Samples shotRoundTrip = new Samples(CLIENTS / 2 * SHOTS_PER_GAME);
+
+    private final CountDownLatch subscribed = new CountDownLatch(CLIENTS);
+    private final CountDownLatch matched = new CountDownLatch(CLIENTS);
+    // Only the closer's opponent is told, so this counts games
+    private final CountDownLatch closed = new CountDownLatch(CLIENTS / 2);
+
+    private final AtomicInteger shots = new AtomicInteger();
+    private final AtomicLong firstShotAt = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastSyncAt = new AtomicLong();
+
+    // Anything a client didn't expect; checked once the run is over
+    private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+
+    @Test
+    void runsTheLobbyFlow() throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ServerApplication.class)
+                .properties("server.port=0", "logging.level.com.uknight.server=WARN",
+                        // Every client plays by the rules; this measures the flow, not admission control
+                        "stomp.rate-limit.signal.per-second=0", "stomp.rate-limit.move.per-second=0")
+                .run();
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new CompositeMessageConverter(List.of(
+                new StringMessageConverter(), new ByteArrayMessageConverter(), new JacksonJsonMessageConverter())));
+        stompClient.setInboundMessageSizeLimit(256 * 1024);
+        List<Client> clients = new ArrayList<>(CLIENTS);
+
+        try {
+            String url = "ws://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/ws";
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            long heapBefore = usedHeapAfterGc(memory);
+
+            long connectStart = System.nanoTime();
+            for (int i = 0; i < CLIENTS; i += CONNECT_BATCH) {
+                List<Client> batch = new ArrayList<>();
+                List<CompletableFuture<StompSession>> sessions = new ArrayList<>();
+                for (int j = i; j < Math.min(CLIENTS, i + CONNECT_BATCH); j++) {
+                    Client client = new Client(j);
+                    StompHeaders connectHeaders = new StompHeaders();
+                    connectHeaders.add("uuid", client.uuid);
+                    batch.add(client);
+                    sessions.add(stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders,
+                            client.new SessionHandler()));
+                }
+                for (int j = 0; j < batch.size(); j++) {
+                    batch.get(j).subscribe(sessions.get(j).get(30, TimeUnit.SECONDS));
+                }
+                clients.addAll(batch);
+            }
+
+            // The simple broker has no receipts: probe until every client hears back on its game topic
+            for (int attempt = 0; attempt < 100 && subscribed.getCount() > 0; attempt++) {
+                clients.stream().filter(client -> !client.subscribed).forEach(Client::probe);
+                subscribed.await(200, TimeUnit.MILLISECONDS);
+            }
+            assertEquals(0, subscribed.getCount(), "clients never subscribed");
+            double connectSeconds = (System.nanoTime() - connectStart) / 1e9;
+            long heapPerSession = (usedHeapAfterGc(memory) - heapBefore) / CLIENTS;
+
+            long flowStart = System.nanoTime();
+            clients.forEach(Client::join);
+            assertTrue(matched.await(PHASE_TIMEOUT_SECONDS, TimeUnit.SECONDS),
+                    matched.getCount() + " clients never matched; " + errors);
+            assertTrue(closed.await(PHASE_TIMEOUT_SECONDS, TimeUnit.SECONDS),
+                    closed.getCount() + " games never closed; " + signalRelay.count() + " signals, "
+                            + shots + " shots, " + errors);
+            double flowSeconds = (System.nanoTime() - flowStart) / 1e9;
+            assertTrue(errors.isEmpty(), () -> errors.size() + " errors, e.g. " + errors.peek());
+            assertEquals(CLIENTS / 2 * SHOTS_PER_GAME, shots.get());
+
+            double shotSeconds = (lastSyncAt.get() - firstShotAt.get()) / 1e9;
+            Map<String, Object> results = new LinkedHashMap<>();
+            results.put("clients", CLIENTS);
+            results.put("games", CLIENTS / 2);
+            results.put("shotsPerGame", SHOTS_PER_GAME);
+            results.put("connectSeconds", round(connectSeconds));
+            results.put("heapPerSessionBytes", heapPerSession);
+            results.put("flowSeconds", round(flowSeconds));
+            results.put("joinToMatchMs", joinToMatch.summary());
+            results.put("signalRelayMs", signalRelay.summary());
+            results.put("shotRoundTripMs", shotRoundTrip.summary());
+            results.put("shotsPerSecond", round(shots.get() / shotSeconds));
+            LoadReport.write("end-to-end", results);
+        } finally {
+            for (Client client : clients) {
+                if (client.session != null) {
+                    client.session.disconnect();
+                }
+            }
+            stompClient.stop();
+            context.close();
+        }
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    // The TURN field of a GAME_STATE_SYNC frame, or null if it didn't change
+    static String turnOf(byte[] frame) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        buffer.position(6); // version, flags, seq
+        int fields = buffer.getShort() & 0xFFFF;
+        for (int puck = StateSyncEncoder.PUCK_0; puck <= StateSyncEncoder.PUCK_1; puck <<= 1) {
+            if ((fields & puck) != 0) {
+                buffer.position(buffer.position() + 5 * Double.BYTES);
+            }
+        }
+        if ((fields & StateSyncEncoder.TURN) == 0) {
+            return null;
+        }
+        byte[] turn = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(turn);
+        return new String(turn, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One simulated user. Frames for a session arrive on one thread at a time,
+     * and a client only sends in reaction to its own frames (after the initial
+     * join), so its fields need no locking.
+     */
+    private class Client {
+        private final String uuid = UUID.randomUUID().toString();
+        private final String campus;
+        private final SplittableRandom random;
+
+        private volatile StompSession session;
+        private volatile boolean subscribed;
+        private volatile long joinedAt;
+
+        private String peerId;
+        private boolean initiator;
+        private String matchId;
+        private String turn;
+        private int syncs;
+        private long shotAt;
+
+        Client(int index) {
+            this.campus = "campus-" + (index / 2 % CAMPUSES);
+            this.random = new SplittableRandom(index);
+        }
+
+        void subscribe(StompSession session) {
+            this.session = session;
+            session.subscribe("/topic/match/" + uuid, new Handler(this::onMatch));
+            session.subscribe("/topic/signal/" + uuid, new Handler(this::onSignal));
+            session.subscribe("/topic/game/" + uuid, new Handler(this::onGame));
+        }
+
+        void probe() {
+            send("/app/game/invite", Map.of("gameType", "probe"));
+        }
+
+        void join() {
+            joinedAt = System.nanoTime();
+            send("/app/join", campus);
+        }
+
+        private void onMatch(Object payload) {
+            joinToMatch.add(System.nanoTime() - joinedAt);
+            Map<?, ?> match = (Map<?, ?>) payload;
+            peerId = (String) match.get("peerId");
+            initiator = Boolean.TRUE.equals(match.get("initiator"));
+            matched.countDown();
+
+            if (initiator) {
+                signal("offer", SDP);
+                for (int i = 0; i < ICE_CANDIDATES; i++) {
+                    signal("ice", ICE);
+                }
+            }
+        }
+
+        private void onSignal(Object payload) {
+            Map<?, ?> signal = (Map<?, ?>) payload;
+            signalRelay.add(System.nanoTime() - ((Number) signal.get("sentAt")).longValue());
+            String type = (String) signal.get("type");
+            if ("offer".equals(type)) {
+                signal("answer", SDP);
+            } else if ("answer".equals(type)) {
+                // Once the peer connection is up the initiator challenges the peer
+                send("/app/game/invite", Map.of("targetPeerId", peerId, "gameType", "knockout"));
+            }
+            // ICE candidates are only counted
+        }
+
+        private void onGame(Object payload) {
+            if (payload instanceof byte[] frame) {
+                onSync(frame);
+                return;
+            }
+            Map<?, ?> message = (Map<?, ?>) payload;
+            String type = (String) message.get("type");
+            switch (type) {
+                case "GAME_INVITE_SENT_CONFIRM" -> {
+                    // Probes have no target; the real invite's confirmation is ignored
+                    if (message.get("targetPeerId") == null && !subscribed) {
+                        subscribed = true;
+                        EndToEndLoadTest.this.subscribed.countDown();
+                    }
+                }
+                case "GAME_INVITE" -> {
+                    matchId = (String) message.get("matchId");
+                    send("/app/game/accept", Map.of("targetPeerId", message.get("senderId"), "matchId", matchId));
+                }
+                case "GAME_START" -> {
+                    matchId = (String) message.get("matchId");
+                    // The inviter is player 1 and has the first shot
+                    turn = initiator ? uuid : peerId;
+                    shootIfMyTurn();
+                }
+                case "GAME_CLOSED" -> closed.countDown();
+                case "GAME_MOVE_ANNOUNCE" -> {
+                    // Only the sync is followed
+                }
+                default -> errors.add(uuid + " got " + message);
+            }
+        }
+
+        private void onSync(byte[] frame) {
+            long now = System.nanoTime();
+            String nextTurn = turnOf(frame);
+            if (nextTurn != null) {
+                turn = nextTurn;
+            }
+            if (shotAt != 0) {
+                shotRoundTrip.add(now - shotAt);
+                shotAt = 0;
+                shots.incrementAndGet();
+                lastSyncAt.accumulateAndGet(now, Math::max);
+            }
+
+            if (++syncs < SHOTS_PER_GAME) {
+                shootIfMyTurn();
+            } else if (initiator) {
+                send("/app/game/close", Map.of("matchId", matchId));
+            }
+        }
+
+        private void shootIfMyTurn() {
+            if (!uuid.equals(turn)) return;
+            shotAt = System.nanoTime();
+            firstShotAt.accumulateAndGet(shotAt, Math::min);
+            send("/app/game/move", Map.of("matchId", matchId,
+                    "dx", random.nextDouble(-0.02, 0.02), "dy", random.nextDouble(-0.02, 0.02)));
+        }
+
+        private void signal(String type, String data) {
+            Map<String, Object> signal = new LinkedHashMap<>();
+            signal.put("type", type);
+            signal.put("sentAt", System.nanoTime());
+            signal.put("data", data);
+            signal.put("targetPeerId", peerId);
+            send("/app/signal", signal);
+        }
+
+        private void send(String destination, Object payload) {
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination(destination);
+            headers.add("uuid", uuid);
+            try {
+                session.send(headers, payload);
+            } catch (RuntimeException e) {
+                errors.add(uuid + " failed to send to " + destination + ": " + e);
+            }
+        }
+
+        private class SessionHandler extends StompSessionHandlerAdapter {
+            @Override
+            public void handleException(StompSession session, StompCommand command, StompHeaders headers,
+                                        byte[] payload, Throwable exception) {
+                errors.add(uuid + " failed on " + headers.getDestination() + ": " + exception);
+            }
+
+            @Override
+            public void handleTransportError(StompSession session, Throwable exception) {
+                errors.add(uuid + " lost its connection: " + exception);
+            }
+        }
+
+        private class Handler implements StompFrameHandler {
+            private final Consumer<Object> onFrame;
+
+            Handler(Consumer<Object> onFrame) {
+                this.onFrame = onFrame;
+            }
+
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return MimeTypeUtils.APPLICATION_OCTET_STREAM.equals(headers.getContentType()) ? byte[].class : Map.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                try {
+                    onFrame.accept(payload);
+                } catch (RuntimeException e) {
+                    errors.add(uuid + " failed on " + headers.getDestination() + ": " + e);
+                }
+            }
+        }
+    }
+}
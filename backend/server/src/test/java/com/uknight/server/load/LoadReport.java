@@ -0,0 +1,81 @@
+package com.uknight.server.load;
+
+import tools.jackson.databind.SerializationFeature;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Results of a load test as a JSON file in {@code target/load-results} (or
+ * {@code load.results.dir}), one per test. Keys keep their insertion order and
+ * numbers are rounded to two places, so the files of two builds diff cleanly.
+ */
+final class LoadReport {
+
+    private static final String DIRECTORY = System.getProperty("load.results.dir", "target/load-results");
+
+    private LoadReport() {}
+
+    static void write(String name, Map<String, Object> results) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("cpus", Runtime.getRuntime().availableProcessors());
+        report.put("java", Runtime.version().toString());
+        report.putAll(results);
+
+        JsonMapper mapper = JsonMapper.builder().enable(SerializationFeature.INDENT_OUTPUT).build();
+        Path path = Path.of(DIRECTORY, name + ".json");
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        mapper.writeValue(path.toFile(), report);
+
+        System.out.println();
+        System.out.println(mapper.writeValueAsString(report));
+        System.out.println("Written to " + path.toAbsolutePath());
+    }
+
+    static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    // Latencies in nanos, summarised in milliseconds
+    static class Samples {
+        private final long[] values;
+        private final AtomicInteger count = new AtomicInteger();
+
+        Samples(int capacity) {
+            this.values = new long[capacity];
+        }
+
+        void add(long nanos) {
+            int index = count.getAndIncrement();
+            if (index < values.length) {
+                values[index] = nanos;
+            }
+        }
+
+        int count() {
+            return Math.min(count.get(), values.length);
+        }
+
+        Map<String, Object> summary() {
+            long[] sorted = Arrays.copyOf(values, count());
+            Arrays.sort(sorted);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", sorted.length);
+            summary.put("p50", percentile(sorted, 0.50));
+            summary.put("p99", percentile(sorted, 0.99));
+            summary.put("max", sorted.length == 0 ? 0 : round(sorted[sorted.length - 1] / 1e6));
+            return summary;
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            return round(sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.uknight.server.load;
+
+import com.uknight.server.service.MatchQueue;
+import com.uknight.server.service.PlayerHandle;
+import com.uknight.server.service.RatingService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.uknight.server.load.LoadReport.round;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Match quality against time-to-match for the rating index.
+ *
+ * Simulates {@code load.players} joins (default 50000) arriving at random at
+ * {@code load.arrivals-per-second} (default 20) into one shard, with ratings
+ * spread like a real ladder (normal around 1500, deviation 300). Time is
+ * virtual: joins search at their arrival time and the sweeper runs every 500 ms
+ * as it does in {@code MatchmakingService}, so a run takes seconds however long
+ * the simulated queue is. Each widening rate is played on the same arrivals and
+ * reported with the rating gap of the pairs it made and how long players waited
+ * for them; {@code any} takes whoever is waiting, like the old single slot.
+ *
+ * A second phase has {@code load.threads} threads (default 8) join with random
+ * ratings as fast as they can, for the index's peak join rate. Results go to
+ * {@code matchmaking.json}, see {@link LoadReport}. Run with
+ * {@code ./mvnw -Pload test -Dtest=MatchmakingSimulationTest}.
+ */
+@Tag("load")
+class MatchmakingSimulationTest {
+
+    private static final int PLAYERS = Integer.getInteger("load.players", 50_000);
+    private static final int ARRIVALS_PER_SECOND = Integer.getInteger("load.arrivals-per-second", 20);
+    private static final int THREADS = Integer.getInteger("load.threads", 8);
+    private static final int CONCURRENT_JOINS = 1_000_000;
+
+    private static final long SWEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int[] WIDEN_PER_SECOND = {0, 25, 50, 100, 200};
+
+    @Test
+    void reportsMatchQualityAgainstWaitTime() throws Exception {
+        Random random = new Random(42);
+        long[] arrivals = new long[PLAYERS];
+        int[] ratings = new int[PLAYERS];
+        long now = 0;
+        for (int i = 0; i < PLAYERS; i++) {
+            now += (long) (-Math.log(1 - random.nextDouble()) * TimeUnit.SECONDS.toNanos(1) / ARRIVALS_PER_SECOND);
+            arrivals[i] = now;
+            ratings[i] = (int) Math.round(RatingService.INITIAL_RATING + random.nextGaussian() * 300);
+        }
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("players", PLAYERS);
+        results.put("arrivalsPerSecond", ARRIVALS_PER_SECOND);
+        Map<String, Object> policies = new LinkedHashMap<>();
+        for (int widen : WIDEN_PER_SECOND) {
+            policies.put("widen" + widen, simulate(new MatchQueue(MatchQueue.DEFAULT_INITIAL_GAP, widen), arrivals, ratings));
+        }
+        Map<String, Object> any = simulate(new MatchQueue(100_000, 0), arrivals, ratings);
+        policies.put("any", any);
+        results.put("policies", policies);
+        results.put("concurrentJoins", concurrentJoins());
+        LoadReport.write("matchmaking", results);
+
+        // The default policy must beat taking whoever is there on quality and still pair nearly everyone
+        @SuppressWarnings("unchecked")
+        Map<String, Object> standard = (Map<String, Object>) policies.get("widen" + MatchQueue.DEFAULT_WIDEN_PER_SECOND);
+        assertTrue((double) standard.get("meanRatingGap") < (double) any.get("meanRatingGap"));
+        assertTrue((int) standard.get("unmatched") < PLAYERS / 100);
+    }
+
+    private static Map<String, Object> simulate(MatchQueue queue, long[] arrivals, int[] ratings) {
+        Gaps gaps = new Gaps();
+        LoadReport.Samples waits = new LoadReport.Samples(PLAYERS);
+        long nextSweep = SWEEP_NANOS;
+
+        for (int i = 0; i < PLAYERS; i++) {
+            for (; nextSweep <= arrivals[i]; nextSweep += SWEEP_NANOS) {
+                sweep(queue, nextSweep, gaps, waits);
+            }
+            MatchQueue.Ticket ticket = new MatchQueue.Ticket(PlayerHandle.of("p" + i), null, ratings[i], arrivals[i]);
+            record(ticket, queue.exchange(ticket, arrivals[i]), arrivals[i], gaps, waits);
+        }
+        // Let whoever is left widen for another minute
+        long end = arrivals[PLAYERS - 1] + TimeUnit.MINUTES.toNanos(1);
+        for (; nextSweep <= end; nextSweep += SWEEP_NANOS) {
+            sweep(queue, nextSweep, gaps, waits);
+        }
+
+        Map<String, Object> policy = new LinkedHashMap<>();
+        policy.put("pairs", gaps.count);
+        policy.put("unmatched", queue.size());
+        policy.put("meanRatingGap", round(gaps.mean()));
+        policy.put("ratingGap", gaps.summary());
+        policy.put("waitMs", waits.summary());
+        return policy;
+    }
+
+    // What MatchmakingService.spillOverExpiredWaiters does within a shard
+    private static void sweep(MatchQueue queue, long now, Gaps gaps, LoadReport.Samples waits) {
+        for (MatchQueue.Ticket waiting : queue.waiting()) {
+            if (queue.peekCandidate(waiting, now) != null && queue.withdraw(waiting)) {
+                record(waiting, queue.exchange(waiting, now), now, gaps, waits);
+            }
+        }
+    }
+
+    private static void record(MatchQueue.Ticket ticket, MatchQueue.Ticket partner, long now,
+                               Gaps gaps, LoadReport.Samples waits) {
+        if (partner != null) {
+            gaps.add(Math.abs(ticket.getRating() - partner.getRating()));
+            // Both players waited; the earlier joiner's wait is the one felt
+            waits.add(now - Math.min(ticket.getJoinedAt(), partner.getJoinedAt()));
+        }
+    }
+
+    // Real threads on one shard's index, ratings spread as above
+    private static Map<String, Object> concurrentJoins() throws InterruptedException {
+        MatchQueue queue = new MatchQueue();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger pairs = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int i;
+                    while ((i = next.getAndIncrement()) < CONCURRENT_JOINS) {
+                        int rating = (int) Math.round(RatingService.INITIAL_RATING + random.nextGaussian() * 300);
+                        if (queue.exchange(MatchQueue.Ticket.of("p" + i, rating)) != null) {
+                            pairs.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        assertEquals(CONCURRENT_JOINS, 2 * pairs.get() + queue.size());
+
+        Map<String, Object> concurrent = new LinkedHashMap<>();
+        concurrent.put("threads", THREADS);
+        concurrent.put("joins", CONCURRENT_JOINS);
+        concurrent.put("joinsPerSecond", Math.round(CONCURRENT_JOINS / seconds));
+        concurrent.put("leftWaiting", queue.size());
+        return concurrent;
+    }
+
+    // Rating gaps of the pairs made, in points
+    private static class Gaps {
+        private final List<Integer> values = new ArrayList<>();
+        private int count;
+        private long sum;
+
+        void add(int gap) {
+            values.add(gap);
+            count++;
+            sum += gap;
+        }
+
+        double mean() {
+            return count == 0 ? 0 : sum / (double) count;
+        }
+
+        Map<String, Object> summary() {
+            int[] sorted = values.stream().mapToInt(Integer::intValue).toArray();
+            Arrays.sort(sorted);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("p50", percentile(sorted, 0.50));
+            summary.put("p90", percentile(sorted, 0.90));
+            summary.put("max", sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+            return summary;
+        }
+
+        private static int percentile(int[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+        }
+    }
+}
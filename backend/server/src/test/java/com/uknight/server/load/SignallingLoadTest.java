@@ -0,0 +1,196 @@
+package com.uknight.server.load;
+
+import com.uknight.server.ServerApplication;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WebRTC signalling throughput and latency through the STOMP channels, once
+ * per channel executor mode ({@code websocket.executor}).
+ *
+ * Pairs of clients relay SDP-sized signals over /app/signal. A few receivers
+ * are slow (they sleep on every frame, so their sockets back up), which is
+ * what used to stall everyone else's delivery; throughput and latency are
+ * reported for the normal receivers only. Run with {@code ./mvnw -Pload test}.
+ */
+@Tag("load")
+class SignallingLoadTest {
+
+    private static final int PAIRS = 50;
+    private static final int SLOW_RECEIVERS = 5;
+    private static final int SIGNALS_PER_SENDER = 200;
+    private static final long SLOW_RECEIVER_DELAY_MS = 5;
+
+    // Roughly the size of an SDP offer
+    private static final String SDP_PADDING = "a=candidate:0 1 UDP 2122252543 192.168.1.2 54321 typ host\r\n".repeat(30);
+
+    @Test
+    void comparesExecutorModes() throws Exception {
+        List<String> report = new ArrayList<>();
+        for (String mode : List.of("pool", "virtual")) {
+            report.add(run(mode));
+        }
+        System.out.println();
+        report.forEach(System.out::println);
+    }
+
+    private String run(String mode) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ServerApplication.class)
+                .properties("server.port=0", "websocket.executor=" + mode, "logging.level.com.uknight.server=WARN",
+                        // Senders flood on purpose; this measures the channels, not admission control
+                        "stomp.rate-limit.signal.per-second=0")
+                .run();
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new JacksonJsonMessageConverter());
+        ExecutorService senders = Executors.newFixedThreadPool(PAIRS);
+        List<StompSession> sessions = new ArrayList<>();
+
+        try {
+            String url = "ws://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/ws";
+
+            int fastReceivers = PAIRS - SLOW_RECEIVERS;
+            long[] latencies = new long[fastReceivers * SIGNALS_PER_SENDER];
+            AtomicInteger recorded = new AtomicInteger();
+            CountDownLatch delivered = new CountDownLatch(fastReceivers * SIGNALS_PER_SENDER);
+            CountDownLatch warmedUp = new CountDownLatch(PAIRS);
+
+            List<StompSession> senderSessions = new ArrayList<>();
+            List<String> receiverIds = new ArrayList<>();
+            for (int i = 0; i < PAIRS; i++) {
+                boolean slow = i < SLOW_RECEIVERS;
+                String receiverId = UUID.randomUUID().toString();
+                StompSession receiver = stompClient.connectAsync(url, new StompSessionHandlerAdapter() {}).get(10, TimeUnit.SECONDS);
+                receiver.subscribe("/topic/signal/" + receiverId,
+                        new SignalHandler(slow, latencies, recorded, delivered, warmedUp));
+                sessions.add(receiver);
+                receiverIds.add(receiverId);
+
+                StompSession sender = stompClient.connectAsync(url, new StompSessionHandlerAdapter() {}).get(10, TimeUnit.SECONDS);
+                sessions.add(sender);
+                senderSessions.add(sender);
+            }
+
+            // Subscriptions have no receipts on the simple broker: ping until every receiver hears one
+            for (int attempt = 0; attempt < 100 && warmedUp.getCount() > 0; attempt++) {
+                for (int i = 0; i < PAIRS; i++) {
+                    senderSessions.get(i).send(signalHeaders(), signal("warmup", receiverIds.get(i)));
+                }
+                warmedUp.await(100, TimeUnit.MILLISECONDS);
+            }
+            assertEquals(0, warmedUp.getCount(), "receivers never subscribed");
+
+            long start = System.nanoTime();
+            for (int i = 0; i < PAIRS; i++) {
+                StompSession sender = senderSessions.get(i);
+                String receiverId = receiverIds.get(i);
+                senders.execute(() -> {
+                    for (int n = 0; n < SIGNALS_PER_SENDER; n++) {
+                        sender.send(signalHeaders(), signal(Long.toString(System.nanoTime()), receiverId));
+                    }
+                });
+            }
+
+            assertTrue(delivered.await(120, TimeUnit.SECONDS), mode + ": signals lost, " + delivered.getCount() + " missing");
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            return String.format("%-8s %8.0f signals/s  p50 %7.2f ms  p99 %7.2f ms  max %7.2f ms",
+                    mode, latencies.length / seconds,
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        } finally {
+            senders.shutdownNow();
+            sessions.forEach(StompSession::disconnect);
+            stompClient.stop();
+            context.close();
+        }
+    }
+
+    private static StompHeaders signalHeaders() {
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination("/app/signal");
+        return headers;
+    }
+
+    private static Map<String, Object> signal(String sentAt, String targetPeerId) {
+        Map<String, Object> signal = new LinkedHashMap<>();
+        signal.put("type", "offer");
+        signal.put("sentAt", sentAt);
+        signal.put("data", SDP_PADDING);
+        signal.put("targetPeerId", targetPeerId);
+        return signal;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+
+    private static class SignalHandler implements StompFrameHandler {
+        private final boolean slow;
+        private final long[] latencies;
+        private final AtomicInteger recorded;
+        private final CountDownLatch delivered;
+        private final CountDownLatch warmedUp;
+        private boolean warm;
+
+        SignalHandler(boolean slow, long[] latencies, AtomicInteger recorded,
+                      CountDownLatch delivered, CountDownLatch warmedUp) {
+            this.slow = slow;
+            this.latencies = latencies;
+            this.recorded = recorded;
+            this.delivered = delivered;
+            this.warmedUp = warmedUp;
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return Map.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            String sentAt = (String) ((Map<?, ?>) payload).get("sentAt");
+            if ("warmup".equals(sentAt)) {
+                if (!warm) {
+                    warm = true;
+                    warmedUp.countDown();
+                }
+                return;
+            }
+
+            if (slow) {
+                try {
+                    Thread.sleep(SLOW_RECEIVER_DELAY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            latencies[recorded.getAndIncrement()] = System.nanoTime() - Long.parseLong(sentAt);
+            delivered.countDown();
+        }
+    }
+}
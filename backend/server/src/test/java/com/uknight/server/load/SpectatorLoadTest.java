@@ -0,0 +1,278 @@
+package com.uknight.server.load;
+
+import com.uknight.server.ServerApplication;
+import com.uknight.server.config.SpectatorSnapshots;
+import com.uknight.server.load.LoadReport.Samples;
+import com.uknight.server.service.StateSyncEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.uknight.server.load.LoadReport.round;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * One match with a crowd watching on its spectator topic.
+ *
+ * Two players start a game and play a few shots, then {@code load.spectators}
+ * clients (default 1000) subscribe to {@code /topic/spectate/{matchId}}; each
+ * must get a full snapshot first. The players then take {@code load.shots}
+ * more shots (default 20), one at a time, and every spectator must see every
+ * delta in sequence. Reports the snapshot latency (subscribe to snapshot), the
+ * delta latency (move sent to a spectator's sync) and the server's broadcast
+ * time per shot (encode and fan-out, from {@code game.shot.stage}) with and
+ * without the audience. Results go to {@code spectators.json}, see
+ * {@link LoadReport}. Run with {@code ./mvnw -Pload test -Dtest=SpectatorLoadTest}.
+ */
+@Tag("load")
+class SpectatorLoadTest {
+
+    private static final int SPECTATORS = Integer.getInteger("load.spectators", 1000);
+    private static final int SHOTS = Integer.getInteger("load.shots", 20);
+    private static final int WARMUP_SHOTS = 6;
+    private static final int CONNECT_BATCH = 100;
+
+    private final Samples snapshotLatency = new Samples(SPECTATORS);
+    private final Samples deltaLatency = new Samples(SPECTATORS * SHOTS);
+
+    private final CountDownLatch snapshots = new CountDownLatch(SPECTATORS);
+    private final CountDownLatch closed = new CountDownLatch(SPECTATORS);
+    private volatile CountDownLatch delivered;
+    private volatile long shotSentAt;
+
+    // Anything a spectator didn't expect; checked once the run is over
+    private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+
+    private WebSocketStompClient stompClient;
+    private String url;
+
+    @Test
+    void fansOutToSpectators() throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ServerApplication.class)
+                .properties("server.port=0", "logging.level.com.uknight.server=WARN",
+                        "stomp.rate-limit.move.per-second=0")
+                .run();
+        stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new CompositeMessageConverter(List.of(
+                new StringMessageConverter(), new ByteArrayMessageConverter(), new JacksonJsonMessageConverter())));
+        List<StompSession> sessions = new ArrayList<>();
+
+        try {
+            url = "ws://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/ws";
+            Timer broadcast = context.getBean(MeterRegistry.class)
+                    .get("game.shot.stage").tag("stage", "broadcast").timer();
+
+            Player alice = new Player();
+            Player bob = new Player();
+            sessions.add(alice.session);
+            sessions.add(bob.session);
+
+            alice.send("/app/game/invite", Map.of("targetPeerId", bob.uuid, "gameType", "knockout"));
+            String matchId = (String) bob.next("GAME_INVITE").get("matchId");
+            bob.send("/app/game/accept", Map.of("targetPeerId", alice.uuid, "matchId", matchId));
+            alice.next("GAME_START");
+            bob.next("GAME_START");
+
+            // Mid-game, so the snapshot has something to catch up on
+            String turn = alice.uuid;
+            for (int i = 0; i < WARMUP_SHOTS; i++) {
+                turn = shoot(alice, bob, turn, matchId);
+            }
+            double broadcastAlone = broadcast.totalTime(TimeUnit.MILLISECONDS) / broadcast.count();
+
+            long connectStart = System.nanoTime();
+            for (int i = 0; i < SPECTATORS; i += CONNECT_BATCH) {
+                List<CompletableFuture<StompSession>> batch = new ArrayList<>();
+                for (int j = i; j < Math.min(SPECTATORS, i + CONNECT_BATCH); j++) {
+                    batch.add(stompClient.connectAsync(url, new StompSessionHandlerAdapter() {}));
+                }
+                for (CompletableFuture<StompSession> future : batch) {
+                    StompSession session = future.get(30, TimeUnit.SECONDS);
+                    sessions.add(session);
+                    session.subscribe(SpectatorSnapshots.topic(matchId), new Spectator(System.nanoTime()));
+                }
+            }
+            assertTrue(snapshots.await(60, TimeUnit.SECONDS), snapshots.getCount() + " spectators got no snapshot");
+            double connectSeconds = (System.nanoTime() - connectStart) / 1e9;
+
+            long broadcastsBefore = broadcast.count();
+            double broadcastTimeBefore = broadcast.totalTime(TimeUnit.MILLISECONDS);
+            long playStart = System.nanoTime();
+            for (int i = 0; i < SHOTS; i++) {
+                delivered = new CountDownLatch(SPECTATORS);
+                shotSentAt = System.nanoTime();
+                turn = shoot(alice, bob, turn, matchId);
+                assertTrue(delivered.await(30, TimeUnit.SECONDS),
+                        "shot " + i + ": " + delivered.getCount() + " spectators missed it; " + errors);
+            }
+            double playSeconds = (System.nanoTime() - playStart) / 1e9;
+            double broadcastWatched = (broadcast.totalTime(TimeUnit.MILLISECONDS) - broadcastTimeBefore)
+                    / (broadcast.count() - broadcastsBefore);
+
+            alice.send("/app/game/close", Map.of("matchId", matchId));
+            assertTrue(closed.await(30, TimeUnit.SECONDS), closed.getCount() + " spectators never saw the close");
+            assertTrue(errors.isEmpty(), () -> errors.size() + " errors, e.g. " + errors.peek());
+
+            Map<String, Object> results = new LinkedHashMap<>();
+            results.put("spectators", SPECTATORS);
+            results.put("shots", SHOTS);
+            results.put("connectSeconds", round(connectSeconds));
+            results.put("snapshotMs", snapshotLatency.summary());
+            results.put("deltaMs", deltaLatency.summary());
+            results.put("deliveriesPerSecond", round(deltaLatency.count() / playSeconds));
+            results.put("broadcastMsPerShotWithoutSpectators", round(broadcastAlone));
+            results.put("broadcastMsPerShot", round(broadcastWatched));
+            LoadReport.write("spectators", results);
+        } finally {
+            sessions.forEach(StompSession::disconnect);
+            stompClient.stop();
+            context.close();
+        }
+    }
+
+    // Plays one shot for whoever's turn it is; returns whose turn it is next
+    private String shoot(Player alice, Player bob, String turn, String matchId) throws InterruptedException {
+        Player shooter = turn.equals(alice.uuid) ? alice : bob;
+        shooter.send("/app/game/move", Map.of("matchId", matchId, "dx", 0.4, "dy", 0.1));
+        String next = EndToEndLoadTest.turnOf(alice.nextSync());
+        bob.nextSync();
+        return next != null ? next : turn;
+    }
+
+    private class Player {
+        private final String uuid = UUID.randomUUID().toString();
+        private final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        private final StompSession session;
+
+        Player() throws Exception {
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("uuid", uuid);
+            session = stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders,
+                    new StompSessionHandlerAdapter() {}).get(10, TimeUnit.SECONDS);
+            session.subscribe("/topic/game/" + uuid, new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) {
+                    return MimeTypeUtils.APPLICATION_OCTET_STREAM.equals(headers.getContentType()) ? byte[].class : Map.class;
+                }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) {
+                    received.add(payload);
+                }
+            });
+
+            // The simple broker has no receipts: an invite to nobody is confirmed on our game topic
+            for (int attempt = 0; attempt < 50; attempt++) {
+                send("/app/game/invite", Map.of("gameType", "probe"));
+                if (received.poll(100, TimeUnit.MILLISECONDS) != null) {
+                    received.clear();
+                    return;
+                }
+            }
+            fail("never subscribed");
+        }
+
+        void send(String destination, Object payload) {
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination(destination);
+            headers.add("uuid", uuid);
+            session.send(headers, payload);
+        }
+
+        // Skips frames of other types, e.g. move announcements and late probe confirmations
+        Map<?, ?> next(String type) throws InterruptedException {
+            while (true) {
+                Object payload = received.poll(10, TimeUnit.SECONDS);
+                assertNotNull(payload, uuid + " never got " + type);
+                if (payload instanceof Map<?, ?> map && type.equals(map.get("type"))) {
+                    return map;
+                }
+            }
+        }
+
+        byte[] nextSync() throws InterruptedException {
+            while (true) {
+                Object payload = received.poll(10, TimeUnit.SECONDS);
+                assertNotNull(payload, uuid + " got no state sync");
+                if (payload instanceof byte[] frame) {
+                    return frame;
+                }
+            }
+        }
+    }
+
+    // Frames for one subscription arrive on one thread at a time
+    private class Spectator implements StompFrameHandler {
+        private final long subscribedAt;
+        private long sequence = -1;
+
+        Spectator(long subscribedAt) {
+            this.subscribedAt = subscribedAt;
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return MimeTypeUtils.APPLICATION_OCTET_STREAM.equals(headers.getContentType()) ? byte[].class : Map.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            if (payload instanceof Map<?, ?> message) {
+                if ("GAME_CLOSED".equals(message.get("type"))) {
+                    closed.countDown();
+                }
+                return; // Move announcements
+            }
+
+            ByteBuffer frame = ByteBuffer.wrap((byte[]) payload);
+            boolean full = (frame.get(1) & StateSyncEncoder.FLAG_FULL) != 0;
+            long seq = frame.getInt(2) & 0xFFFFFFFFL;
+            if (sequence < 0) {
+                if (!full) {
+                    errors.add("a delta arrived before the snapshot");
+                    return;
+                }
+                sequence = seq;
+                snapshotLatency.add(System.nanoTime() - subscribedAt);
+                snapshots.countDown();
+                return;
+            }
+            if (seq != sequence + 1) {
+                errors.add("expected sync " + (sequence + 1) + ", got " + seq);
+            }
+            sequence = seq;
+            deltaLatency.add(System.nanoTime() - shotSentAt);
+            delivered.countDown();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.uknight.server.load;
+
+import com.uknight.server.load.LoadReport.Samples;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * How soon a new node is useful: time from launching its JVM to the first STOMP
+ * CONNECT that succeeds on {@code /ws}, and to the first pair it matches.
+ *
+ * Starts the server built by {@code ./mvnw -Pfaststart package} (in
+ * {@code target/faststart}) as a child process, {@code load.startup.runs} times
+ * (default 3) for each mode: {@code jit} is a plain {@code java -jar}, and
+ * {@code aot-cds} adds the AOT-processed context and the CDS archive from the
+ * training run. A client retries CONNECT every 10 ms until the node accepts it;
+ * a second client then connects, both join the same campus and the clock stops
+ * when both have their match. Each node's output goes to
+ * {@code target/faststart/startup-{mode}.log}, the results to
+ * {@code startup.json}, see {@link LoadReport}. Run with
+ * {@code ./mvnw -Pload test -Dtest=StartupLoadTest} after building the profile.
+ */
+@Tag("load")
+class StartupLoadTest {
+
+    private static final int RUNS = Integer.getInteger("load.startup.runs", 3);
+    private static final Path DIRECTORY = Path.of("target", "faststart");
+    private static final Path JAR = DIRECTORY.resolve("server-0.0.1-SNAPSHOT.jar");
+    private static final Path ARCHIVE = DIRECTORY.resolve("application.jsa");
+
+    private static final long START_TIMEOUT_SECONDS = 60;
+    private static final long RETRY_MILLIS = 10;
+
+    @Test
+    void measuresTimeToConnectAndToFirstMatch() throws Exception {
+        assumeTrue(Files.exists(JAR) && Files.exists(ARCHIVE), "build target/faststart with ./mvnw -Pfaststart package");
+
+        Map<String, List<String>> modes = new LinkedHashMap<>();
+        modes.put("jit", List.of());
+        modes.put("aot-cds", List.of("-XX:SharedArchiveFile=" + ARCHIVE, "-Dspring.aot.enabled=true"));
+
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new CompositeMessageConverter(List.of(
+                new StringMessageConverter(), new JacksonJsonMessageConverter())));
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("runs", RUNS);
+        try {
+            for (Map.Entry<String, List<String>> mode : modes.entrySet()) {
+                Samples connect = new Samples(RUNS);
+                Samples match = new Samples(RUNS);
+                for (int run = 0; run < RUNS; run++) {
+                    start(stompClient, mode.getKey(), mode.getValue(), connect, match);
+                }
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("firstConnectMs", connect.summary());
+                result.put("firstMatchMs", match.summary());
+                results.put(mode.getKey(), result);
+            }
+        } finally {
+            stompClient.stop();
+        }
+        LoadReport.write("startup", results);
+    }
+
+    private static void start(WebSocketStompClient stompClient, String mode, List<String> jvmArgs,
+                              Samples connect, Samples match) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.addAll(List.of("-jar", JAR.toString(), "--server.port=" + port));
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(DIRECTORY.resolve("startup-" + mode + ".log").toFile());
+
+        String url = "ws://localhost:" + port + "/ws";
+        List<StompSession> sessions = new ArrayList<>();
+        long launchedAt = System.nanoTime();
+        Process server = builder.start();
+        try {
+            Player first = new Player();
+            sessions.add(first.connectWhenUp(stompClient, url, server, launchedAt));
+            connect.add(System.nanoTime() - launchedAt);
+
+            Player second = new Player();
+            sessions.add(second.connect(stompClient, url));
+            first.join();
+            second.join();
+            assertTrue(first.matched.await(START_TIMEOUT_SECONDS, TimeUnit.SECONDS), mode + ": no match");
+            assertTrue(second.matched.await(START_TIMEOUT_SECONDS, TimeUnit.SECONDS), mode + ": no match");
+            match.add(System.nanoTime() - launchedAt);
+        } finally {
+            sessions.forEach(StompSession::disconnect);
+            server.destroy();
+            if (!server.waitFor(30, TimeUnit.SECONDS)) {
+                server.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // One user of the new node, matched with the other one
+    private static class Player {
+        private final String uuid = UUID.randomUUID().toString();
+        private final CountDownLatch subscribed = new CountDownLatch(1);
+        private final CountDownLatch matched = new CountDownLatch(1);
+        private StompSession session;
+
+        // CONNECTs until the node accepts one; refused and failed handshakes mean it isn't up yet
+        StompSession connectWhenUp(WebSocketStompClient stompClient, String url, Process server, long launchedAt)
+                throws Exception {
+            long deadline = launchedAt + TimeUnit.SECONDS.toNanos(START_TIMEOUT_SECONDS);
+            while (true) {
+                if (!server.isAlive()) {
+                    fail("the server exited with " + server.exitValue());
+                }
+                try {
+                    return connect(stompClient, url);
+                } catch (ExecutionException | TimeoutException e) {
+                    assertTrue(System.nanoTime() < deadline, "the server didn't accept a CONNECT: " + e);
+                    Thread.sleep(RETRY_MILLIS);
+                }
+            }
+        }
+
+        StompSession connect(WebSocketStompClient stompClient, String url) throws Exception {
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("uuid", uuid);
+            session = stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders,
+                    new StompSessionHandlerAdapter() {}).get(5, TimeUnit.SECONDS);
+            session.subscribe("/topic/match/" + uuid, new Handler(matched));
+            session.subscribe("/topic/game/" + uuid, new Handler(subscribed));
+
+            // The simple broker has no receipts: probe until the game topic hears back, so the match topic is live too
+            for (int attempt = 0; attempt < 100 && subscribed.getCount() > 0; attempt++) {
+                send("/app/game/invite", Map.of("gameType", "probe"));
+                subscribed.await(50, TimeUnit.MILLISECONDS);
+            }
+            assertEquals(0, subscribed.getCount(), uuid + " never subscribed");
+            return session;
+        }
+
+        void join() {
+            send("/app/join", "startup");
+        }
+
+        private void send(String destination, Object payload) {
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination(destination);
+            headers.add("uuid", uuid);
+            session.send(headers, payload);
+        }
+    }
+
+    private record Handler(CountDownLatch latch) implements StompFrameHandler {
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return Map.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            latch.countDown();
+        }
+    }
+}
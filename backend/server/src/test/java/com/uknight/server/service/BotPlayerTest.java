@@ -0,0 +1,76 @@
+package com.uknight.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BotPlayerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private BotPlayer bot;
+
+    @AfterEach
+    void stop() {
+        bot.shutdown();
+    }
+
+    @Test
+    void knocksAnOpponentOffTheEdgeWhenItCan() throws Exception {
+        bot = new BotPlayer(registry, 2, 4096, 5_000);
+        for (PhysicsEngine.Solver solver : PhysicsEngine.Solver.values()) {
+            GameService.GameState game = new GameService.GameState("m1", "alice", BotPlayer.ID, solver);
+            // The bot is player 2: centred, with the opponent close to the edge above it
+            game.getPhysics().place(1, 0.0, 0.0, PhysicsEngine.PUCK_RADIUS);
+            game.getPhysics().place(0, 0.05, 0.32, PhysicsEngine.PUCK_RADIUS);
+
+            GameService.Shot shot = bot.chooseShot(game).get(10, TimeUnit.SECONDS);
+
+            game.applyShot(BotPlayer.ID, shot);
+            game.runPhysicsSimulation();
+            assertTrue(game.getPhysics().isOutOfBounds(0), solver + ": opponent still on");
+            assertFalse(game.getPhysics().isOutOfBounds(1), solver + ": bot fell off");
+        }
+        assertEquals(2 * 4096, registry.get("game.bot.candidates").counter().count());
+        assertEquals(0, registry.get("game.bot.truncated").counter().count());
+    }
+
+    @Test
+    void everyMoveKeepsToItsDeadlineHoweverManyBotsAreThinking() throws Exception {
+        // One thread and far more candidates than fit in the budget
+        bot = new BotPlayer(registry, 1, 50_000_000, 20);
+        List<CompletableFuture<GameService.Shot>> moves = new ArrayList<>();
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            moves.add(bot.chooseShot(new GameService.GameState("m" + i, "alice", BotPlayer.ID)));
+        }
+
+        for (CompletableFuture<GameService.Shot> move : moves) {
+            GameService.Shot shot = move.get(10, TimeUnit.SECONDS);
+            assertTrue(Double.isFinite(shot.dx) && Double.isFinite(shot.dy));
+        }
+        // Moves queued behind the first one find their deadline passed and play the fallback
+        assertTrue(System.nanoTime() - startedAt < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(50, registry.get("game.bot.truncated").counter().count());
+        assertEquals(1, bot.getParallelism());
+    }
+
+    @Test
+    void fallbackShotAimsAtTheOpponent() throws Exception {
+        bot = new BotPlayer(registry, 1, 1024, 0);
+        GameService.GameState game = new GameService.GameState("m1", "alice", BotPlayer.ID);
+
+        GameService.Shot shot = bot.chooseShot(game).get(10, TimeUnit.SECONDS);
+
+        // Player 2 starts on the right, so straight at player 1 is straight left
+        assertTrue(shot.dx < 0);
+        assertEquals(0, shot.dy, 1e-12);
+        assertEquals(0, registry.get("game.bot.candidates").counter().count());
+    }
+}
@@ -0,0 +1,182 @@
+package com.uknight.server.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameLoopTest {
+
+    private final GameService gameService = new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0);
+    private final GameLoop gameLoop = new GameLoop(gameService, 4, 1);
+
+    @BeforeAll
+    static void quietLogs() {
+        ((Logger) LoggerFactory.getLogger(GameService.class)).setLevel(Level.WARN);
+    }
+
+    @AfterEach
+    void tearDown() {
+        gameLoop.shutdown();
+    }
+
+    @Test
+    void stepsShotsOffTheCallingThread() throws Exception {
+        gameService.createGame("m1", "p1", "p2");
+        // Long tick so the callback is attached before the shot is stepped
+        GameLoop slowLoop = new GameLoop(gameService, 1, 200);
+
+        GameService.GameState state;
+        try {
+            state = slowLoop.submitShot("m1", "p1", new GameService.Shot(0.5, 0))
+                    .thenApply(s -> {
+                        assertEquals("game-loop-0", Thread.currentThread().getName());
+                        return s;
+                    })
+                    .get(5, TimeUnit.SECONDS);
+        } finally {
+            slowLoop.shutdown();
+        }
+
+        assertEquals("p2", state.getCurrentTurn());
+        assertTrue(state.getPhysics().getX(0) > -PhysicsEngine.START_X);
+    }
+
+    @Test
+    void followUpsSeeTheirOwnShotWhenShotsShareATick() throws Exception {
+        gameService.createGame("m1", "p1", "p2");
+        // Long tick so both shots are stepped in the same batch
+        GameLoop slowLoop = new GameLoop(gameService, 1, 200);
+        List<String> seen = new CopyOnWriteArrayList<>();
+
+        try {
+            slowLoop.submitShot("m1", PlayerHandle.of("p1"), new GameService.Shot(0.5, 0),
+                    game -> seen.add(game.getShotCount() + ":" + game.getCurrentTurn()));
+            slowLoop.submitShot("m1", PlayerHandle.of("p2"), new GameService.Shot(-0.5, 0),
+                    game -> seen.add(game.getShotCount() + ":" + game.getCurrentTurn()))
+                    .get(5, TimeUnit.SECONDS);
+            // Refused shots have no follow-up
+            slowLoop.submitShot("m1", PlayerHandle.of("p2"), new GameService.Shot(0.5, 0), game -> seen.add("refused"))
+                    .get(5, TimeUnit.SECONDS);
+        } finally {
+            slowLoop.shutdown();
+        }
+
+        assertEquals(List.of("1:p2", "2:p1"), seen);
+    }
+
+    @Test
+    void matchesResultsOfInlineProcessingAcrossManyGames() throws Exception {
+        GameService inline = new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0);
+        List<CompletableFuture<GameService.GameState>> futures = new ArrayList<>();
+
+        for (int m = 0; m < 200; m++) {
+            String matchId = "match-" + m;
+            gameService.createGame(matchId, "a" + m, "b" + m);
+            inline.createGame(matchId, "a" + m, "b" + m);
+
+            for (int shot = 0; shot < 6; shot++) {
+                String player = (shot % 2 == 0 ? "a" : "b") + m;
+                GameService.Shot move = new GameService.Shot(1 + (m % 7), (shot - 3) * 0.5);
+                futures.add(gameLoop.submitShot(matchId, player, move));
+                inline.processShot(matchId, player, move);
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        for (int m = 0; m < 200; m++) {
+            GameService.GameState looped = gameService.getGameState("match-" + m);
+            GameService.GameState expected = inline.getGameState("match-" + m);
+            assertEquals(expected.getCurrentTurn(), looped.getCurrentTurn());
+            assertEquals(expected.getRound(), looped.getRound());
+            assertEquals(expected.getPlayer1Score(), looped.getPlayer1Score());
+            assertEquals(expected.getPhysics().getX(0), looped.getPhysics().getX(0));
+            assertEquals(expected.getPhysics().getX(1), looped.getPhysics().getX(1));
+        }
+    }
+
+    @Test
+    void concurrentMovesAndClosesAreAppliedOneAtATime() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger shotsAfterClose = new AtomicInteger();
+        AtomicInteger shotsSeen = new AtomicInteger();
+        AtomicBoolean removed = new AtomicBoolean();
+
+        GameService recording = new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0) {
+            @Override
+            public GameState processShot(GameState game, PlayerHandle player, Shot shot) {
+                if (inFlight.incrementAndGet() > 1) overlaps.incrementAndGet();
+                if (removed.get()) shotsAfterClose.incrementAndGet();
+                shotsSeen.incrementAndGet();
+                try {
+                    return super.processShot(game, player, shot);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+
+            @Override
+            public void removeGame(String matchId, GameState game) {
+                if (inFlight.incrementAndGet() > 1) overlaps.incrementAndGet();
+                removed.set(true);
+                super.removeGame(matchId, game);
+                inFlight.decrementAndGet();
+            }
+        };
+        GameLoop loop = new GameLoop(recording, 4, 1);
+        recording.createGame("m", "p1", "p2");
+
+        int threads = 16;
+        List<CompletableFuture<GameService.GameState>> shots = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<GameService.GameState>> closes = new CopyOnWriteArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 50; i++) {
+                        String player = (i + thread) % 2 == 0 ? "p1" : "p2";
+                        shots.add(loop.submitShot("m", player, new GameService.Shot(0.2, 0.1 * (i % 3))));
+                        if (thread % 4 == 0 && i == 25) {
+                            closes.add(loop.submitClose("m", player));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        CompletableFuture.allOf(shots.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        CompletableFuture.allOf(closes.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        loop.shutdown();
+
+        assertTrue(shotsSeen.get() > 0, "the loop must apply shots through processShot");
+        assertEquals(0, overlaps.get(), "commands for one match must never run concurrently");
+        assertEquals(0, shotsAfterClose.get(), "no shot may be applied after the match closed");
+        assertEquals(1, closes.stream().filter(c -> c.join() != null).count(), "exactly one close wins");
+        assertTrue(recording.getGame("m").isEmpty());
+    }
+}
@@ -0,0 +1,83 @@
+package com.uknight.server.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameMessengerTest {
+
+    private final List<Message<?>> sent = new ArrayList<>();
+    private final AtomicInteger conversions = new AtomicInteger();
+    private final GameMessenger messenger = new GameMessenger(template());
+
+    @Test
+    void convertsOnceForAllDestinations() {
+        messenger.sendToAll(Map.of("type", "GAME_START", "matchId", "m1"), "/topic/game/p1", "/topic/game/p2");
+
+        assertEquals(1, conversions.get());
+        assertEquals(2, sent.size());
+        assertSame(sent.get(0).getPayload(), sent.get(1).getPayload());
+        assertEquals("/topic/game/p1", SimpMessageHeaderAccessor.getDestination(sent.get(0).getHeaders()));
+        assertEquals("/topic/game/p2", SimpMessageHeaderAccessor.getDestination(sent.get(1).getHeaders()));
+
+        String json = new String((byte[]) sent.get(0).getPayload(), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"type\":\"GAME_START\""));
+        assertEquals(MimeTypeUtils.APPLICATION_JSON, sent.get(0).getHeaders().get(MessageHeaders.CONTENT_TYPE));
+    }
+
+    @Test
+    void keepsBinaryPayloadsAndHeaders() {
+        byte[] frame = {1, 2, 3};
+
+        messenger.sendToAll(frame, Map.of(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_OCTET_STREAM),
+                "/topic/game/p1", "/topic/game/p2");
+
+        assertEquals(2, sent.size());
+        for (Message<?> message : sent) {
+            assertSame(frame, message.getPayload());
+            assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, message.getHeaders().get(MessageHeaders.CONTENT_TYPE));
+        }
+    }
+
+    @Test
+    void preparedMessageCanBeResent() {
+        Message<?> message = messenger.prepare(Map.of("type", "GAME_CLOSED"), null);
+
+        messenger.send(message, "/topic/game/p1");
+        messenger.send(message, "/topic/game/p2");
+
+        assertEquals(1, conversions.get());
+        // The prepared message itself is never stamped with a destination
+        assertNull(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        assertEquals("/topic/game/p2", SimpMessageHeaderAccessor.getDestination(sent.get(1).getHeaders()));
+    }
+
+    // Same converters the STOMP broker config registers, counting every conversion
+    private SimpMessagingTemplate template() {
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+        template.setMessageConverter(new CompositeMessageConverter(List.of(
+                new StringMessageConverter(), new ByteArrayMessageConverter(), new JacksonJsonMessageConverter())) {
+            @Override
+            public Message<?> toMessage(Object payload, MessageHeaders headers) {
+                conversions.incrementAndGet();
+                return super.toMessage(payload, headers);
+            }
+        });
+        return template;
+    }
+}
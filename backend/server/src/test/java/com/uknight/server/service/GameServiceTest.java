@@ -0,0 +1,130 @@
+package com.uknight.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameServiceTest {
+
+    private static final long TTL_MS = 60_000;
+
+    private final List<Object> events = new ArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private GameService newService(int maxGames) {
+        return new GameService(events::add, registry, maxGames, TTL_MS);
+    }
+
+    @Test
+    void expiresGamesIdleSinceTheirLastShot() throws InterruptedException {
+        GameService gameService = newService(0);
+        gameService.createGame("idle", "p1", "p2");
+        gameService.createGame("busy", "p3", "p4");
+        GameService.GameState idle = gameService.getGameState("idle");
+
+        // A later shot keeps "busy" alive past the point where "idle" times out
+        Thread.sleep(5);
+        gameService.getGameState("busy").touch();
+        gameService.expireIdleGames(idle.getLastActiveAt() + TimeUnit.MILLISECONDS.toNanos(TTL_MS + 1));
+
+        assertNull(gameService.getGameState("idle"));
+        assertTrue(idle.getMailbox().isClosed());
+        assertEquals(List.of(new GameService.GameEvictedEvent(idle, GameService.GameEvictedEvent.Reason.EXPIRED)), events);
+        assertEquals(1, registry.get("game.store.expired").counter().count());
+        assertEquals(1, registry.get("game.store.active").gauge().value());
+    }
+
+    @Test
+    void keepsGamesWithinTheTtl() {
+        GameService gameService = newService(0);
+        gameService.createGame("m1", "p1", "p2");
+
+        gameService.expireIdleGames(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TTL_MS / 2));
+
+        assertNotNull(gameService.getGameState("m1"));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void evictsTheIdlestGameWhenFull() {
+        GameService gameService = newService(2);
+        gameService.createGame("m1", "p1", "p2");
+        gameService.createGame("m2", "p3", "p4");
+        GameService.GameState m1 = gameService.getGameState("m1");
+
+        // m1 was created first, but a shot makes m2 the idlest
+        gameService.processShot(m1, m1.getPlayer1(), new GameService.Shot(0.5, 0));
+        GameService.GameState m2 = gameService.getGameState("m2");
+        gameService.createGame("m3", "p5", "p6");
+
+        assertEquals(2, gameService.getActiveGameCount());
+        assertNull(gameService.getGameState("m2"));
+        assertNotNull(gameService.getGameState("m1"));
+        assertEquals(List.of(new GameService.GameEvictedEvent(m2, GameService.GameEvictedEvent.Reason.EVICTED)), events);
+        assertEquals(1, registry.get("game.store.evicted").counter().count());
+    }
+
+    @Test
+    void refusedCreateEvictsNothing() {
+        GameService gameService = newService(1);
+        gameService.createGame("m1", "p1", "p2");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> gameService.createGame("m2", "p".repeat(ShotJournal.MAX_ID_BYTES + 1), "p3"));
+
+        assertNotNull(gameService.getGameState("m1"));
+        assertTrue(events.isEmpty());
+        assertEquals(0, registry.get("game.store.evicted").counter().count());
+    }
+
+    @Test
+    void closedGamesAreNotReportedAgain() {
+        GameService gameService = newService(0);
+        gameService.createGame("m1", "p1", "p2");
+        GameService.GameState game = gameService.getGameState("m1");
+        gameService.removeGame("m1", game);
+
+        gameService.expireIdleGames(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TTL_MS) + 1);
+
+        assertTrue(events.isEmpty());
+        assertEquals(0, registry.get("game.store.expired").counter().count());
+    }
+
+    @Test
+    void timesShotStagesAndCountsAbandonedGames() {
+        GameService gameService = newService(0);
+        gameService.createGame("m1", "p1", "p2");
+
+        gameService.processShot("m1", "p1", new GameService.Shot(0.1, 0));
+        // Out of turn, so neither stage runs
+        gameService.processShot("m1", "p1", new GameService.Shot(0.1, 0));
+        gameService.removeGame("m1");
+
+        assertEquals(1, registry.get("game.shot.stage").tag("stage", "physics").timer().count());
+        assertEquals(1, registry.get("game.shot.stage").tag("stage", "win_check").timer().count());
+        assertEquals(1, registry.get("game.abandoned").counter().count());
+    }
+
+    @Test
+    void publishesTheResultOnceWhenAShotDecidesTheMatch() {
+        GameService gameService = newService(0);
+        gameService.createGame("m1", "p1", "p2");
+        GameService.GameState game = gameService.getGameState("m1");
+
+        // Each player drives straight at the other, so someone is knocked off every round or two
+        for (int shot = 0; shot < 40 && !game.isMatchOver(); shot++) {
+            double dx = game.getCurrentTurn().equals("p1") ? 2 : -2;
+            gameService.processShot(game, game.getCurrentPlayer(), new GameService.Shot(dx, 0));
+        }
+        assertTrue(game.isMatchOver());
+        gameService.processShot(game, game.getCurrentPlayer(), new GameService.Shot(0.1, 0));
+
+        assertEquals(List.of(new GameService.MatchFinishedEvent("m1", "p1", "p2", game.getWinner())), events);
+        assertNotNull(game.getWinner());
+    }
+}
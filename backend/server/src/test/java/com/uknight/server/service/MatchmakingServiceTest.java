@@ -0,0 +1,338 @@
+package com.uknight.server.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.uknight.server.cluster.ClusterMembership;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchmakingServiceTest {
+
+    private static final int JOINS = 200_000;
+
+    private static final List<String> UNIVERSITIES = List.of("UCF", "USF");
+
+    @BeforeAll
+    static void quietLogs() {
+        // Per-join info logging would dominate the measurement
+        ((Logger) LoggerFactory.getLogger(MatchmakingService.class)).setLevel(Level.WARN);
+    }
+
+    private static MatchmakingService newService(long spilloverMs) {
+        return newService(spilloverMs, new ArrayList<>());
+    }
+
+    private static MatchmakingService newService(long spilloverMs, List<Object> events) {
+        return MatchmakingService.withDefaults(events::add, new SimpleMeterRegistry(), spilloverMs,
+                ClusterMembership.standalone(), UNIVERSITIES);
+    }
+
+    @Test
+    void pairsTwoUsersInFifoOrder() {
+        MatchmakingService service = newService(10_000);
+
+        service.addUser("a");
+        assertNull(service.findMatch("a"));
+        assertTrue(service.isWaiting("a"));
+
+        service.addUser("b");
+        assertEquals("a", service.findMatch("b"));
+        assertFalse(service.isWaiting("a"));
+        assertFalse(service.isWaiting("b"));
+        assertEquals(0, service.getQueueSize());
+    }
+
+    @Test
+    void neverMatchesUserWithThemselves() {
+        MatchmakingService service = newService(10_000);
+
+        service.addUser("a");
+        service.addUser("a");
+        assertNull(service.findMatch("a"));
+        assertNull(service.findMatch("a"));
+        assertEquals(1, service.getQueueSize());
+    }
+
+    @Test
+    void removedUserIsNotMatched() {
+        MatchmakingService service = newService(10_000);
+
+        service.addUser("a");
+        service.findMatch("a");
+        service.removeUser("a");
+
+        service.addUser("b");
+        assertNull(service.findMatch("b"));
+        assertTrue(service.isWaiting("b"));
+    }
+
+    @Test
+    void ticketsCancelledMidSearchAreNeverMatched() throws InterruptedException {
+        MatchQueue queue = new MatchQueue();
+        MatchQueue.Ticket[] tickets = new MatchQueue.Ticket[JOINS / 10];
+        for (int i = 0; i < tickets.length; i++) {
+            tickets[i] = MatchQueue.Ticket.of("user-" + i, RatingService.INITIAL_RATING);
+        }
+        Set<MatchQueue.Ticket> matched = ConcurrentHashMap.newKeySet();
+        Set<MatchQueue.Ticket> cancelled = ConcurrentHashMap.newKeySet();
+        AtomicInteger searching = new AtomicInteger(-1);
+        AtomicInteger settled = new AtomicInteger(-1);
+
+        // In lockstep: every odd ticket is cancelled the moment its search starts, landing in whatever state it is in
+        Thread searcher = Thread.ofPlatform().start(() -> {
+            for (int i = 0; i < tickets.length; i++) {
+                searching.set(i);
+                MatchQueue.Ticket partner = queue.exchange(tickets[i]);
+                if (partner != null) {
+                    matched.add(tickets[i]);
+                    matched.add(partner);
+                }
+                while (settled.get() < i) Thread.yield();
+            }
+        });
+        Thread canceller = Thread.ofPlatform().start(() -> {
+            for (int i = 0; i < tickets.length; i++) {
+                while (searching.get() < i) Thread.yield();
+                if (i % 2 == 1 && queue.cancel(tickets[i])) cancelled.add(tickets[i]);
+                settled.set(i);
+            }
+        });
+        searcher.join(30_000);
+        canceller.join(30_000);
+
+        List<MatchQueue.Ticket> waiting = queue.waiting();
+        assertTrue(waiting.size() <= 1, "at most one ticket should be left waiting");
+        for (int i = 0; i < tickets.length; i++) {
+            MatchQueue.Ticket ticket = tickets[i];
+            assertEquals(matched.contains(ticket), ticket.isMatched());
+            if (i % 2 == 1) {
+                // A cancel takes effect in every state but matched, and a cancelled ticket is never matched afterwards
+                assertNotEquals(matched.contains(ticket), cancelled.contains(ticket), ticket.getSessionId());
+            }
+        }
+        assertEquals(tickets.length, matched.size() + cancelled.size() + waiting.size());
+    }
+
+    @Test
+    void usersFromDifferentUniversitiesWaitInSeparateShards() {
+        MatchmakingService service = newService(10_000);
+
+        service.addUser("a", "UCF");
+        assertNull(service.findMatch("a"));
+        service.addUser("b", "USF");
+        assertNull(service.findMatch("b"));
+
+        service.addUser("c", " ucf ");
+        assertEquals("a", service.findMatch("c"));
+        assertTrue(service.isWaiting("b"));
+    }
+
+    @Test
+    void unlistedUniversitiesShareTheGlobalShard() {
+        MatchmakingService service = newService(10_000);
+
+        service.addUser("a", "Unlisted " + 1);
+        assertNull(service.findMatch("a"));
+        service.addUser("b", "Unlisted " + 2);
+        assertEquals("a", service.findMatch("b"));
+
+        assertEquals(List.of(MatchmakingService.GLOBAL_SHARD),
+                service.getShards().stream().map(MatchmakingService.Shard::getName).toList());
+    }
+
+    @Test
+    void idleEmptyShardIsEvictedWithItsMeters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MatchmakingService service = MatchmakingService.withDefaults(event -> {}, registry, 10_000,
+                ClusterMembership.standalone(), UNIVERSITIES);
+
+        service.addUser("a", "UCF");
+        assertNull(service.findMatch("a"));
+        service.removeUser("a");
+        assertNotNull(registry.find("matchmaking.shard.joins").tag("shard", "ucf").counter());
+
+        service.spillOverExpiredWaiters(System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(MatchmakingService.DEFAULT_SHARD_IDLE_MS));
+
+        assertEquals(List.of(MatchmakingService.GLOBAL_SHARD),
+                service.getShards().stream().map(MatchmakingService.Shard::getName).toList());
+        assertNull(registry.find("matchmaking.shard.joins").tag("shard", "ucf").counter());
+        assertNull(registry.find("matchmaking.shard.depth").tag("shard", "ucf").gauge());
+
+        // A later join brings the shard back
+        service.addUser("b", "UCF");
+        assertNull(service.findMatch("b"));
+        service.addUser("c", "UCF");
+        assertEquals("b", service.findMatch("c"));
+    }
+
+    @Test
+    void waiterSpillsOverToGlobalShardAfterDeadline() throws InterruptedException {
+        List<Object> events = new ArrayList<>();
+        MatchmakingService service = newService(0, events);
+
+        service.addUser("a", "UCF");
+        assertNull(service.findMatch("a"));
+        service.addUser("b", "USF");
+        assertNull(service.findMatch("b"));
+
+        Thread.sleep(1);
+        service.spillOverExpiredWaiters();
+
+        assertEquals(1, events.size());
+        MatchmakingService.MatchFoundEvent event = (MatchmakingService.MatchFoundEvent) events.get(0);
+        assertEquals(Set.of("a", "b"), Set.of(event.initiatorId(), event.partnerId()));
+        assertEquals(0, service.getQueueSize());
+    }
+
+    @Test
+    void joinerTakesGlobalWaiterWhenOwnShardIsEmpty() throws InterruptedException {
+        MatchmakingService service = newService(0);
+
+        service.addUser("a", "UCF");
+        assertNull(service.findMatch("a"));
+        Thread.sleep(1);
+        service.spillOverExpiredWaiters();
+
+        service.addUser("b", "USF");
+        assertEquals("a", service.findMatch("b"));
+    }
+
+    @Test
+    void waiterIsHandedToTheGlobalShardsNodeWhenItIsRemote() throws InterruptedException {
+        // Whichever of the two nodes doesn't own the global shard
+        ClusterMembership membership = new ClusterMembership("a", "a,b");
+        if (membership.ownerOfShard(MatchmakingService.GLOBAL_SHARD).equals("a")) {
+            membership = new ClusterMembership("b", "a,b");
+        }
+        List<Object> events = new ArrayList<>();
+        MatchmakingService service = MatchmakingService.withDefaults(events::add, new SimpleMeterRegistry(), 0,
+                membership, UNIVERSITIES);
+
+        service.addUser("a", "UCF");
+        assertNull(service.findMatch("a"));
+        Thread.sleep(1);
+        service.spillOverExpiredWaiters();
+
+        assertEquals(List.of(new MatchmakingService.SpilledOverEvent("a")), events);
+        assertFalse(service.isWaiting("a"));
+
+        // Nothing is left behind for a local joiner to take
+        service.addUser("b", "USF");
+        assertNull(service.findMatch("b"));
+    }
+
+    @Test
+    void pairsTheNearestRatingInRange() {
+        RatingService ratings = RatingService.withDefaults(100);
+        for (int i = 0; i < 6; i++) {
+            ratings.recordResult("strong", "weak", "strong"); // 1667 and 1333 after six
+        }
+        ratings.recordResult("other", "fair", "other");     // 1450
+        MatchmakingService service = new MatchmakingService(event -> {}, new SimpleMeterRegistry(), 10_000,
+                ClusterMembership.standalone(), ratings, 100, 50, List.of(), MatchmakingService.DEFAULT_SHARD_IDLE_MS);
+
+        for (String id : List.of("weak", "fair", "strong")) {
+            service.addUser(id);
+            assertNull(service.findMatch(id));
+        }
+
+        // 1500 is within 100 of fair only; weak and strong are too far out
+        service.addUser("new");
+        assertEquals("fair", service.findMatch("new"));
+        assertTrue(service.isWaiting("weak"));
+        assertTrue(service.isWaiting("strong"));
+        assertEquals(50, service.getShards().iterator().next().getRatingGap().mean());
+    }
+
+    @Test
+    void windowsWidenUntilDistantWaitersMeet() {
+        RatingService ratings = RatingService.withDefaults(400);
+        ratings.recordResult("strong", "weak", "strong"); // 1700 and 1300
+        List<Object> events = new ArrayList<>();
+        MatchmakingService service = new MatchmakingService(events::add, new SimpleMeterRegistry(), 10_000,
+                ClusterMembership.standalone(), ratings, 100, 50, List.of(), MatchmakingService.DEFAULT_SHARD_IDLE_MS);
+        long start = System.nanoTime();
+
+        service.addUser("strong");
+        assertNull(service.findMatch("strong"));
+        service.addUser("weak");
+        assertNull(service.findMatch("weak"));
+
+        // 400 apart: a window of 100 + 50/s covers that after six seconds
+        service.spillOverExpiredWaiters(start + TimeUnit.SECONDS.toNanos(5));
+        assertTrue(events.isEmpty());
+        assertEquals(2, service.getQueueSize());
+
+        service.spillOverExpiredWaiters(start + TimeUnit.SECONDS.toNanos(7));
+        assertEquals(1, events.size());
+        MatchmakingService.MatchFoundEvent event = (MatchmakingService.MatchFoundEvent) events.get(0);
+        assertEquals(Set.of("strong", "weak"), Set.of(event.initiatorId(), event.partnerId()));
+        assertEquals(0, service.getQueueSize());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 8, 32})
+    void concurrentJoinsPairEveryUserExactlyOnce(int threads) throws InterruptedException {
+        MatchmakingService service = newService(10_000);
+        Map<String, String> partners = new ConcurrentHashMap<>();
+        AtomicInteger selfMatches = new AtomicInteger();
+        AtomicInteger doubleMatches = new AtomicInteger();
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                    int i;
+                    while ((i = next.getAndIncrement()) < JOINS) {
+                        String id = "user-" + i;
+                        service.addUser(id);
+                        String partner = service.findMatch(id);
+                        if (partner != null) {
+                            if (partner.equals(id)) selfMatches.incrementAndGet();
+                            // Both sides of a pair must be fresh, otherwise someone was matched twice
+                            if (partners.putIfAbsent(id, partner) != null) doubleMatches.incrementAndGet();
+                            if (partners.putIfAbsent(partner, id) != null) doubleMatches.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        int pairs = partners.size() / 2;
+        System.out.printf("matchmaking: %2d threads, %d joins -> %d pairs in %.3fs (%.0f pairs/s)%n",
+                threads, JOINS, pairs, seconds, pairs / seconds);
+
+        assertEquals(0, selfMatches.get());
+        assertEquals(0, doubleMatches.get());
+        assertTrue(service.getQueueSize() <= 1, "at most one user should be left waiting");
+        assertEquals(JOINS, partners.size() + service.getQueueSize());
+    }
+}
@@ -0,0 +1,145 @@
+package com.uknight.server.service;
+
+import com.uknight.server.benchmark.LegacyPuckPhysics;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhysicsEngineTest {
+
+    @Test
+    void matchesLegacyIntegratorBitForBit() {
+        SplittableRandom random = new SplittableRandom(7);
+        PhysicsEngine engine = new PhysicsEngine();
+        LegacyPuckPhysics legacy = new LegacyPuckPhysics();
+
+        for (int shot = 0; shot < 100_000; shot++) {
+            int puck = shot & 1;
+            // Mix of gentle taps and full-power shots, including head-on collisions along the x axis
+            double dx = random.nextDouble(-12, 12);
+            double dy = shot % 5 == 0 ? 0.0 : random.nextDouble(-12, 12);
+
+            engine.applyShot(puck, dx, dy);
+            engine.simulate();
+            legacy.applyShot(puck, dx, dy);
+            legacy.runPhysicsSimulation();
+
+            for (int i = 0; i < PhysicsEngine.PUCK_COUNT; i++) {
+                LegacyPuckPhysics.Puck expected = legacy.pucks[i];
+                assertEquals(Double.doubleToRawLongBits(expected.x), Double.doubleToRawLongBits(engine.getX(i)));
+                assertEquals(Double.doubleToRawLongBits(expected.y), Double.doubleToRawLongBits(engine.getY(i)));
+                assertEquals(Double.doubleToRawLongBits(expected.vx), Double.doubleToRawLongBits(engine.getVx(i)));
+                assertEquals(Double.doubleToRawLongBits(expected.vy), Double.doubleToRawLongBits(engine.getVy(i)));
+                assertEquals(legacy.isOutOfBounds(i), engine.isOutOfBounds(i));
+            }
+
+            if (legacy.isOutOfBounds(0) || legacy.isOutOfBounds(1)) {
+                engine.reset();
+                legacy.resetRound();
+            }
+        }
+    }
+
+    @Test
+    void edgeOfPlatformMatchesSqrtComparison() {
+        PhysicsEngine engine = new PhysicsEngine();
+        double r = PhysicsEngine.PLATFORM_RADIUS;
+
+        for (double x : new double[] {Math.nextDown(r), r, Math.nextUp(r), Math.nextUp(Math.nextUp(r))}) {
+            engine.place(0, x, 0.0, PhysicsEngine.PUCK_RADIUS);
+            assertEquals(Math.sqrt(x * x) > r, engine.isOutOfBounds(0), "x=" + x);
+        }
+    }
+
+    @Test
+    void headOnShotKnocksOpponentOff() {
+        PhysicsEngine engine = new PhysicsEngine();
+
+        engine.applyShot(0, 10, 0);
+        engine.simulate();
+
+        assertFalse(engine.isOutOfBounds(0));
+        assertTrue(engine.isOutOfBounds(1));
+    }
+
+    @Test
+    void analyticHeadOnShotKnocksOpponentOff() {
+        PhysicsEngine engine = new PhysicsEngine(PhysicsEngine.Solver.ANALYTIC);
+
+        engine.applyShot(0, 10, 0);
+        engine.simulate();
+
+        assertFalse(engine.isOutOfBounds(0));
+        assertTrue(engine.isOutOfBounds(1));
+    }
+
+    @Test
+    void analyticFreeRunMatchesTheStepSeries() {
+        PhysicsEngine stepped = new PhysicsEngine();
+        PhysicsEngine analytic = new PhysicsEngine(PhysicsEngine.Solver.ANALYTIC);
+        for (PhysicsEngine engine : new PhysicsEngine[] {stepped, analytic}) {
+            engine.place(0, 0.0, -0.2, PhysicsEngine.PUCK_RADIUS);
+            engine.place(1, 0.0, 0.3, PhysicsEngine.PUCK_RADIUS);
+            // Still fast after 50 steps, so both run the full step limit without touching anything
+            engine.setVelocity(0, 0.004, 0.003);
+            engine.simulate();
+        }
+
+        assertEquals(stepped.getX(0), analytic.getX(0), 1e-12);
+        assertEquals(stepped.getY(0), analytic.getY(0), 1e-12);
+        assertEquals(stepped.getVx(0), analytic.getVx(0), 1e-12);
+        assertEquals(stepped.getVy(0), analytic.getVy(0), 1e-12);
+    }
+
+    @Test
+    void analyticCatchesContactsTheStepsJumpOver() {
+        // A glancing hit: puck 0 is inside the contact band for less than one step
+        PhysicsEngine stepped = new PhysicsEngine();
+        PhysicsEngine analytic = new PhysicsEngine(PhysicsEngine.Solver.ANALYTIC);
+        for (PhysicsEngine engine : new PhysicsEngine[] {stepped, analytic}) {
+            engine.place(0, -0.1, 0.0, PhysicsEngine.PUCK_RADIUS);
+            engine.place(1, 0.0, 0.09, PhysicsEngine.PUCK_RADIUS);
+            engine.applyShot(0, 12, 0);
+            engine.simulate();
+        }
+
+        assertEquals(0.0, stepped.getX(1));
+        assertNotEquals(0.0, analytic.getX(1));
+        assertTrue(analytic.getY(1) > 0.09, "pushed away from puck 0's path");
+    }
+
+    @Test
+    void analyticPucksNeverEndUpOverlapping() {
+        SplittableRandom random = new SplittableRandom(11);
+        PhysicsEngine engine = new PhysicsEngine(PhysicsEngine.Solver.ANALYTIC);
+        double minDistance = 2 * PhysicsEngine.PUCK_RADIUS;
+
+        for (int shot = 0; shot < 100_000; shot++) {
+            engine.applyShot(shot & 1, random.nextDouble(-12, 12), random.nextDouble(-12, 12));
+            engine.simulate();
+
+            boolean out = engine.isOutOfBounds(0) || engine.isOutOfBounds(1);
+            double distance = Math.hypot(engine.getX(1) - engine.getX(0), engine.getY(1) - engine.getY(0));
+            assertTrue(out || distance >= minDistance - 1e-9, "shot " + shot + ": pucks " + distance + " apart");
+            if (out) {
+                engine.reset();
+            }
+        }
+    }
+
+    @Test
+    void analyticFallenPuckHitsNothing() {
+        PhysicsEngine engine = new PhysicsEngine(PhysicsEngine.Solver.ANALYTIC);
+        // Puck 1 sits past the edge in puck 0's path
+        engine.place(0, 0.2, 0.0, PhysicsEngine.PUCK_RADIUS);
+        engine.place(1, 0.5, 0.0, PhysicsEngine.PUCK_RADIUS);
+
+        engine.applyShot(0, 6, 0);
+        engine.simulate();
+
+        assertEquals(0.5, engine.getX(1));
+        assertTrue(engine.isOutOfBounds(0));
+    }
+}
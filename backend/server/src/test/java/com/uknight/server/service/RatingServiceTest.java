@@ -0,0 +1,61 @@
+package com.uknight.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RatingServiceTest {
+
+    private final RatingService ratings = RatingService.withDefaults(32);
+
+    @Test
+    void winnerTakesMorePointsForAnUpset() {
+        ratings.recordResult("a", "b", "a");
+        assertEquals(1516, ratings.getRating("a"));
+        assertEquals(1484, ratings.getRating("b"));
+
+        // The favourite winning again gains less than the 16 an even match is worth
+        ratings.recordResult("b", "a", "a");
+        int favouriteGain = ratings.getRating("a") - 1516;
+        assertTrue(favouriteGain > 0 && favouriteGain < 16, "gained " + favouriteGain);
+
+        // ...and an upset moves more
+        int underdog = ratings.getRating("b");
+        ratings.recordResult("a", "b", "b");
+        assertTrue(ratings.getRating("b") - underdog > 16);
+        assertEquals(3000, ratings.getRating("a") + ratings.getRating("b"), 1);
+    }
+
+    @Test
+    void drawsMoveTheFavouriteDownAndBotGamesAreNotRated() {
+        ratings.recordResult("a", "b", "a");
+        ratings.recordResult("a", "b", null);
+        assertTrue(ratings.getRating("a") < 1516);
+        assertTrue(ratings.getRating("b") > 1484);
+
+        ratings.onMatchFinished(new GameService.MatchFinishedEvent("m1", "c", BotPlayer.ID, "c"));
+        assertEquals(RatingService.INITIAL_RATING, ratings.getRating("c"));
+        assertEquals(RatingService.INITIAL_RATING, ratings.getRating(BotPlayer.ID));
+    }
+
+    @Test
+    void idlePlayersAreForgottenAndTheStoreStaysBounded() {
+        RatingService bounded = new RatingService(32, 3, 1000);
+        long second = 1_000_000_000L;
+        bounded.recordResult("a", "b", "a", 0);
+        bounded.recordResult("b", "c", "b", second);
+        bounded.recordResult("d", "c", "d", 2 * second);
+
+        // Full: a, rated longest ago, made room for d
+        assertEquals(3, bounded.getPlayerCount());
+        assertEquals(RatingService.INITIAL_RATING, bounded.getRating("a"));
+        assertNotEquals(RatingService.INITIAL_RATING, bounded.getRating("d"));
+
+        // b was last rated a second before c and d
+        bounded.expireIdleRatings(2 * second + 500_000_000L);
+        assertEquals(2, bounded.getPlayerCount());
+        assertEquals(RatingService.INITIAL_RATING, bounded.getRating("b"));
+        bounded.expireIdleRatings(3 * second + 500_000_000L);
+        assertEquals(0, bounded.getPlayerCount());
+    }
+}
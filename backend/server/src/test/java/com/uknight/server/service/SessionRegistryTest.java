@@ -0,0 +1,283 @@
+package com.uknight.server.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.uknight.server.cluster.ClusterMembership;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionRegistryTest {
+
+    private final Queue<SessionRegistry.UserDisconnectedEvent> disconnects = new ConcurrentLinkedQueue<>();
+    private final GameService gameService = new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0);
+    private final MatchmakingService matchmakingService =
+            MatchmakingService.withDefaults(event -> {}, new SimpleMeterRegistry(), 10_000,
+                ClusterMembership.standalone(), List.of());
+
+    // Stands in for LobbyController: matches of a departed user are closed
+    private final SessionRegistry registry = new SessionRegistry(matchmakingService, event -> {
+        SessionRegistry.UserDisconnectedEvent disconnected = (SessionRegistry.UserDisconnectedEvent) event;
+        disconnects.add(disconnected);
+        disconnected.matchIds().forEach(gameService::removeGame);
+    });
+
+    @BeforeAll
+    static void quietLogs() {
+        for (Class<?> type : List.of(SessionRegistry.class, MatchmakingService.class, GameService.class)) {
+            ((Logger) LoggerFactory.getLogger(type)).setLevel(Level.WARN);
+        }
+    }
+
+    @Test
+    void disconnectPurgesQueueAndReportsPeerAndMatches() {
+        connect("s1", "alice");
+        connect("s2", "bob");
+        registry.pair("alice", "bob");
+        gameService.createGame("m1", "alice", "bob");
+        registry.addMatch("alice", "m1");
+        registry.addMatch("bob", "m1");
+        matchmakingService.addUser("alice");
+
+        disconnect("s1");
+
+        assertFalse(registry.isConnected("alice"));
+        assertFalse(matchmakingService.isWaiting("alice"));
+        assertEquals(List.of(new SessionRegistry.UserDisconnectedEvent("alice", "bob", List.of("m1"))),
+                List.copyOf(disconnects));
+        assertNull(gameService.getGameState("m1"));
+    }
+
+    @Test
+    void connectBindsTheHandleToTheSessionUntilDisconnect() {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId("s1");
+        accessor.setNativeHeader("uuid", "alice");
+        accessor.setSessionAttributes(attributes);
+        registry.onConnect(new SessionConnectEvent(this, message(accessor)));
+
+        PlayerHandle alice = (PlayerHandle) attributes.get(SessionRegistry.HANDLE_ATTRIBUTE);
+        assertSame(alice, registry.lookup("alice"));
+        assertEquals("/topic/game/alice", alice.topic(PlayerHandle.Topic.GAME));
+
+        // Later frames resolve to the bound handle even without a uuid header
+        SimpMessageHeaderAccessor frame = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        frame.setSessionId("s1");
+        frame.setSessionAttributes(attributes);
+        assertSame(alice, SessionRegistry.handleOf(frame));
+        // A game made from it hands back that same handle, whichever handle the opponent is looked up with
+        GameService.GameState game = new GameService.GameState("m1", PlayerHandle.of("bob"), alice, PhysicsEngine.Solver.STEPPED);
+        assertSame(alice, game.getOpponent(PlayerHandle.of("bob")));
+
+        disconnect("s1");
+
+        assertNull(registry.lookup("alice"));
+    }
+
+    @Test
+    void noClientCanConnectAsTheBot() {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId("s1");
+        accessor.setNativeHeader("uuid", BotPlayer.ID);
+        accessor.setSessionAttributes(attributes);
+        registry.onConnect(new SessionConnectEvent(this, message(accessor)));
+
+        assertNull(attributes.get(SessionRegistry.HANDLE_ATTRIBUTE));
+        assertNull(registry.lookup(BotPlayer.ID));
+
+        // Its frames are known by the session id, never the bot's
+        SimpMessageHeaderAccessor frame = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        frame.setSessionId("s1");
+        frame.setNativeHeader("uuid", BotPlayer.ID);
+        assertEquals(PlayerHandle.of("s1"), SessionRegistry.handleOf(frame));
+        assertEquals(PlayerHandle.of("s1"), SessionRegistry.handleOf(frame.getMessageHeaders()));
+    }
+
+    @Test
+    void idsFromClientsAreOnlyLookedUp() {
+        connect("s1", "alice");
+
+        assertNull(registry.lookup("eve"));
+        assertEquals("/topic/signal/eve", registry.topicOf("eve", PlayerHandle.Topic.SIGNAL));
+        assertEquals(PlayerHandle.of("eve"), registry.resolve("eve"));
+        assertNull(registry.lookup("eve"));
+        assertEquals(1, registry.getUserCount());
+    }
+
+    @Test
+    void reconnectKeepsTheHandle() {
+        connect("s1", "alice");
+        PlayerHandle alice = registry.lookup("alice");
+        connect("s2", "alice");
+        disconnect("s1");
+
+        assertSame(alice, registry.lookup("alice"));
+    }
+
+    @Test
+    void ghostsAreNeverMatched() {
+        connect("s1", "alice");
+        matchmakingService.addUser("alice");
+        assertNull(matchmakingService.findMatch("alice"));
+
+        disconnect("s1");
+
+        connect("s2", "bob");
+        matchmakingService.addUser("bob");
+        assertNull(matchmakingService.findMatch("bob"));
+    }
+
+    @Test
+    void uuidCanBeLearnedAfterConnect() {
+        connect("s1", null);
+        subscribe("s1", "sub-0", "/topic/match/alice");
+        registry.register("s1", "alice");
+
+        assertTrue(registry.isConnected("alice"));
+        assertEquals(Map.of("sub-0", "/topic/match/alice"), registry.getSubscriptions("alice"));
+    }
+
+    @Test
+    void staleDisconnectKeepsTheReconnectedSession() {
+        connect("s1", "alice");
+        connect("s2", "alice");
+        matchmakingService.addUser("alice");
+
+        disconnect("s1");
+
+        assertTrue(registry.isConnected("alice"));
+        assertTrue(matchmakingService.isWaiting("alice"));
+        assertTrue(disconnects.isEmpty());
+        assertEquals(1, registry.getSessionCount());
+    }
+
+    @Test
+    void peerWhoMovedOnIsNotNotified() {
+        connect("s1", "alice");
+        connect("s2", "bob");
+        connect("s3", "carol");
+        registry.pair("alice", "bob");
+        registry.pair("bob", "carol");
+
+        disconnect("s1");
+
+        assertNull(disconnects.remove().peerId());
+    }
+
+    @Test
+    void repeatedDisconnectIsReportedOnce() {
+        connect("s1", "alice");
+
+        disconnect("s1");
+        disconnect("s1");
+
+        assertEquals(1, disconnects.size());
+    }
+
+    @Test
+    void churnLeavesNothingBehind() throws Exception {
+        int threads = 8;
+        int clientsPerThread = 2_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger matches = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < clientsPerThread; i++) {
+                        String sessionId = UUID.randomUUID().toString();
+                        String uuid = UUID.randomUUID().toString();
+                        connect(sessionId, uuid);
+                        subscribe(sessionId, "sub-0", "/topic/match/" + uuid);
+
+                        matchmakingService.addUser(uuid, i % 2 == 0 ? "ucf" : null);
+                        String partner = matchmakingService.findMatch(uuid);
+                        if (partner != null) {
+                            registry.pair(uuid, partner);
+                            String matchId = UUID.randomUUID().toString();
+                            gameService.createGame(matchId, uuid, partner);
+                            registry.addMatch(uuid, matchId);
+                            registry.addMatch(partner, matchId);
+                            matches.incrementAndGet();
+                        }
+
+                        disconnect(sessionId);
+                    }
+                } catch (Throwable e) {
+                    failures.incrementAndGet();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals(0, failures.get());
+        assertTrue(matches.get() > 0);
+        assertEquals(threads * clientsPerThread, disconnects.size());
+        assertEquals(0, registry.getSessionCount());
+        assertEquals(0, registry.getUserCount());
+        assertEquals(0, matchmakingService.getQueueSize());
+        for (MatchmakingService.Shard shard : matchmakingService.getShards()) {
+            assertEquals(0, shard.getDepth(), shard.getName());
+        }
+        assertEquals(0, gameService.getActiveGameCount());
+    }
+
+    private void connect(String sessionId, String uuid) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        if (uuid != null) {
+            accessor.setNativeHeader("uuid", uuid);
+        }
+        registry.onConnect(new SessionConnectEvent(this, message(accessor)));
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        registry.onSubscribe(new SessionSubscribeEvent(this, message(accessor)));
+    }
+
+    private void disconnect(String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        accessor.setSessionId(sessionId);
+        registry.onDisconnect(new SessionDisconnectEvent(this, message(accessor), sessionId, CloseStatus.NORMAL));
+    }
+
+    private static Message<byte[]> message(StompHeaderAccessor accessor) {
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,253 @@
+package com.uknight.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShotJournalTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path dir;
+
+    private final List<ShotJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() {
+        journals.forEach(ShotJournal::close);
+    }
+
+    // Each call is a server start against the same directory
+    private GameService start() {
+        return start("stepped");
+    }
+
+    private GameService start(String solver) {
+        ShotJournal journal = new ShotJournal(dir.toString(), SEGMENT_BYTES, 60_000, new SimpleMeterRegistry());
+        journals.add(journal);
+        return new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0, journal, solver);
+    }
+
+    // Small alternating nudges that keep both pucks on the platform
+    private static void play(GameService gameService, String matchId, int shots) {
+        GameService.GameState game = gameService.getGameState(matchId);
+        for (int i = 0; i < shots; i++) {
+            double dx = (i % 3 - 1) * 0.002;
+            gameService.processShot(game, game.getCurrentPlayer(), new GameService.Shot(dx, 0.001 * (i % 2)));
+        }
+    }
+
+    private static GameService.GameState reference(String matchId, String p1, String p2, int shots) {
+        GameService gameService = new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0);
+        gameService.createGame(matchId, p1, p2);
+        play(gameService, matchId, shots);
+        return gameService.getGameState(matchId);
+    }
+
+    private static void assertSameState(GameService.GameState expected, GameService.GameState actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getShotCount(), actual.getShotCount());
+        assertEquals(expected.getCurrentTurn(), actual.getCurrentTurn());
+        assertEquals(expected.getRound(), actual.getRound());
+        assertEquals(expected.getPlayer1Score(), actual.getPlayer1Score());
+        assertEquals(expected.getPlayer2Score(), actual.getPlayer2Score());
+        for (int puck = 0; puck < PhysicsEngine.PUCK_COUNT; puck++) {
+            assertEquals(expected.getPhysics().getX(puck), actual.getPhysics().getX(puck));
+            assertEquals(expected.getPhysics().getY(puck), actual.getPhysics().getY(puck));
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().toList();
+        }
+    }
+
+    // Offset just past the last record written to a segment
+    private static int endOfRecords(Path segment) throws IOException {
+        byte[] bytes = Files.readAllBytes(segment);
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] == 0) end--;
+        return end;
+    }
+
+    @Test
+    void restoresActiveGamesWithIdenticalState() {
+        GameService before = start();
+        before.createGame("m1", "p1", "p2");
+        before.createGame("m2", "p3", "p4");
+        play(before, "m1", 7);
+        play(before, "m2", 4);
+
+        GameService after = start();
+
+        assertEquals(2, after.getActiveGameCount());
+        assertSameState(before.getGameState("m1"), after.getGameState("m1"));
+        assertSameState(before.getGameState("m2"), after.getGameState("m2"));
+    }
+
+    @Test
+    void restoredGamesKeepTheSolverTheyWerePlayedWith() {
+        GameService before = start("analytic");
+        before.createGame("m1", "p1", "p2");
+        play(before, "m1", 5);
+
+        GameService after = start("stepped");
+
+        assertEquals(PhysicsEngine.Solver.ANALYTIC, after.getGameState("m1").getPhysics().getSolver());
+        assertSameState(before.getGameState("m1"), after.getGameState("m1"));
+    }
+
+    @Test
+    void refusesIdsTooLongToJournal() {
+        GameService before = start();
+        String multiByte = "é".repeat(ShotJournal.MAX_ID_BYTES / 2); // 254 bytes
+        before.createGame("m1", multiByte, "p2");
+
+        assertThrows(IllegalArgumentException.class, () -> before.createGame("m2", multiByte + "é", "p2"));
+        assertThrows(IllegalArgumentException.class,
+                () -> before.createGame("m".repeat(ShotJournal.MAX_ID_BYTES + 1), "p1", "p2"));
+        assertNull(before.getGameState("m2"));
+
+        GameService after = start();
+
+        assertEquals(1, after.getActiveGameCount());
+        assertEquals(multiByte, after.getGameState("m1").getPlayer1Id());
+    }
+
+    @Test
+    void skipsClosedGames() {
+        GameService before = start();
+        before.createGame("m1", "p1", "p2");
+        before.createGame("m2", "p3", "p4");
+        play(before, "m1", 3);
+        before.removeGame("m1");
+
+        GameService after = start();
+
+        assertNull(after.getGameState("m1"));
+        assertNotNull(after.getGameState("m2"));
+    }
+
+    @Test
+    void rejectedShotsAreNotJournaled() {
+        GameService before = start();
+        before.createGame("m1", "p1", "p2");
+        play(before, "m1", 2);
+        before.processShot("m1", "p2", new GameService.Shot(0.5, 0.5)); // p1's turn
+
+        assertSameState(reference("m1", "p1", "p2", 2), start().getGameState("m1"));
+    }
+
+    @Test
+    void truncatedSegmentKeepsTheShotsBeforeTheCut() throws IOException {
+        GameService before = start();
+        before.createGame("m1", "p1", "p2");
+        play(before, "m1", 4);
+        journals.getLast().close();
+
+        // Crash while the last shot was being written
+        Path segment = segments().getFirst();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(endOfRecords(segment) - 5);
+        }
+
+        assertSameState(reference("m1", "p1", "p2", 3), start().getGameState("m1"));
+    }
+
+    @Test
+    void tornRecordIsIgnored() throws IOException {
+        GameService before = start();
+        before.createGame("m1", "p1", "p2");
+        play(before, "m1", 4);
+        journals.getLast().close();
+
+        // Only part of the last record's page reached the disk
+        Path segment = segments().getFirst();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(endOfRecords(segment) - 3);
+            file.write(0x5a);
+        }
+
+        assertSameState(reference("m1", "p1", "p2", 3), start().getGameState("m1"));
+    }
+
+    @Test
+    void matchWithAGapIsDroppedButOthersAreRestored() throws IOException {
+        GameService before = start();
+        before.createGame("m1", "p1", "p2");
+        int shots = 0;
+        while (journals.getLast().getSegmentCount() < 2) {
+            play(before, "m1", 1);
+            shots++;
+        }
+        before.createGame("m2", "p3", "p4");
+        play(before, "m2", 3);
+        journals.getLast().close();
+
+        // Damage the middle of the first segment; m1's later shots no longer line up
+        Path first = segments().getFirst();
+        try (RandomAccessFile file = new RandomAccessFile(first.toFile(), "rw")) {
+            file.seek(SEGMENT_BYTES / 2);
+            int original = file.read();
+            file.seek(SEGMENT_BYTES / 2);
+            file.write(~original);
+        }
+
+        GameService after = start();
+
+        assertTrue(shots > 2);
+        assertNull(after.getGameState("m1"));
+        assertSameState(reference("m2", "p3", "p4", 3), after.getGameState("m2"));
+    }
+
+    @Test
+    void rollsSegmentsAndDeletesThoseWithOnlyClosedGames() throws IOException {
+        GameService gameService = start();
+        gameService.createGame("long", "p1", "p2");
+        play(gameService, "long", 2);
+
+        for (int i = 0; i < 100; i++) {
+            gameService.createGame("short-" + i, "p3", "p4");
+            play(gameService, "short-" + i, 2);
+            gameService.removeGame("short-" + i);
+        }
+        // The first segment is pinned by "long"; segments in between held only closed games
+        assertTrue(segments().getLast().getFileName().toString().compareTo("shots-0000000002") > 0);
+        assertEquals(2, segments().size());
+
+        gameService.removeGame("long");
+
+        assertEquals(1, segments().size());
+        assertEquals(0, start().getActiveGameCount());
+    }
+
+    @Test
+    void appendsAfterARestartContinueTheRecoveredGames() throws IOException {
+        GameService first = start();
+        first.createGame("m1", "p1", "p2");
+        play(first, "m1", 3);
+
+        GameService second = start();
+        GameService.GameState game = second.getGameState("m1");
+        second.processShot(game, game.getCurrentPlayer(), new GameService.Shot(0.001, 0));
+        assertEquals(2, segments().size());
+
+        GameService third = start();
+
+        assertSameState(game, third.getGameState("m1"));
+        assertEquals(4, third.getGameState("m1").getShotCount());
+    }
+}
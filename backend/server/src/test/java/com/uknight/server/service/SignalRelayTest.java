@@ -0,0 +1,174 @@
+package com.uknight.server.service;
+
+import com.uknight.server.cluster.ClusterMembership;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignalRelayTest {
+
+    private final List<Message<?>> sent = new CopyOnWriteArrayList<>();
+    private final SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+    private final SignalRelay relay = newRelay(0, 16);
+
+    private SignalRelay newRelay(long coalesceWindowMs, int maxBatch) {
+        return new SignalRelay(messagingTemplate, new SessionRegistry(
+                MatchmakingService.withDefaults(event -> {}, new SimpleMeterRegistry(), 10_000,
+                ClusterMembership.standalone(), List.of()), event -> {}),
+                new SimpleMeterRegistry(), coalesceWindowMs, maxBatch);
+    }
+
+    @Test
+    void findsTargetWhereverItIsInTheObject() {
+        assertEquals("bob", target("{\"targetPeerId\":\"bob\",\"type\":\"ICE\"}"));
+        assertEquals("bob", target("{\"type\":\"OFFER\",\"sdp\":\"{\\\"sdp\\\":\\\"v=0\\\\r\\\\n\\\"}\",\"targetPeerId\":\"bob\"}"));
+        assertEquals("bob", target("{\"mediaState\":{\"targetPeerId\":\"eve\",\"audioEnabled\":true},\"targetPeerId\":\"bob\"}"));
+    }
+
+    @Test
+    void rejectsBodiesWithoutAUsableTarget() {
+        assertNull(target("{\"type\":\"ICE\"}"));
+        assertNull(target("{\"targetPeerId\":42}"));
+        assertNull(target("{\"targetPeerId\":null}"));
+        assertNull(target("[\"targetPeerId\",\"bob\"]"));
+        assertNull(target("\"bob\""));
+        assertNull(target(""));
+    }
+
+    @Test
+    void rejectsMalformedJson() {
+        assertNull(target("{\"targetPeerId\":\"bob\""));
+        assertNull(target("{\"targetPeerId\":\"bob\",\"sdp\":\"unterminated}"));
+        assertNull(target("{\"targetPeerId\":\"bob\"} trailing"));
+    }
+
+    @Test
+    void relaysTheOriginalBytesWithTheSenderAsAHeader() {
+        byte[] body = "{\"type\":\"ICE\",\"candidate\":\"c\",\"targetPeerId\":\"bob\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("bob", relay.relay(PlayerHandle.Topic.SIGNAL, body, "alice"));
+
+        Message<?> message = sent.getFirst();
+        assertSame(body, message.getPayload());
+        assertEquals("/topic/signal/bob", SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        assertEquals("alice", SimpMessageHeaderAccessor.wrap(message).getFirstNativeHeader(SignalRelay.SENDER_HEADER));
+        assertEquals(MimeTypeUtils.APPLICATION_JSON, message.getHeaders().get(MessageHeaders.CONTENT_TYPE));
+    }
+
+    @Test
+    void sendsNothingWithoutATarget() {
+        assertNull(relay.relay(PlayerHandle.Topic.CHAT, "{\"message\":\"hi\"}".getBytes(StandardCharsets.UTF_8), "alice"));
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void sendsNothingToTheBot() {
+        assertNull(relay.relay(PlayerHandle.Topic.SIGNAL,
+                "{\"type\":\"ICE\",\"targetPeerId\":\"bot\"}".getBytes(StandardCharsets.UTF_8), "alice"));
+        assertNull(relay.relay(PlayerHandle.Topic.CHAT,
+                "{\"targetPeerId\":\"bot\",\"message\":\"hi\"}".getBytes(StandardCharsets.UTF_8), "alice"));
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void rejectsChatWithoutAStringMessage() {
+        assertNull(relay.relay(PlayerHandle.Topic.CHAT, "{\"targetPeerId\":\"bob\"}".getBytes(StandardCharsets.UTF_8), "alice"));
+        assertNull(relay.relay(PlayerHandle.Topic.CHAT,
+                "{\"targetPeerId\":\"bob\",\"message\":{\"text\":\"hi\"}}".getBytes(StandardCharsets.UTF_8), "alice"));
+        assertTrue(sent.isEmpty());
+
+        assertEquals("bob", relay.relay(PlayerHandle.Topic.CHAT,
+                "{\"targetPeerId\":\"bob\",\"message\":\"hi\"}".getBytes(StandardCharsets.UTF_8), "alice"));
+        assertEquals("/topic/chat/bob", SimpMessageHeaderAccessor.getDestination(sent.getFirst().getHeaders()));
+    }
+
+    @Test
+    void chatIsNeverHeldWithIce() {
+        SignalRelay coalescing = newRelay(60_000, 16);
+        try {
+            coalescing.relay(PlayerHandle.Topic.CHAT,
+                    "{\"type\":\"ICE\",\"targetPeerId\":\"bob\",\"message\":\"hi\"}".getBytes(StandardCharsets.UTF_8), "alice");
+
+            assertEquals(1, sent.size());
+        } finally {
+            coalescing.shutdown();
+        }
+    }
+
+    @Test
+    void coalescesIceUpToTheBatchSize() {
+        SignalRelay coalescing = newRelay(60_000, 3);
+        try {
+            for (int i = 0; i < 3; i++) {
+                coalescing.relay(PlayerHandle.Topic.SIGNAL, ice("c" + i), "alice");
+            }
+
+            assertEquals(1, sent.size());
+            assertEquals("[" + iceJson("c0") + "," + iceJson("c1") + "," + iceJson("c2") + "]", body(sent.getFirst()));
+            assertEquals("alice", SimpMessageHeaderAccessor.wrap(sent.getFirst()).getFirstNativeHeader(SignalRelay.SENDER_HEADER));
+        } finally {
+            coalescing.shutdown();
+        }
+    }
+
+    @Test
+    void flushesIceWhenTheWindowCloses() throws InterruptedException {
+        SignalRelay coalescing = newRelay(20, 16);
+        try {
+            coalescing.relay(PlayerHandle.Topic.SIGNAL, ice("c0"), "alice");
+            coalescing.relay(PlayerHandle.Topic.SIGNAL, ice("c1"), "alice");
+            assertTrue(sent.isEmpty());
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sent.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(List.of("[" + iceJson("c0") + "," + iceJson("c1") + "]"), sent.stream().map(SignalRelayTest::body).toList());
+        } finally {
+            coalescing.shutdown();
+        }
+    }
+
+    @Test
+    void otherSignalsGoImmediatelyBehindHeldCandidates() {
+        SignalRelay coalescing = newRelay(60_000, 16);
+        try {
+            coalescing.relay(PlayerHandle.Topic.SIGNAL, ice("c0"), "alice");
+            coalescing.relay(PlayerHandle.Topic.SIGNAL, "{\"type\":\"ANSWER\",\"targetPeerId\":\"bob\"}".getBytes(StandardCharsets.UTF_8), "alice");
+            // Held for a different sender, so not flushed by alice's answer
+            coalescing.relay(PlayerHandle.Topic.SIGNAL, ice("c1"), "carol");
+
+            assertEquals(List.of(iceJson("c0"), "{\"type\":\"ANSWER\",\"targetPeerId\":\"bob\"}"),
+                    sent.stream().map(SignalRelayTest::body).toList());
+        } finally {
+            coalescing.shutdown();
+        }
+    }
+
+    private static byte[] ice(String candidate) {
+        return iceJson(candidate).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String iceJson(String candidate) {
+        return "{\"type\":\"ICE\",\"candidate\":\"" + candidate + "\",\"targetPeerId\":\"bob\"}";
+    }
+
+    private static String body(Message<?> message) {
+        return new String((byte[]) message.getPayload(), StandardCharsets.UTF_8);
+    }
+
+    private String target(String json) {
+        return relay.findTargetPeerId(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,92 @@
+package com.uknight.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateSyncEncoderTest {
+
+    private final GameService gameService = new GameService(event -> {}, new SimpleMeterRegistry(), 0, 0);
+
+    @Test
+    void firstSyncIsAFullSnapshot() {
+        GameService.GameState game = new GameService.GameState("match", "p1", "p2");
+
+        ByteBuffer frame = ByteBuffer.wrap(game.getSyncEncoder().encodeDelta(game));
+
+        assertEquals(StateSyncEncoder.VERSION, frame.get());
+        assertEquals(StateSyncEncoder.FLAG_FULL, frame.get());
+        assertEquals(1, frame.getInt());
+        assertEquals(StateSyncEncoder.ALL_FIELDS, frame.getShort());
+        assertEquals(-PhysicsEngine.START_X, frame.getDouble());
+    }
+
+    @Test
+    void deltaCarriesOnlyChangedFields() {
+        GameService.GameState game = new GameService.GameState("match", "p1", "p2");
+        StateSyncEncoder encoder = game.getSyncEncoder();
+        encoder.encodeDelta(game);
+
+        // A gentle tap moves puck 0 only and passes the turn
+        gameService.processShot(game, game.getPlayer1(), new GameService.Shot(0.5, 0));
+        ByteBuffer frame = ByteBuffer.wrap(encoder.encodeDelta(game));
+
+        frame.get();
+        assertEquals(0, frame.get());
+        assertEquals(2, frame.getInt());
+        assertEquals(StateSyncEncoder.PUCK_0 | StateSyncEncoder.TURN, frame.getShort());
+        assertEquals(game.getPhysics().getX(0), frame.getDouble());
+        frame.position(frame.position() + 4 * Double.BYTES);
+        assertEquals("p2", readString(frame));
+        assertFalse(frame.hasRemaining());
+
+        // Nothing changed since: header only
+        assertEquals(8, encoder.encodeDelta(game).length);
+    }
+
+    @Test
+    void snapshotRepeatsCurrentSequenceWithEveryField() {
+        GameService.GameState game = new GameService.GameState("match", "p1", "p2");
+        StateSyncEncoder encoder = game.getSyncEncoder();
+        encoder.encodeDelta(game);
+        encoder.encodeDelta(game);
+
+        ByteBuffer frame = ByteBuffer.wrap(encoder.encodeSnapshot(game));
+
+        frame.get();
+        assertEquals(StateSyncEncoder.FLAG_FULL, frame.get());
+        assertEquals(2, frame.getInt());
+        assertEquals(StateSyncEncoder.ALL_FIELDS, frame.getShort());
+        frame.position(frame.position() + 2 * 5 * Double.BYTES);
+        assertEquals("p1", readString(frame));
+        assertEquals(0, frame.getShort());
+        assertEquals(0, frame.getShort());
+        assertEquals(1, frame.getShort());
+        assertEquals(0xFFFF, Short.toUnsignedInt(frame.getShort())); // No winner
+        assertEquals("match", readString(frame));
+    }
+
+    @Test
+    void sharedSnapshotIsEncodedOncePerSequence() {
+        GameService.GameState game = new GameService.GameState("match", "p1", "p2");
+        StateSyncEncoder encoder = game.getSyncEncoder();
+        encoder.encodeDelta(game);
+
+        byte[] first = game.getSnapshotOnDemand().get();
+        assertSame(first, game.getSnapshotOnDemand().get());
+        assertArrayEquals(encoder.encodeSnapshot(game), first);
+
+        encoder.encodeDelta(game);
+        assertNotSame(first, game.getSnapshotOnDemand().get());
+    }
+
+    private static String readString(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.getShort()];
+        frame.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -344,9 +344,15 @@ export default function LobbyPage() {
         })
 
         subscriptionSignal.current = client.subscribe(`/topic/signal/${uuid}`, (message: IMessage) => {
-            const data = JSON.parse(message.body) as SignalData
-            if (handleSignalRef.current) {
-                handleSignalRef.current(data)
+            const parsed = JSON.parse(message.body)
+            // ICE candidates can arrive coalesced into one array frame
+            const signals = (Array.isArray(parsed) ? parsed : [parsed]) as SignalData[]
+            for (const data of signals) {
+                // Relayed bodies are untouched; the server names the sender in a header
+                data.senderId = message.headers['senderId'] ?? data.senderId
+                if (handleSignalRef.current) {
+                    handleSignalRef.current(data)
+                }
             }
         })
 
@@ -359,6 +365,9 @@ export default function LobbyPage() {
         })
 
         subscriptionGame.current = client.subscribe(`/topic/game/${uuid}`, (message: IMessage) => {
+            // Binary state syncs are handled by KnockoutGame's own subscription
+            if (message.headers['content-type'] === 'application/octet-stream') return;
+
             const data = JSON.parse(message.body);
             console.log("GAME TOPIC DATA RECEIVED:", data);
 
@@ -380,6 +389,16 @@ export default function LobbyPage() {
             } else if (data.type === 'GAME_START') {
                 setGameMatchId(data.matchId);
                 setIsGameActive(true);
+            } else if (data.type === 'GAME_CLOSED') {
+                setIsGameActive(false);
+                setGameMatchId(null);
+                setChatMessages(prev => [...prev, {
+                    id: crypto.randomUUID(),
+                    sender: 'partner',
+                    text: data.reason === 'expired'
+                        ? "Knockout match ended after being idle too long."
+                        : "Knockout match was closed."
+                }]);
             }
         })
     }
@@ -541,6 +560,8 @@ export default function LobbyPage() {
         const client = new Client({
             brokerURL: 'wss://uknight-backend-536429702801.us-central1.run.app/ws',
             reconnectDelay: 5000,
+            // Lets the server tie this connection to our uuid and clean up when it drops
+            connectHeaders: { 'uuid': uuid },
             debug: (str) => console.log(str),
             onConnect: () => {
                 log("Connected to Backend! UUID: " + uuid.substring(0, 5))
@@ -809,6 +830,14 @@ export default function LobbyPage() {
                     opponentId={currentPeerId!}
                     stompClient={stompClient.current}
                     onClose={() => {
+                        // Let the server drop the match and tell the opponent
+                        if (stompClient.current?.connected) {
+                            stompClient.current.publish({
+                                destination: '/app/game/close',
+                                headers: { 'uuid': myUuid.current },
+                                body: JSON.stringify({ matchId: gameMatchId })
+                            });
+                        }
                         setIsGameActive(false);
                         setGameMatchId(null);
                     }}
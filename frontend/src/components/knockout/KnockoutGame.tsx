@@ -4,6 +4,7 @@ import { useEffect, useRef, useState, useCallback } from "react";
 import { motion, AnimatePresence } from "framer-motion";
 import { X, Trophy, RefreshCw, Gamepad2, Target } from "lucide-react";
 import { Button } from "@/components/ui/button";
+import { decodeStateSync } from "@/lib/state-sync";
 
 type Puck = {
     x: number;
@@ -40,6 +41,8 @@ export function KnockoutGame({ matchId, myId, opponentId, stompClient, onClose }
     ]);
 
     const [gameState, setGameState] = useState<GameState | null>(null);
+    const gameStateRef = useRef<GameState | null>(null);
+    const lastSeqRef = useRef(0);
     const [isDragging, setIsDragging] = useState(false);
     const [dragStart, setDragStart] = useState({ x: 0, y: 0 });
     const [dragEnd, setDragEnd] = useState({ x: 0, y: 0 });
@@ -277,8 +280,13 @@ export function KnockoutGame({ matchId, myId, opponentId, stompClient, onClose }
         if (!stompClient?.connected) return;
 
         const sub = stompClient.subscribe(`/topic/game/${myId}`, (msg: any) => {
-            const data = JSON.parse(msg.body);
+            // State syncs are binary deltas; everything else is JSON
+            if (msg.headers["content-type"] === "application/octet-stream") {
+                applyStateSync(msg.binaryBody);
+                return;
+            }
 
+            const data = JSON.parse(msg.body);
             if (data.type === "GAME_MOVE_ANNOUNCE") {
                 const isMe = data.senderId === myId;
                 if (!isMe) {
@@ -294,28 +302,55 @@ export function KnockoutGame({ matchId, myId, opponentId, stompClient, onClose }
                     pucksRef.current[0].vx = data.dx * 0.015;
                     pucksRef.current[0].vy = data.dy * 0.015;
                 }
-            } else if (data.type === "GAME_STATE_SYNC") {
-                setGameState(data);
-                setIsMyTurn(data.currentTurn === myId);
-
-                // Absolute reconciliation (stop current movement if any)
-                if (data.pucks[0]) {
-                    pucksRef.current[0].x = data.pucks[0].x;
-                    pucksRef.current[0].y = data.pucks[0].y;
-                    pucksRef.current[0].vx = 0;
-                    pucksRef.current[0].vy = 0;
+            }
+        });
+
+        const applyStateSync = (bytes: Uint8Array) => {
+            const sync = decodeStateSync(bytes);
+
+            if (!sync.full) {
+                if (sync.seq <= lastSeqRef.current) return; // Stale
+                if (sync.seq !== lastSeqRef.current + 1 || !gameStateRef.current) {
+                    // Missed a delta: ask for a full snapshot and wait for it
+                    stompClient.publish({
+                        destination: "/app/game/sync",
+                        headers: { uuid: myId },
+                        body: JSON.stringify({ matchId })
+                    });
+                    return;
                 }
-                if (data.pucks[1]) {
-                    pucksRef.current[1].x = data.pucks[1].x;
-                    pucksRef.current[1].y = data.pucks[1].y;
-                    pucksRef.current[1].vx = 0;
-                    pucksRef.current[1].vy = 0;
+            }
+            lastSeqRef.current = sync.seq;
+
+            const previous = gameStateRef.current;
+            const next: GameState = {
+                matchId: sync.matchId ?? previous?.matchId ?? matchId ?? "",
+                pucks: [sync.pucks[0] ?? previous?.pucks[0] ?? null, sync.pucks[1] ?? previous?.pucks[1] ?? null],
+                currentTurn: sync.currentTurn ?? previous?.currentTurn ?? "",
+                player1Score: sync.player1Score ?? previous?.player1Score ?? 0,
+                player2Score: sync.player2Score ?? previous?.player2Score ?? 0,
+                round: sync.round ?? previous?.round ?? 1,
+                roundOver: sync.roundOver,
+                winner: sync.winner !== undefined ? sync.winner : previous?.winner ?? null,
+            };
+            gameStateRef.current = next;
+            setGameState(next);
+            setIsMyTurn(next.currentTurn === myId);
+
+            // Absolute reconciliation (stop current movement if any)
+            for (const i of [0, 1] as const) {
+                const puck = sync.pucks[i];
+                if (puck) {
+                    pucksRef.current[i].x = puck.x;
+                    pucksRef.current[i].y = puck.y;
+                    pucksRef.current[i].vx = 0;
+                    pucksRef.current[i].vy = 0;
                 }
             }
-        });
+        };
 
         return () => sub.unsubscribe();
-    }, [stompClient, myId]);
+    }, [stompClient, myId, matchId]);
 
     return (
         <AnimatePresence>
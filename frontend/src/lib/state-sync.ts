@@ -0,0 +1,79 @@
+// Decoder for the binary GAME_STATE_SYNC frames (see StateSyncEncoder on the server).
+// Each frame carries a sequence number and only the fields that changed since the
+// previous one; FULL frames carry everything.
+
+export type SyncPuck = { x: number; y: number; radius: number; vx: number; vy: number };
+
+export type StateSync = {
+    seq: number;
+    full: boolean;
+    roundOver: boolean;
+    pucks: [SyncPuck | null, SyncPuck | null];
+    currentTurn?: string;
+    player1Score?: number;
+    player2Score?: number;
+    round?: number;
+    winner?: string | null;
+    matchId?: string;
+};
+
+const FLAG_FULL = 1;
+const FLAG_ROUND_OVER = 1 << 1;
+
+const PUCK_0 = 1;
+const TURN = 1 << 2;
+const P1_SCORE = 1 << 3;
+const P2_SCORE = 1 << 4;
+const ROUND = 1 << 5;
+const WINNER = 1 << 6;
+const MATCH_ID = 1 << 7;
+
+const NULL_STRING = 0xffff;
+const decoder = new TextDecoder();
+
+export function decodeStateSync(bytes: Uint8Array): StateSync {
+    const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+    let pos = 0;
+
+    const readString = (): string | null => {
+        const length = view.getUint16(pos);
+        pos += 2;
+        if (length === NULL_STRING) return null;
+        const value = decoder.decode(bytes.subarray(pos, pos + length));
+        pos += length;
+        return value;
+    };
+
+    pos += 1; // version
+    const flags = view.getUint8(pos++);
+    const seq = view.getUint32(pos);
+    pos += 4;
+    const fields = view.getUint16(pos);
+    pos += 2;
+
+    const sync: StateSync = {
+        seq,
+        full: (flags & FLAG_FULL) !== 0,
+        roundOver: (flags & FLAG_ROUND_OVER) !== 0,
+        pucks: [null, null],
+    };
+
+    for (let i = 0; i < 2; i++) {
+        if (fields & (PUCK_0 << i)) {
+            const read = () => {
+                const value = view.getFloat64(pos);
+                pos += 8;
+                return value;
+            };
+            sync.pucks[i] = { x: read(), y: read(), radius: read(), vx: read(), vy: read() };
+        }
+    }
+    if (fields & TURN) sync.currentTurn = readString() ?? undefined;
+    if (fields & P1_SCORE) { sync.player1Score = view.getUint16(pos); pos += 2; }
+    if (fields & P2_SCORE) { sync.player2Score = view.getUint16(pos); pos += 2; }
+    if (fields & ROUND) { sync.round = view.getUint16(pos); pos += 2; }
+    if (fields & WINNER) sync.winner = readString();
+    if (fields & MATCH_ID) sync.matchId = readString() ?? undefined;
+
+    return sync;
+}